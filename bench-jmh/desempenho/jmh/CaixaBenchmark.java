@@ -0,0 +1,106 @@
+package desempenho.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controller.Caixa;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Medições JMH das operações do Caixa sobre um catálogo de "tamanho"
+ * produtos: busca por código, busca por texto e venda seguida do
+ * cancelamento (o estoque e o saldo voltam ao que eram, então o estado
+ * não muda entre as chamadas).
+ *
+ * Uso: java -cp out org.openjdk.jmh.Main CaixaBenchmark [-p tamanho=1000]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaixaBenchmark {
+    // Estoque "infinito" para as vendas medidas nunca falharem por falta
+    static final int ESTOQUE = Integer.MAX_VALUE / 2;
+    
+    @Param({"1000", "100000", "1000000"})
+    int tamanho;
+    
+    private Caixa caixa;
+    private String[] codigos;
+    
+    // Posições dos códigos em ordem aleatória (fixa), para as buscas não seguirem a ordem de cadastro
+    private int[] sorteio;
+    private int proxima;
+    
+    @Setup
+    public void preparar() {
+        caixa = new Caixa();
+        codigos = cadastrar(caixa, tamanho);
+        sorteio = new int[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            sorteio[i] = i;
+        }
+        Random aleatorio = new Random(42);
+        for (int i = tamanho - 1; i > 0; i--) {
+            int j = aleatorio.nextInt(i + 1);
+            int t = sorteio[i];
+            sorteio[i] = sorteio[j];
+            sorteio[j] = t;
+        }
+    }
+    
+    @Benchmark
+    public Produto buscarProduto() {
+        return caixa.buscarProduto(sorteado());
+    }
+    
+    @Benchmark
+    public List<Produto> buscarProdutos() {
+        return caixa.buscarProdutos("Produto " + (sorteio[proxima++ % tamanho] % 1000), 20);
+    }
+    
+    @Benchmark
+    public boolean realizarECancelarVenda() {
+        Venda venda = new Venda();
+        for (int j = 0; j < 3; j++) {
+            venda.adicionarItem(caixa.buscarProduto(sorteado()), 1);
+        }
+        caixa.realizarVenda(venda);
+        return caixa.cancelarVenda(venda.getNumero());
+    }
+    
+    private String sorteado() {
+        return codigos[sorteio[proxima++ % tamanho]];
+    }
+    
+    /**
+     * Cadastra n produtos no caixa (em lote) e retorna os códigos
+     */
+    static String[] cadastrar(Caixa caixa, int n) {
+        String[] codigos = new String[n];
+        List<Produto> produtos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            codigos[i] = String.format("%07d", i);
+            produtos.add(new Produto(codigos[i], "Produto " + i, 1.0 + i % 100, ESTOQUE));
+        }
+        caixa.cadastrarProdutos(produtos);
+        return codigos;
+    }
+}
@@ -0,0 +1,91 @@
+package desempenho.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controller.Caixa;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Medições JMH com vários terminais ao mesmo tempo: vendas de um produto
+ * sorteado num caixa compartilhado e, no caso de disputa máxima, retirada e
+ * devolução de estoque de um único produto por todas as threads.
+ *
+ * Uso: java -cp out org.openjdk.jmh.Main CaixaConcorrenteBenchmark [-t 8]
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CaixaConcorrenteBenchmark {
+    
+    /**
+     * Caixa e produto compartilhados por todas as threads
+     */
+    @State(Scope.Benchmark)
+    public static class Compartilhado {
+        @Param({"1000", "1000000"})
+        int tamanho;
+        
+        Caixa caixa;
+        String[] codigos;
+        Produto disputado;
+        
+        // Sementes distintas para os sorteios de cada thread
+        final AtomicInteger sementes = new AtomicInteger();
+        
+        @Setup
+        public void preparar() {
+            caixa = new Caixa();
+            codigos = CaixaBenchmark.cadastrar(caixa, tamanho);
+            disputado = new Produto("R", "Produto disputado", 1.0, CaixaBenchmark.ESTOQUE);
+        }
+    }
+    
+    /**
+     * Sorteio de produtos de cada thread
+     */
+    @State(Scope.Thread)
+    public static class Terminal {
+        Random aleatorio;
+        
+        @Setup
+        public void preparar(Compartilhado compartilhado) {
+            aleatorio = new Random(compartilhado.sementes.getAndIncrement());
+        }
+    }
+    
+    @Benchmark
+    public boolean realizarVenda(Compartilhado compartilhado, Terminal terminal) {
+        Venda venda = new Venda();
+        String codigo = compartilhado.codigos[terminal.aleatorio.nextInt(compartilhado.tamanho)];
+        venda.adicionarItem(compartilhado.caixa.buscarProduto(codigo), 1);
+        return compartilhado.caixa.realizarVenda(venda);
+    }
+    
+    @Benchmark
+    public boolean reservarEDevolverEstoque(Compartilhado compartilhado) {
+        if (!compartilhado.disputado.reservarEstoque(1)) {
+            return false;
+        }
+        compartilhado.disputado.devolverEstoque(1);
+        return true;
+    }
+}
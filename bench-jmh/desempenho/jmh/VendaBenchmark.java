@@ -0,0 +1,50 @@
+package desempenho.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Produto;
+import model.Venda;
+
+/**
+ * Medições JMH do total de uma venda de 10 itens, em centavos e em reais.
+ *
+ * Uso: java -cp out org.openjdk.jmh.Main VendaBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VendaBenchmark {
+    private Venda venda;
+    
+    @Setup
+    public void preparar() {
+        venda = new Venda();
+        for (int i = 0; i < 10; i++) {
+            venda.adicionarItem(new Produto("T" + i, "Produto " + i, 1.99 + i, CaixaBenchmark.ESTOQUE), 1 + i % 3);
+        }
+    }
+    
+    @Benchmark
+    public long calcularTotalCentavos() {
+        return venda.calcularTotalCentavos();
+    }
+    
+    @Benchmark
+    public double calcularTotal() {
+        return venda.calcularTotal();
+    }
+}
@@ -0,0 +1,528 @@
+package desempenho;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import controller.Caixa;
+import controller.ImportadorCsv;
+import model.ItemVenda;
+import model.Moeda;
+import model.Produto;
+import model.Venda;
+import persistencia.Diario;
+import view.VendasTableModel;
+
+/**
+ * Medições de desempenho dos caminhos mais usados do Caixa e do modelo,
+ * para comparar uma alteração com a versão anterior.
+ *
+ * Cada medição roda a operação repetidamente por um tempo fixo, depois de
+ * algumas rodadas de aquecimento (para o JIT compilar o código medido), e
+ * mostra a vazão média e a pior e a melhor rodada. Os resultados das
+ * operações vão para um campo volátil, para o JIT não descartar o trabalho.
+ *
+ * Uso: java -cp out desempenho.BenchmarkCaixa [filtro] [tamanhos...]
+ * (filtro: parte do nome das medições a rodar; tamanhos: quantidade de
+ * produtos e vendas, padrão 100 a 1.000.000)
+ *
+ * Os caminhos principais também têm medições com o JMH, no pacote
+ * desempenho.jmh (pasta bench-jmh).
+ */
+public class BenchmarkCaixa {
+    private static final int[] TAMANHOS = {100, 1_000, 10_000, 100_000, 1_000_000};
+    
+    private static final int RODADAS_AQUECIMENTO = 3;
+    private static final int RODADAS_MEDICAO = 5;
+    private static final long DURACAO_RODADA_MS = 300;
+    
+    // Quantidades de threads nos cenários concorrentes
+    private static final int[] THREADS = {1, 2, 4, 8};
+    
+    // Estoque "infinito" para as vendas medidas nunca falharem por falta
+    private static final int ESTOQUE = Integer.MAX_VALUE / 2;
+    
+    // Destino dos resultados das operações medidas
+    static volatile long sumidouro;
+    
+    private static String filtro = "";
+    
+    /**
+     * Operação medida; o parâmetro é o número da repetição
+     */
+    private interface Operacao {
+        long executar(int repeticao) throws Exception;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int[] tamanhos = TAMANHOS;
+        if (args.length > 0) {
+            filtro = args[0];
+        }
+        if (args.length > 1) {
+            tamanhos = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                tamanhos[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        medir("Venda.calcularTotal (10 itens)", 10, totalDaVenda());
+        medirReservaConcorrente();
+        medirSomaItens(1_000_000);
+        for (int n : tamanhos) {
+            medirCatalogo(n);
+            medirConcorrente(n);
+            medirTabela(n);
+            medirImportacao(n);
+            medirLeitura(n);
+        }
+    }
+    
+    /**
+     * Operações sobre um caixa com n produtos cadastrados
+     */
+    private static void medirCatalogo(int n) throws Exception {
+        Caixa caixa = new Caixa();
+        String[] codigos = cadastrar(caixa, n);
+        int[] sorteio = sortear(n);
+        
+        // O caixa cresce durante a medição: os cadastros entram num catálogo que já tem pelo menos n produtos
+        int[] proximo = {0};
+        medir("Caixa.cadastrarProduto", n, i -> caixa.cadastrarProduto(
+                new Produto("N" + proximo[0]++, "Produto novo", 1.0, 10)) ? 1 : 0);
+        
+        medir("Caixa.buscarProduto", n, i -> caixa.buscarProduto(codigos[sorteio[i % n]]).getEstoque());
+        
+        // Referência: a busca de antes do índice por código, percorrendo a lista de produtos
+        List<Produto> lista = caixa.getProdutos();
+        medir("Busca linear na lista (referência)", n, i -> {
+            String codigo = codigos[sorteio[i % n]];
+            return lista.stream().filter(p -> p.getCodigo().equals(codigo)).findFirst().get().getEstoque();
+        });
+        
+        // Importação de um catálogo inteiro, um cadastro por vez (quadrática sem o índice)
+        medirPorExecucao("Caixa.cadastrarProduto (importação, por produto)", n, i -> {
+            Caixa vazio = new Caixa();
+            int aceitos = 0;
+            for (int j = 0; j < n; j++) {
+                if (vazio.cadastrarProduto(new Produto(codigos[j], "Produto " + j, 1.0, 10))) {
+                    aceitos++;
+                }
+            }
+            return aceitos;
+        });
+        
+        // Venda de três produtos seguida do cancelamento, para o estoque e o saldo voltarem ao que eram
+        medir("Caixa.realizarVenda+cancelarVenda", n, i -> {
+            Venda venda = new Venda();
+            for (int j = 0; j < 3; j++) {
+                venda.adicionarItem(caixa.buscarProduto(codigos[sorteio[(i * 3 + j) % n]]), 1);
+            }
+            caixa.realizarVenda(venda);
+            return caixa.cancelarVenda(venda.getNumero()) ? 1 : 0;
+        });
+    }
+    
+    /**
+     * Vendas de um produto sorteado entre n, em várias threads ao mesmo tempo
+     */
+    private static void medirConcorrente(int n) throws Exception {
+        if (!"Caixa.realizarVenda concorrente".contains(filtro)) {
+            return;
+        }
+        Caixa caixa = new Caixa();
+        String[] codigos = cadastrar(caixa, n);
+        medirEmThreads("Caixa.realizarVenda concorrente", n, t -> {
+            Random aleatorio = new Random(t);
+            return i -> {
+                Venda venda = new Venda();
+                venda.adicionarItem(caixa.buscarProduto(codigos[aleatorio.nextInt(n)]), 1);
+                return caixa.realizarVenda(venda) ? 1 : 0;
+            };
+        });
+    }
+    
+    /**
+     * Retirada e devolução de estoque de um mesmo produto por todas as
+     * threads (a disputa mais forte possível), sem trava (CAS) e, como
+     * referência, com a verificação e a baixa dentro de um synchronized
+     */
+    private static void medirReservaConcorrente() throws Exception {
+        Produto produto = new Produto("R", "Produto disputado", 1.0, ESTOQUE);
+        medirEmThreads("Produto.reservarEstoque+devolverEstoque", 1, t -> i -> {
+            if (!produto.reservarEstoque(1)) {
+                return 0;
+            }
+            produto.devolverEstoque(1);
+            return 1;
+        });
+        
+        EstoqueSincronizado referencia = new EstoqueSincronizado(ESTOQUE);
+        medirEmThreads("Estoque com synchronized (referência)", 1, t -> i -> {
+            if (!referencia.reservar(1)) {
+                return 0;
+            }
+            referencia.devolver(1);
+            return 1;
+        });
+    }
+    
+    /**
+     * Soma do valor de n itens de venda: em centavos (long, laço indexado,
+     * sem alocar) e, como referência, em reais com double e stream, como
+     * era antes dos centavos. Mostra também os dois totais, para conferir
+     * o erro de arredondamento do double.
+     */
+    private static void medirSomaItens(int n) throws Exception {
+        // Monta os itens só se alguma das duas medições for rodar
+        if (!"Soma de itens em centavos (long)".contains(filtro)
+                && !"Soma de itens em double (referência)".contains(filtro)) {
+            return;
+        }
+        List<ItemVenda> itens = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Produto p = Produto.emCentavos("S" + (i % 1000), "Produto " + (i % 1000), 199 + i % 10_000, ESTOQUE);
+            itens.add(new ItemVenda(p, 1 + i % 5));
+        }
+        
+        medir("Soma de itens em centavos (long)", n, i -> {
+            long total = 0;
+            for (int j = 0; j < itens.size(); j++) {
+                total += itens.get(j).getValorTotalCentavos();
+            }
+            return total;
+        });
+        medir("Soma de itens em double (referência)", n,
+                i -> (long) itens.stream().mapToDouble(ItemVenda::getValorTotal).sum());
+        
+        long centavos = 0;
+        for (ItemVenda item : itens) {
+            centavos += item.getValorTotalCentavos();
+        }
+        System.out.printf("  total: %d centavos; em double: %s reais%n",
+                centavos, itens.stream().mapToDouble(ItemVenda::getValorTotal).sum());
+    }
+    
+    /**
+     * Importação de um CSV com n produtos para um caixa vazio com diário
+     * (numa pasta temporária, apagada a cada execução), como na importação
+     * pela tela de cadastro
+     */
+    private static void medirImportacao(int n) throws Exception {
+        if (!"ImportadorCsv.importar (por linha)".contains(filtro)) {
+            return;
+        }
+        Path csv = Files.createTempFile("benchmark-importacao", ".csv");
+        try {
+            try (BufferedWriter escritor = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+                escritor.write("codigo,nome,preco,estoque\n");
+                for (int i = 0; i < n; i++) {
+                    escritor.write(String.format("%07d,Produto %d,%d.%02d,%d%n", i, i, 1 + i % 100, i % 100, 10 + i % 50));
+                }
+            }
+            medirPorExecucao("ImportadorCsv.importar (por linha)", n, i -> {
+                Path pasta = Files.createTempDirectory("benchmark-diario");
+                try {
+                    Caixa caixa = new Caixa();
+                    try (Diario diario = new Diario(pasta, Diario.Modo.GRUPO)) {
+                        caixa.setDiario(diario);
+                        ImportadorCsv.Resultado resultado = new ImportadorCsv(caixa).importar(csv);
+                        if (resultado.getImportados() != n) {
+                            throw new IllegalStateException("Importados " + resultado.getImportados() + " de " + n);
+                        }
+                        return resultado.getImportados();
+                    }
+                } finally {
+                    apagar(pasta);
+                }
+            });
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+    
+    /**
+     * Leituras do código de barras no Ponto de Venda, num caixa com n
+     * produtos: o mesmo caminho de PontoVendaView.registrarLeitura (busca
+     * pelo código, conferência do estoque contra o que já está na venda,
+     * somarItem e atualização só da linha afetada de uma tabela com JTable,
+     * mais o texto do total). As leituras se repetem entre 60 produtos, e a
+     * cada 1000 leituras começa uma venda nova.
+     */
+    private static void medirLeitura(int n) throws Exception {
+        if (!"PontoVenda leitura de código".contains(filtro)) {
+            return;
+        }
+        Caixa caixa = new Caixa();
+        String[] codigos = cadastrar(caixa, n);
+        int[] sorteio = sortear(n);
+        String[] lidos = new String[Math.min(60, n)];
+        for (int i = 0; i < lidos.length; i++) {
+            lidos[i] = codigos[sorteio[i]];
+        }
+        
+        DefaultTableModel modelo = new DefaultTableModel(
+                new String[] {"Produto", "Preço Unit.", "Quantidade", "Subtotal"}, 0);
+        JTable tabela = new JTable(modelo);
+        Venda[] venda = {new Venda()};
+        medir("PontoVenda leitura de código", n, i -> {
+            if (i % 1000 == 0) {
+                venda[0] = new Venda();
+                modelo.setRowCount(0);
+            }
+            String codigo = lidos[(i * 7) % lidos.length];
+            Produto produto = caixa.buscarProduto(codigo);
+            if (venda[0].getQuantidade(codigo) + 1 > produto.getEstoque()) {
+                return 0;
+            }
+            int linha = venda[0].somarItem(produto, 1);
+            ItemVenda item = venda[0].getItens().get(linha);
+            if (linha == modelo.getRowCount()) {
+                modelo.addRow(new Object[] {produto.getNome(), item.getPrecoUnitarioCentavos() / 100.0,
+                        item.getQuantidade(), item.getValorTotal()});
+            } else {
+                modelo.setValueAt(item.getQuantidade(), linha, 2);
+                modelo.setValueAt(item.getValorTotal(), linha, 3);
+            }
+            return Moeda.formatar(venda[0].calcularTotalCentavos()).length() + tabela.getRowCount();
+        });
+    }
+    
+    /**
+     * Carga da tabela da Gestão de Vendas com n vendas: leitura do Caixa
+     * em segundo plano, aplicação dos lotes na thread da interface e
+     * formatação das linhas de uma tela
+     */
+    private static void medirTabela(int n) throws Exception {
+        if (!"VendasTableModel.atualizar".contains(filtro)) {
+            return;
+        }
+        Caixa caixa = new Caixa();
+        String[] codigos = cadastrar(caixa, Math.min(n, 1000));
+        List<Venda> vendas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Venda venda = new Venda();
+            venda.adicionarItem(caixa.buscarProduto(codigos[i % codigos.length]), 1);
+            vendas.add(venda);
+        }
+        caixa.realizarVendas(vendas);
+        vendas = null;
+        
+        medir("VendasTableModel.atualizar", n, i -> {
+            VendasTableModel modelo = new VendasTableModel(caixa);
+            modelo.atualizar().get();
+            long[] celulas = {0};
+            SwingUtilities.invokeAndWait(() -> {
+                for (int linha = 0; linha < Math.min(40, modelo.getRowCount()); linha++) {
+                    for (int coluna = 0; coluna < modelo.getColumnCount(); coluna++) {
+                        celulas[0] += modelo.getValueAt(linha, coluna).hashCode();
+                    }
+                }
+            });
+            return modelo.getRowCount() + celulas[0];
+        });
+    }
+    
+    private static Operacao totalDaVenda() {
+        Venda venda = new Venda();
+        for (int i = 0; i < 10; i++) {
+            venda.adicionarItem(new Produto("T" + i, "Produto " + i, 1.99 + i, ESTOQUE), 1 + i % 3);
+        }
+        return i -> venda.calcularTotalCentavos() + (long) venda.calcularTotal();
+    }
+    
+    /**
+     * Cadastra n produtos no caixa (em lote) e retorna os códigos
+     */
+    private static String[] cadastrar(Caixa caixa, int n) {
+        String[] codigos = new String[n];
+        List<Produto> produtos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            codigos[i] = String.format("%07d", i);
+            produtos.add(new Produto(codigos[i], "Produto " + i, 1.0 + i % 100, ESTOQUE));
+        }
+        caixa.cadastrarProdutos(produtos);
+        return codigos;
+    }
+    
+    /**
+     * Apaga uma pasta temporária com o que houver dentro
+     */
+    private static void apagar(Path pasta) throws IOException {
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta)) {
+            for (Path arquivo : arquivos) {
+                Files.delete(arquivo);
+            }
+        }
+        Files.delete(pasta);
+    }
+    
+    /**
+     * Posições de 0 a n-1 em ordem aleatória (fixa), para as buscas não seguirem a ordem de cadastro
+     */
+    private static int[] sortear(int n) {
+        int[] posicoes = new int[n];
+        for (int i = 0; i < n; i++) {
+            posicoes[i] = i;
+        }
+        Random aleatorio = new Random(42);
+        for (int i = n - 1; i > 0; i--) {
+            int j = aleatorio.nextInt(i + 1);
+            int t = posicoes[i];
+            posicoes[i] = posicoes[j];
+            posicoes[j] = t;
+        }
+        return posicoes;
+    }
+    
+    /**
+     * Roda a operação pelas rodadas de aquecimento e de medição e mostra a vazão
+     */
+    private static void medir(String nome, int n, Operacao operacao) throws Exception {
+        if (!nome.contains(filtro)) {
+            return;
+        }
+        double[] vazoes = new double[RODADAS_MEDICAO];
+        int repeticao = 0;
+        for (int rodada = -RODADAS_AQUECIMENTO; rodada < RODADAS_MEDICAO; rodada++) {
+            long resultado = 0;
+            int feitas = 0;
+            long inicio = System.nanoTime();
+            long limite = inicio + DURACAO_RODADA_MS * 1_000_000L;
+            long agora;
+            do {
+                // Consulta o relógio a cada 16 operações, para não pesar nas operações rápidas
+                for (int k = 0; k < 16; k++) {
+                    resultado += operacao.executar(repeticao++ & Integer.MAX_VALUE);
+                }
+                feitas += 16;
+                agora = System.nanoTime();
+            } while (agora < limite);
+            sumidouro += resultado;
+            if (rodada >= 0) {
+                vazoes[rodada] = feitas * 1e9 / (agora - inicio);
+            }
+        }
+        mostrar(nome, n, vazoes);
+    }
+    
+    /**
+     * Roda a operação em 1, 2, 4 e 8 threads ao mesmo tempo, pelas rodadas de
+     * aquecimento e de medição, e mostra a vazão somada das threads. Cada
+     * thread recebe sua própria operação (criada pelo número da thread), e só
+     * contam as execuções que retornam 1.
+     */
+    private static void medirEmThreads(String nome, int n, IntFunction<Operacao> porThread) throws Exception {
+        if (!nome.contains(filtro)) {
+            return;
+        }
+        for (int threads : THREADS) {
+            double[] vazoes = new double[RODADAS_MEDICAO];
+            for (int rodada = -RODADAS_AQUECIMENTO; rodada < RODADAS_MEDICAO; rodada++) {
+                LongAdder operacoes = new LongAdder();
+                AtomicReference<Exception> erro = new AtomicReference<>();
+                CountDownLatch fim = new CountDownLatch(threads);
+                long inicio = System.nanoTime();
+                long limite = inicio + DURACAO_RODADA_MS * 1_000_000L;
+                for (int t = 0; t < threads; t++) {
+                    Operacao operacao = porThread.apply(t);
+                    new Thread(() -> {
+                        long feitas = 0;
+                        int repeticao = 0;
+                        try {
+                            do {
+                                for (int k = 0; k < 16; k++) {
+                                    feitas += operacao.executar(repeticao++ & Integer.MAX_VALUE);
+                                }
+                            } while (System.nanoTime() < limite);
+                        } catch (Exception e) {
+                            erro.set(e);
+                        }
+                        operacoes.add(feitas);
+                        fim.countDown();
+                    }).start();
+                }
+                fim.await();
+                if (erro.get() != null) {
+                    throw erro.get();
+                }
+                if (rodada >= 0) {
+                    vazoes[rodada] = operacoes.sum() * 1e9 / (System.nanoTime() - inicio);
+                }
+            }
+            mostrar(nome + " (" + threads + " threads)", n, vazoes);
+        }
+    }
+    
+    /**
+     * Para operações longas, em que uma execução processa n itens (ex: uma
+     * importação inteira): mede cada execução separadamente e mostra a vazão
+     * em itens por segundo
+     */
+    private static void medirPorExecucao(String nome, int n, Operacao operacao) throws Exception {
+        if (!nome.contains(filtro)) {
+            return;
+        }
+        double[] vazoes = new double[RODADAS_MEDICAO];
+        for (int rodada = -RODADAS_AQUECIMENTO; rodada < RODADAS_MEDICAO; rodada++) {
+            long inicio = System.nanoTime();
+            sumidouro += operacao.executar(rodada + RODADAS_AQUECIMENTO);
+            long duracao = System.nanoTime() - inicio;
+            if (rodada >= 0) {
+                vazoes[rodada] = n * 1e9 / duracao;
+            }
+        }
+        mostrar(nome, n, vazoes);
+    }
+    
+    private static void mostrar(String nome, int n, double[] vazoes) {
+        double soma = 0;
+        double minimo = Double.MAX_VALUE;
+        double maximo = 0;
+        for (double v : vazoes) {
+            soma += v;
+            minimo = Math.min(minimo, v);
+            maximo = Math.max(maximo, v);
+        }
+        System.out.printf("%-48s n=%-9d %,14.0f ops/s  (min %,.0f  max %,.0f)%n",
+                nome, n, soma / vazoes.length, minimo, maximo);
+    }
+    
+    /**
+     * Estoque com verificação e baixa sob trava, como era antes do CAS em
+     * Produto (referência para a medição da reserva concorrente)
+     */
+    private static class EstoqueSincronizado {
+        private int estoque;
+        
+        EstoqueSincronizado(int estoque) {
+            this.estoque = estoque;
+        }
+        
+        synchronized boolean reservar(int quantidade) {
+            if (estoque < quantidade) {
+                return false;
+            }
+            estoque -= quantidade;
+            return true;
+        }
+        
+        synchronized void devolver(int quantidade) {
+            estoque += quantidade;
+        }
+    }
+}
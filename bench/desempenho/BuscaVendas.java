@@ -0,0 +1,133 @@
+package desempenho;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import controller.Caixa;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Busca e cancelamento de vendas pelo número, que passam pelo índice do
+ * Caixa: confere o resultado (a venda certa, número inexistente, cancelamento
+ * repetido, estoque e saldo devolvidos) e que o tempo por operação não cresce
+ * com o histórico. Com busca linear o tempo cresceria junto com o
+ * histórico; pelo índice, fica na mesma ordem.
+ *
+ * Uso: java -cp out desempenho.BuscaVendas [vendas]
+ * (padrão 1.000.000, comparado com um histórico 100 vezes menor, de pelo
+ * menos 20.000 vendas; termina com código 1 se alguma verificação falhar)
+ */
+public class BuscaVendas {
+    // Buscas e cancelamentos medidos em cada histórico
+    private static final int OPERACOES = 20_000;
+    
+    // Quanto o tempo por operação pode crescer do histórico menor para o maior
+    private static final double CRESCIMENTO_MAXIMO = 10;
+    
+    private static int falhas;
+    
+    public static void main(String[] args) {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        verificarResultados();
+        
+        // Duas passagens: a primeira só aquece o JIT
+        double[] pequeno = null;
+        double[] grande = null;
+        for (int passagem = 0; passagem < 2; passagem++) {
+            pequeno = medir(Math.max(quantidade / 100, OPERACOES));
+            grande = medir(quantidade);
+        }
+        System.out.printf("buscarVenda:   %.0f ns com %d vendas, %.0f ns com %d vendas%n",
+                pequeno[0], Math.max(quantidade / 100, OPERACOES), grande[0], quantidade);
+        System.out.printf("cancelarVenda: %.0f ns com %d vendas, %.0f ns com %d vendas%n",
+                pequeno[1], Math.max(quantidade / 100, OPERACOES), grande[1], quantidade);
+        verificar("buscarVenda não cresce com o histórico", grande[0] < pequeno[0] * CRESCIMENTO_MAXIMO);
+        verificar("cancelarVenda não cresce com o histórico", grande[1] < pequeno[1] * CRESCIMENTO_MAXIMO);
+        
+        System.out.println(falhas == 0 ? "OK" : falhas + " verificações falharam");
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+    
+    private static void verificarResultados() {
+        Caixa caixa = new Caixa();
+        Produto produto = new Produto("B", "Produto buscado", 2.5, 10);
+        caixa.cadastrarProduto(produto);
+        Venda venda = new Venda();
+        venda.adicionarItem(produto, 4);
+        caixa.realizarVenda(venda);
+        
+        verificar("busca encontra a venda", caixa.buscarVenda(venda.getNumero()) == venda);
+        verificar("número inexistente", caixa.buscarVenda("nao-existe") == null);
+        verificar("cancelamento de número inexistente", !caixa.cancelarVenda("nao-existe"));
+        verificar("cancelamento", caixa.cancelarVenda(venda.getNumero()));
+        verificar("venda marcada como cancelada", caixa.buscarVenda(venda.getNumero()).isCancelada());
+        verificar("estoque devolvido", produto.getEstoque() == 10);
+        verificar("saldo devolvido", caixa.getSaldoCaixaCentavos() == 0);
+        verificar("cancelamento repetido recusado", !caixa.cancelarVenda(venda.getNumero()));
+        verificar("estoque devolvido uma vez só", produto.getEstoque() == 10);
+    }
+    
+    /**
+     * Monta um caixa com o histórico informado e mede o tempo médio de uma
+     * busca e de um cancelamento, em números sorteados
+     *
+     * @return Nanossegundos por busca e por cancelamento
+     */
+    private static double[] medir(int quantidade) {
+        Caixa caixa = new Caixa();
+        Produto produto = new Produto("P", "Produto", 1.0, Integer.MAX_VALUE / 2);
+        caixa.cadastrarProduto(produto);
+        LocalDateTime data = LocalDateTime.of(2024, 1, 1, 8, 0);
+        List<Venda> lote = new ArrayList<>();
+        for (int i = 0; i < quantidade; i++) {
+            Venda venda = new Venda("V" + i, data);
+            venda.adicionarItem(produto, 1);
+            lote.add(venda);
+            if (lote.size() == 10_000 || i == quantidade - 1) {
+                caixa.realizarVendas(lote);
+                lote.clear();
+            }
+        }
+        
+        Random aleatorio = new Random(5);
+        String[] numeros = new String[OPERACOES];
+        for (int i = 0; i < OPERACOES; i++) {
+            // Sem repetir: cada cancelamento medido encontra uma venda ativa
+            numeros[i] = "V" + (long) i * quantidade / OPERACOES;
+        }
+        
+        long encontradas = 0;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < OPERACOES; i++) {
+            if (caixa.buscarVenda(numeros[aleatorio.nextInt(OPERACOES)]) != null) {
+                encontradas++;
+            }
+        }
+        double busca = (double) (System.nanoTime() - inicio) / OPERACOES;
+        
+        long canceladas = 0;
+        inicio = System.nanoTime();
+        for (int i = 0; i < OPERACOES; i++) {
+            if (caixa.cancelarVenda(numeros[i])) {
+                canceladas++;
+            }
+        }
+        double cancelamento = (double) (System.nanoTime() - inicio) / OPERACOES;
+        
+        verificar("buscas com " + quantidade + " vendas", encontradas == OPERACOES);
+        verificar("cancelamentos com " + quantidade + " vendas", canceladas == OPERACOES);
+        return new double[] {busca, cancelamento};
+    }
+    
+    private static void verificar(String nome, boolean condicao) {
+        if (!condicao) {
+            System.out.println("FALHOU: " + nome);
+            falhas++;
+        }
+    }
+}
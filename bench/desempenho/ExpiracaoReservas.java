@@ -0,0 +1,84 @@
+package desempenho;
+
+import controller.Caixa;
+import controller.GerenciadorReservas;
+import controller.Reserva;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Verificação da expiração das reservas de cesta: com validade de 1
+ * segundo, uma cesta abandonada é liberada pela tarefa periódica (o
+ * reservado volta para o disponível e a reserva deixa de contar), uma cesta
+ * que continua recebendo itens não é liberada, e a venda de uma cesta que
+ * expirou ainda é feita com o estoque disponível. O estoque físico
+ * (disponível + reservado) nunca muda sem venda.
+ *
+ * Uso: java -cp out desempenho.ExpiracaoReservas
+ * (demora alguns segundos; termina com código 1 se alguma verificação falhar)
+ */
+public class ExpiracaoReservas {
+    // Espera para a tarefa periódica (a cada segundo) passar depois da validade
+    private static final long ESPERA_EXPIRACAO_MS = 2_500;
+    
+    private static int falhas;
+    
+    public static void main(String[] args) throws Exception {
+        Caixa caixa = new Caixa();
+        Produto abandonado = new Produto("A", "Produto da cesta abandonada", 1.0, 10);
+        Produto renovado = new Produto("B", "Produto da cesta em uso", 1.0, 10);
+        Produto vendido = new Produto("C", "Produto da cesta vendida depois de expirar", 2.0, 10);
+        caixa.cadastrarProduto(abandonado);
+        caixa.cadastrarProduto(renovado);
+        caixa.cadastrarProduto(vendido);
+        
+        try (GerenciadorReservas reservas = new GerenciadorReservas(caixa, 1)) {
+            caixa.setReservas(reservas);
+            Reserva cestaAbandonada = reservas.abrir();
+            Reserva cestaRenovada = reservas.abrir();
+            Reserva cestaVendida = reservas.abrir();
+            verificar("reserva da cesta abandonada", reservas.reservar(cestaAbandonada, abandonado, 4));
+            verificar("reserva da cesta vendida", reservas.reservar(cestaVendida, vendido, 3));
+            verificar("estoque reservado sai do disponível",
+                    abandonado.getEstoque() == 6 && abandonado.getReservado() == 4);
+            
+            // A cesta em uso recebe um item a cada 300 ms, sempre antes de vencer
+            long fim = System.currentTimeMillis() + ESPERA_EXPIRACAO_MS;
+            while (System.currentTimeMillis() < fim) {
+                verificar("cesta em uso continua ativa", reservas.reservar(cestaRenovada, renovado, 1));
+                Thread.sleep(300);
+            }
+            int reservadasEmUso = renovado.getReservado();
+            
+            verificar("cesta abandonada liberada", !cestaAbandonada.isAtiva());
+            verificar("reservado devolvido ao disponível",
+                    abandonado.getEstoque() == 10 && abandonado.getReservado() == 0);
+            verificar("cesta em uso não liberada", cestaRenovada.isAtiva() && reservadasEmUso > 0
+                    && renovado.getEstoqueTotal() == 10);
+            verificar("só a cesta em uso continua contando", reservas.getQuantidadeAtivas() == 1);
+            
+            // A cesta que expirou ainda vende, tirando do disponível
+            Venda venda = new Venda();
+            venda.adicionarItem(vendido, 3);
+            verificar("venda de cesta expirada", reservas.confirmar(cestaVendida, venda));
+            verificar("estoque da venda de cesta expirada",
+                    vendido.getEstoque() == 7 && vendido.getReservado() == 0);
+            verificar("saldo da venda de cesta expirada", caixa.getSaldoCaixaCentavos() == 600);
+            
+            reservas.liberar(cestaRenovada);
+            verificar("cesta liberada devolve tudo", renovado.getEstoque() == 10 && renovado.getReservado() == 0);
+            verificar("nenhuma reserva ativa", reservas.getQuantidadeAtivas() == 0);
+        }
+        System.out.println(falhas == 0 ? "OK" : falhas + " verificações falharam");
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+    
+    private static void verificar(String nome, boolean condicao) {
+        if (!condicao) {
+            System.out.println("FALHOU: " + nome);
+            falhas++;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package desempenho;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import controller.Caixa;
+import model.Produto;
+import model.Venda;
+import persistencia.Diario;
+import persistencia.Instantaneo;
+
+/**
+ * Tempo de inicialização do Caixa com um histórico grande: monta um diário
+ * com muitas vendas (1 a 3 itens, uma em mil cancelada), mede a reprodução
+ * do diário inteiro, grava um instantâneo, acrescenta uma cauda de vendas
+ * depois dele e mede a inicialização como o Main faz (instantâneo mais
+ * reprodução só da cauda). Durante a gravação do instantâneo um terminal
+ * continua vendendo e cancelando vendas antigas, e a maior espera dele é
+ * mostrada (o caixa só fica parado durante a captura). Confere que as duas
+ * cargas chegam ao mesmo estado do caixa que gravou (vendas, canceladas,
+ * saldo e estoque).
+ *
+ * Uso: java -Xmx3g -cp out desempenho.InicializacaoCaixa [vendas] [cauda]
+ * (padrão 5.000.000 vendas e cauda de 10.000; termina com código 1 se
+ * alguma carga chegar a outro estado)
+ */
+public class InicializacaoCaixa {
+    private static final int PRODUTOS = 5_000;
+    
+    // Vendas por chamada a realizarVendas na montagem (um fsync por lote)
+    private static final int LOTE = 10_000;
+    
+    // Uma venda em CANCELAMENTO é cancelada
+    private static final int CANCELAMENTO = 1_000;
+    
+    private static int falhas;
+    
+    public static void main(String[] args) throws Exception {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int cauda = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Path pasta = Files.createTempDirectory("inicializacao-caixa");
+        try {
+            Random aleatorio = new Random(11);
+            
+            // Histórico inteiro só no diário
+            long inicio = System.nanoTime();
+            String esperado;
+            try (Diario diario = new Diario(pasta, Diario.Modo.GRUPO)) {
+                Caixa caixa = new Caixa();
+                caixa.setDiario(diario);
+                List<Produto> produtos = cadastrar(caixa);
+                vender(caixa, produtos, quantidade, aleatorio);
+                esperado = resumir(caixa);
+            }
+            System.out.printf("%d vendas gravadas no diário em %.1f s%n", quantidade, segundos(inicio));
+            System.out.println("  " + esperado);
+            
+            // Reprodução do diário inteiro (a inicialização sem instantâneo)
+            inicio = System.nanoTime();
+            Caixa reproduzido = new Caixa();
+            Diario diario = new Diario(pasta, Diario.Modo.GRUPO);
+            diario.reproduzir(reproduzido);
+            System.out.printf("Reprodução do diário inteiro: %.2f s%n", segundos(inicio));
+            verificar("reprodução do diário inteiro", esperado, resumir(reproduzido));
+            
+            // Instantâneo com um terminal trabalhando e, depois dele, a cauda
+            // que a inicialização ainda vai reproduzir
+            reproduzido.setDiario(diario);
+            Terminal terminal = new Terminal(reproduzido);
+            terminal.start();
+            inicio = System.nanoTime();
+            Instantaneo.gravar(reproduzido, diario, pasta);
+            double gravacao = segundos(inicio);
+            terminal.parar();
+            System.out.printf("Gravação do instantâneo: %.2f s (%d operações do terminal ao mesmo tempo, maior espera %.1f ms)%n",
+                    gravacao, terminal.operacoes, terminal.maiorEsperaNanos / 1e6);
+            vender(reproduzido, reproduzido.getProdutos(), cauda, aleatorio);
+            esperado = resumir(reproduzido);
+            diario.close();
+            reproduzido = null;
+            
+            // Inicialização como no Main: instantâneo mais reprodução da cauda
+            inicio = System.nanoTime();
+            Caixa carregado = new Caixa();
+            long primeiroSegmento = Instantaneo.carregarMaisRecente(pasta, carregado);
+            try (Diario aberto = new Diario(pasta, Diario.Modo.GRUPO)) {
+                aberto.reproduzir(carregado, primeiroSegmento);
+            }
+            System.out.printf("Instantâneo + cauda de %d vendas: %.2f s%n", cauda, segundos(inicio));
+            verificar("instantâneo + cauda", esperado, resumir(carregado));
+        } finally {
+            apagar(pasta);
+        }
+        System.out.println(falhas == 0 ? "OK" : falhas + " verificações falharam");
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Cadastra os produtos (em lote) com estoque para todas as vendas
+     */
+    private static List<Produto> cadastrar(Caixa caixa) {
+        List<Produto> produtos = new ArrayList<>(PRODUTOS);
+        for (int i = 0; i < PRODUTOS; i++) {
+            produtos.add(new Produto("P" + i, "Produto " + i, 1.0 + i % 100, Integer.MAX_VALUE / 2));
+        }
+        caixa.cadastrarProdutos(produtos);
+        return produtos;
+    }
+    
+    /**
+     * Realiza as vendas sorteadas em lotes e cancela uma em cada CANCELAMENTO
+     */
+    private static void vender(Caixa caixa, List<Produto> produtos, int quantidade, Random aleatorio) {
+        List<Venda> lote = new ArrayList<>(LOTE);
+        for (int i = 0; i < quantidade; i++) {
+            Venda venda = new Venda();
+            int itens = 1 + aleatorio.nextInt(3);
+            for (int j = 0; j < itens; j++) {
+                venda.adicionarItem(produtos.get(aleatorio.nextInt(produtos.size())), 1 + aleatorio.nextInt(5));
+            }
+            lote.add(venda);
+            if (lote.size() == LOTE || i == quantidade - 1) {
+                caixa.realizarVendas(lote);
+                for (int j = 0; j < lote.size(); j += CANCELAMENTO) {
+                    caixa.cancelarVenda(lote.get(j).getNumero());
+                }
+                lote.clear();
+            }
+        }
+    }
+    
+    /**
+     * Resume o estado do caixa em uma linha: vendas, canceladas, saldo e estoque somado
+     */
+    private static String resumir(Caixa caixa) {
+        int quantidade = caixa.getQuantidadeVendas();
+        int canceladas = 0;
+        for (int i = 0; i < quantidade; i++) {
+            if (caixa.getVenda(i).isCancelada()) {
+                canceladas++;
+            }
+        }
+        long estoque = 0;
+        for (Produto p : caixa.getProdutos()) {
+            estoque += p.getEstoque();
+        }
+        return "vendas=" + quantidade + " canceladas=" + canceladas
+                + " saldo=" + caixa.getSaldoCaixaCentavos() + " estoque=" + estoque;
+    }
+    
+    /**
+     * Terminal que vende e cancela vendas antigas sem parar, anotando a maior
+     * espera de uma operação
+     */
+    private static class Terminal extends Thread {
+        private final Caixa caixa;
+        private final Random aleatorio = new Random(13);
+        private volatile boolean parado;
+        long operacoes;
+        long maiorEsperaNanos;
+        
+        Terminal(Caixa caixa) {
+            this.caixa = caixa;
+        }
+        
+        @Override
+        public void run() {
+            List<Produto> produtos = caixa.getProdutos();
+            while (!parado) {
+                long inicio = System.nanoTime();
+                if (operacoes % 2 == 0) {
+                    Venda venda = new Venda();
+                    venda.adicionarItem(produtos.get(aleatorio.nextInt(produtos.size())), 1);
+                    caixa.realizarVenda(venda);
+                } else {
+                    caixa.cancelarVenda(caixa.getVenda(aleatorio.nextInt(caixa.getQuantidadeVendas())).getNumero());
+                }
+                maiorEsperaNanos = Math.max(maiorEsperaNanos, System.nanoTime() - inicio);
+                operacoes++;
+            }
+        }
+        
+        void parar() throws InterruptedException {
+            parado = true;
+            join();
+        }
+    }
+    
+    private static void verificar(String nome, String esperado, String obtido) {
+        if (!esperado.equals(obtido)) {
+            System.out.println("FALHOU: " + nome + ": esperado " + esperado + ", obtido " + obtido);
+            falhas++;
+        }
+    }
+    
+    private static double segundos(long inicio) {
+        return (System.nanoTime() - inicio) / 1e9;
+    }
+    
+    /**
+     * Apaga uma pasta temporária com o que houver dentro
+     */
+    private static void apagar(Path pasta) throws IOException {
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta)) {
+            for (Path arquivo : arquivos) {
+                Files.delete(arquivo);
+            }
+        }
+        Files.delete(pasta);
+    }
+}
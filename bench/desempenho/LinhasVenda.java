@@ -0,0 +1,166 @@
+package desempenho;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import controller.Caixa;
+import model.ItemVenda;
+import model.Produto;
+import model.Venda;
+import persistencia.Diario;
+
+/**
+ * Verificação das linhas da venda por código: o mesmo produto lido várias
+ * vezes fica numa linha só, com a quantidade somada, tanto em vendas
+ * pequenas (busca linear) quanto em vendas grandes (índices por código). A
+ * venda restaurada com o mesmo produto a dois preços mantém uma linha por
+ * preço. O caixa tira do estoque a quantidade somada, e a venda reproduzida
+ * do diário volta com as mesmas linhas.
+ *
+ * Uso: java -cp out desempenho.LinhasVenda
+ * (termina com código 1 se alguma verificação falhar)
+ */
+public class LinhasVenda {
+    private static int falhas;
+    
+    public static void main(String[] args) throws Exception {
+        verificarLeiturasRepetidas();
+        verificarSorteadas();
+        verificarPrecosDiferentes();
+        Path pasta = Files.createTempDirectory("linhas-venda");
+        try {
+            verificarCaixaEDiario(pasta);
+        } finally {
+            apagar(pasta);
+        }
+        System.out.println(falhas == 0 ? "OK" : falhas + " verificações falharam");
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * 50 leituras do mesmo código viram uma linha com quantidade 50
+     */
+    private static void verificarLeiturasRepetidas() {
+        Produto produto = new Produto("A", "Produto A", 1.25, 1000);
+        Venda venda = new Venda();
+        boolean mesmaLinha = true;
+        for (int i = 0; i < 50; i++) {
+            mesmaLinha &= venda.somarItem(produto, 1) == 0;
+        }
+        verificar("leituras repetidas na mesma linha", mesmaLinha);
+        verificar("uma linha", venda.getItens().size() == 1);
+        verificar("quantidade somada", venda.getItens().get(0).getQuantidade() == 50);
+        verificar("quantidade por código", venda.getQuantidade("A") == 50);
+        verificar("total", venda.calcularTotalCentavos() == 50 * 125);
+    }
+    
+    /**
+     * Adições sorteadas em vendas de até 40 produtos (acima de 16 a venda
+     * passa a usar os índices): uma linha por produto, com a soma esperada
+     */
+    private static void verificarSorteadas() {
+        List<Produto> produtos = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            produtos.add(new Produto("S" + i, "Produto " + i, 0.5 + i, 1000));
+        }
+        Random aleatorio = new Random(3);
+        int erradas = 0;
+        for (int v = 0; v < 2_000; v++) {
+            Venda venda = new Venda();
+            Map<String, Integer> esperadas = new HashMap<>();
+            long total = 0;
+            int quantidadeProdutos = 1 + aleatorio.nextInt(produtos.size());
+            int adicoes = 1 + aleatorio.nextInt(200);
+            for (int i = 0; i < adicoes; i++) {
+                Produto p = produtos.get(aleatorio.nextInt(quantidadeProdutos));
+                int quantidade = 1 + aleatorio.nextInt(3);
+                venda.adicionarItem(p, quantidade);
+                esperadas.merge(p.getCodigo(), quantidade, Integer::sum);
+                total += p.getPrecoCentavos() * quantidade;
+            }
+            boolean certa = venda.getItens().size() == esperadas.size() && venda.calcularTotalCentavos() == total;
+            for (ItemVenda item : venda.getItens()) {
+                String codigo = item.getProduto().getCodigo();
+                int esperada = esperadas.get(codigo);
+                certa &= item.getQuantidade() == esperada && venda.getQuantidade(codigo) == esperada;
+            }
+            if (!certa) {
+                erradas++;
+            }
+        }
+        verificar("vendas sorteadas com uma linha por produto (" + erradas + " erradas)", erradas == 0);
+    }
+    
+    /**
+     * Venda antiga restaurada com o mesmo produto a dois preços
+     */
+    private static void verificarPrecosDiferentes() {
+        Produto produto = new Produto("R", "Produto reajustado", 2.0, 1000);
+        Venda venda = new Venda();
+        venda.adicionarItem(produto, 2, 150);
+        venda.adicionarItem(produto, 3, 200);
+        venda.adicionarItem(produto, 1, 200);
+        verificar("uma linha por preço", venda.getItens().size() == 2);
+        verificar("quantidade por código com dois preços", venda.getQuantidade("R") == 6);
+        verificar("total com dois preços", venda.calcularTotalCentavos() == 2 * 150 + 4 * 200);
+    }
+    
+    /**
+     * O caixa tira a quantidade somada do estoque e a reprodução do diário
+     * devolve a venda com uma linha
+     */
+    private static void verificarCaixaEDiario(Path pasta) throws IOException {
+        Venda venda = new Venda();
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            Caixa caixa = new Caixa();
+            caixa.setDiario(diario);
+            Produto produto = new Produto("C", "Produto C", 3.0, 100);
+            caixa.cadastrarProduto(produto);
+            for (int i = 0; i < 50; i++) {
+                venda.adicionarItem(produto, 1);
+            }
+            verificar("venda com linha somada realizada", caixa.realizarVenda(venda));
+            verificar("estoque baixado pela quantidade somada", produto.getEstoque() == 50);
+        }
+        
+        Caixa reproduzido = new Caixa();
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            diario.reproduzir(reproduzido);
+        }
+        Venda lida = reproduzido.buscarVenda(venda.getNumero());
+        verificar("venda reproduzida", lida != null);
+        if (lida != null) {
+            verificar("venda reproduzida com uma linha", lida.getItens().size() == 1);
+            verificar("quantidade reproduzida", lida.getQuantidade("C") == 50);
+        }
+        verificar("estoque reproduzido", reproduzido.buscarProduto("C").getEstoque() == 50);
+    }
+    
+    private static void verificar(String nome, boolean condicao) {
+        if (!condicao) {
+            System.out.println("FALHOU: " + nome);
+            falhas++;
+        }
+    }
+    
+    /**
+     * Apaga uma pasta temporária com o que houver dentro
+     */
+    private static void apagar(Path pasta) throws IOException {
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta)) {
+            for (Path arquivo : arquivos) {
+                Files.delete(arquivo);
+            }
+        }
+        Files.delete(pasta);
+    }
+}
@@ -0,0 +1,167 @@
+package desempenho;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import controller.Caixa;
+import model.Produto;
+import model.Venda;
+import persistencia.Diario;
+
+/**
+ * Lote de vendas de um terminal que ficou sem conexão: realizarVenda em
+ * laço contra realizarVendas, com o diário em modo GRUPO (como no Main), num
+ * caixa novo a cada rodada. Mostra o tempo de cada rodada e confere que os
+ * dois caminhos chegam ao mesmo estado (vendas aceitas, saldo e estoque),
+ * inclusive com estoque escasso, quando parte das vendas é recusada. Também
+ * confere que vendas repetidas dentro do lote (o mesmo objeto ou o mesmo
+ * número) só são consideradas uma vez.
+ *
+ * Uso: java -cp out desempenho.LoteVendas [vendas] [rodadas]
+ * (padrão 500 vendas e 5 rodadas; termina com código 1 se alguma verificação falhar)
+ */
+public class LoteVendas {
+    private static final int PRODUTOS = 200;
+    
+    private static int falhas;
+    
+    public static void main(String[] args) throws Exception {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int rodadas = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        verificarRepetidas();
+        Path pasta = Files.createTempDirectory("lote-vendas");
+        try {
+            for (int estoque : new int[] {Integer.MAX_VALUE / 2, quantidade / PRODUTOS * 3}) {
+                System.out.printf("%d vendas, estoque %d por produto%n", quantidade, estoque);
+                for (int r = 0; r < rodadas; r++) {
+                    long semente = 100 + r;
+                    long inicio = System.nanoTime();
+                    String laco = executar(pasta.resolve("laco-" + estoque + "-" + r), quantidade, estoque, semente, false);
+                    double msLaco = (System.nanoTime() - inicio) / 1e6;
+                    inicio = System.nanoTime();
+                    String lote = executar(pasta.resolve("lote-" + estoque + "-" + r), quantidade, estoque, semente, true);
+                    double msLote = (System.nanoTime() - inicio) / 1e6;
+                    System.out.printf("  rodada %d: realizarVenda em laço %.1f ms, realizarVendas %.1f ms%n",
+                            r + 1, msLaco, msLote);
+                    verificar("laço e lote no mesmo estado (rodada " + (r + 1) + ")", laco, lote);
+                }
+            }
+        } finally {
+            apagarTudo(pasta);
+        }
+        System.out.println(falhas == 0 ? "OK" : falhas + " verificações falharam");
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Realiza as vendas sorteadas num caixa novo com diário, uma a uma (em
+     * ordem de data, como o lote decide) ou num único lote
+     *
+     * @return Resumo do estado final
+     */
+    private static String executar(Path pasta, int quantidade, int estoque, long semente, boolean emLote)
+            throws IOException {
+        try (Diario diario = new Diario(pasta, Diario.Modo.GRUPO)) {
+            Caixa caixa = new Caixa();
+            List<Produto> produtos = new ArrayList<>(PRODUTOS);
+            for (int i = 0; i < PRODUTOS; i++) {
+                produtos.add(new Produto("P" + i, "Produto " + i, 1.0 + i % 50, estoque));
+            }
+            caixa.cadastrarProdutos(produtos);
+            caixa.setDiario(diario);
+            
+            Random aleatorio = new Random(semente);
+            LocalDateTime data = LocalDateTime.of(2024, 1, 1, 8, 0);
+            List<Venda> vendas = new ArrayList<>(quantidade);
+            for (int i = 0; i < quantidade; i++) {
+                Venda venda = new Venda("L" + i, data.plusSeconds(i));
+                for (int j = 0; j < 3; j++) {
+                    venda.adicionarItem(produtos.get(aleatorio.nextInt(PRODUTOS)), 1 + aleatorio.nextInt(2));
+                }
+                vendas.add(venda);
+            }
+            
+            if (emLote) {
+                caixa.realizarVendas(vendas);
+            } else {
+                for (Venda venda : vendas) {
+                    caixa.realizarVenda(venda);
+                }
+            }
+            
+            long estoqueTotal = 0;
+            for (Produto p : produtos) {
+                estoqueTotal += p.getEstoque();
+            }
+            return "vendas=" + caixa.getQuantidadeVendas() + " saldo=" + caixa.getSaldoCaixaCentavos()
+                    + " estoque=" + estoqueTotal;
+        }
+    }
+    
+    /**
+     * A mesma venda duas vezes no lote é realizada uma vez só, e uma venda com
+     * número repetido não fica com o número que a mais antiga não conseguiu usar
+     */
+    private static void verificarRepetidas() {
+        Caixa caixa = new Caixa();
+        Produto produto = new Produto("R", "Produto repetido", 2.0, 5);
+        caixa.cadastrarProduto(produto);
+        LocalDateTime data = LocalDateTime.of(2024, 1, 1, 8, 0);
+        
+        Venda venda = new Venda("R1", data);
+        venda.adicionarItem(produto, 3);
+        boolean[] realizadas = caixa.realizarVendas(List.of(venda, venda));
+        verificar("mesma venda realizada uma vez", realizadas[0] && !realizadas[1]);
+        verificar("estoque da mesma venda baixado uma vez", produto.getEstoque() == 2);
+        verificar("saldo da mesma venda somado uma vez", caixa.getSaldoCaixaCentavos() == 600);
+        verificar("mesma venda registrada uma vez", caixa.getQuantidadeVendas() == 1);
+        
+        // A mais antiga não cabe no estoque; a mais nova, com o mesmo número, caberia
+        Venda antiga = new Venda("R2", data);
+        antiga.adicionarItem(produto, 3);
+        Venda nova = new Venda("R2", data.plusSeconds(1));
+        nova.adicionarItem(produto, 1);
+        realizadas = caixa.realizarVendas(List.of(nova, antiga));
+        verificar("número repetido no lote recusado", !realizadas[0] && !realizadas[1]);
+        verificar("estoque com número repetido no lote", produto.getEstoque() == 2);
+        verificar("número repetido fora do índice", caixa.buscarVenda("R2") == null);
+    }
+    
+    private static void verificar(String nome, boolean condicao) {
+        if (!condicao) {
+            System.out.println("FALHOU: " + nome);
+            falhas++;
+        }
+    }
+    
+    private static void verificar(String nome, String esperado, String obtido) {
+        if (!esperado.equals(obtido)) {
+            System.out.println("FALHOU: " + nome + ": " + esperado + " / " + obtido);
+            falhas++;
+        }
+    }
+    
+    /**
+     * Apaga uma pasta temporária com as subpastas e o que houver dentro
+     */
+    private static void apagarTudo(Path pasta) throws IOException {
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta)) {
+            for (Path arquivo : arquivos) {
+                if (Files.isDirectory(arquivo)) {
+                    apagarTudo(arquivo);
+                } else {
+                    Files.delete(arquivo);
+                }
+            }
+        }
+        Files.delete(pasta);
+    }
+}
@@ -0,0 +1,112 @@
+package desempenho;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import controller.HistoricoColunar;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Memória ocupada pelo histórico de vendas: o modelo de objetos do Caixa
+ * (lista de Venda mais o índice por número) contra o HistoricoColunar, com
+ * as mesmas vendas sorteadas (1 a 3 itens, 5% canceladas). A medida é o
+ * heap usado depois de coletas de lixo, antes e depois de montar o
+ * histórico. Também confere que as vendas remontadas do histórico colunar
+ * são iguais às originais e mede o custo de remontar e de localizar.
+ *
+ * Uso: java -Xmx3g -XX:+UseSerialGC -cp out desempenho.MemoriaHistorico [vendas]
+ * (padrão 1.000.000; termina com código 1 se as vendas remontadas diferirem)
+ */
+public class MemoriaHistorico {
+    private static final int PRODUTOS = 5_000;
+    
+    public static void main(String[] args) throws Exception {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<Produto> produtos = new ArrayList<>();
+        for (int i = 0; i < PRODUTOS; i++) {
+            produtos.add(new Produto("P" + i, "Produto " + i, 1.0 + i, 1000));
+        }
+        
+        // Modelo de objetos, como no Caixa
+        long antes = usado();
+        ArrayList<Venda> vendas = new ArrayList<>();
+        ConcurrentHashMap<String, Venda> porNumero = new ConcurrentHashMap<>();
+        Random aleatorio = new Random(7);
+        for (int i = 0; i < quantidade; i++) {
+            Venda venda = sortear(produtos, aleatorio);
+            vendas.add(venda);
+            porNumero.put(venda.getNumero(), venda);
+        }
+        long objetos = usado() - antes;
+        
+        // Histórico colunar com as mesmas vendas (os objetos ainda existem: mede só o acréscimo)
+        antes = usado();
+        HistoricoColunar historico = new HistoricoColunar();
+        for (Venda venda : vendas) {
+            historico.adicionar(venda);
+        }
+        long colunar = usado() - antes;
+        
+        System.out.printf("%d vendas%n", quantidade);
+        System.out.printf("  objetos (ArrayList<Venda> + índice por número): %.1f MB, %.0f bytes/venda%n",
+                objetos / 1e6, (double) objetos / quantidade);
+        System.out.printf("  HistoricoColunar:                              %.1f MB, %.0f bytes/venda%n",
+                colunar / 1e6, (double) colunar / quantidade);
+        
+        // Conferência e custo de remontar e de localizar
+        int diferentes = 0;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < quantidade; i++) {
+            Venda original = vendas.get(i);
+            Venda remontada = historico.getVenda(i);
+            if (!original.getNumero().equals(remontada.getNumero())
+                    || original.isCancelada() != remontada.isCancelada()
+                    || original.calcularTotalCentavos() != remontada.calcularTotalCentavos()
+                    || original.getItens().size() != remontada.getItens().size()) {
+                diferentes++;
+            }
+        }
+        long remontar = System.nanoTime() - inicio;
+        inicio = System.nanoTime();
+        for (int i = 0; i < quantidade; i++) {
+            if (historico.localizar(vendas.get(i).getNumero()) != i) {
+                diferentes++;
+            }
+        }
+        long localizar = System.nanoTime() - inicio;
+        System.out.printf("  getVenda: %.0f ns/venda, localizar: %.0f ns/venda%n",
+                (double) remontar / quantidade, (double) localizar / quantidade);
+        System.out.println(diferentes == 0 ? "OK" : diferentes + " vendas diferentes");
+        
+        // Mantém os dois vivos até o fim das medições
+        if (porNumero.size() != quantidade || diferentes > 0) {
+            System.exit(1);
+        }
+    }
+    
+    private static Venda sortear(List<Produto> produtos, Random aleatorio) {
+        Venda venda = new Venda();
+        int itens = 1 + aleatorio.nextInt(3);
+        for (int j = 0; j < itens; j++) {
+            venda.adicionarItem(produtos.get(aleatorio.nextInt(produtos.size())), 1 + aleatorio.nextInt(4));
+        }
+        if (aleatorio.nextInt(20) == 0) {
+            venda.cancelar();
+        }
+        return venda;
+    }
+    
+    /**
+     * Heap usado depois de algumas coletas
+     */
+    private static long usado() {
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,542 @@
+package desempenho;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import controller.BarramentoEventos;
+import controller.Caixa;
+import controller.EventoCaixa;
+import model.Produto;
+import model.Venda;
+import persistencia.CatalogoMapeado;
+import persistencia.Diario;
+import persistencia.Instantaneo;
+
+/**
+ * Verificação da recuperação do diário: grava produtos, vendas e
+ * cancelamentos, simula uma queda no meio da escrita (registro cortado e
+ * registro com CRC errado no fim do último segmento) e confere que a
+ * reprodução chega exatamente ao mesmo estado, inclusive quando o preço de
+ * um produto mudou depois da venda. Também confere que um segmento já
+ * fechado com defeito é recusado e que um instantâneo corrompido não é
+ * carregado (a carga volta para o instantâneo anterior). Por fim, confere o
+ * catálogo mapeado gravado junto com o instantâneo: o estoque volta igual,
+ * também quando a carga precisa voltar ao catálogo anterior, e um cabeçalho
+ * inconsistente é recusado. Uma falha de fsync (simulada) desativa o diário
+ * sem deixar nele a venda que o caixa deu como falha, e uma venda com número
+ * repetido (no caixa ou no diário) só é aplicada uma vez.
+ *
+ * Uso: java -cp out desempenho.RecuperacaoDiario
+ * (termina com código 1 se alguma verificação falhar)
+ */
+public class RecuperacaoDiario {
+    private static int falhas;
+    
+    public static void main(String[] args) throws Exception {
+        Path pasta = Files.createTempDirectory("diario-verificacao");
+        try {
+            verificarFinalCortado(pasta.resolve("cortado"));
+            verificarSegmentoFechadoCorrompido(pasta.resolve("fechado"));
+            verificarInstantaneoCorrompido(pasta.resolve("instantaneo"));
+            verificarCatalogo(pasta.resolve("catalogo"));
+            verificarFalhaFsync(pasta.resolve("fsync"));
+            verificarNumeroRepetido(pasta.resolve("repetido"));
+        } finally {
+            apagar(pasta);
+        }
+        System.out.println(falhas == 0 ? "OK" : falhas + " verificações falharam");
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+    
+    private static void verificarFinalCortado(Path pasta) throws IOException {
+        Caixa original = new Caixa();
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            original.setDiario(diario);
+            preencher(original);
+        }
+        
+        // Queda no meio da escrita: registro com CRC errado e, depois dele, um registro cortado
+        Path ultimo = ultimoSegmento(pasta);
+        long tamanhoValido = Files.size(ultimo);
+        try (FileChannel canal = FileChannel.open(ultimo, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer crcErrado = ByteBuffer.allocate(8 + 4);
+            crcErrado.putInt(4).putInt(12345).putInt(7).flip();
+            canal.write(crcErrado);
+            ByteBuffer cortado = ByteBuffer.allocate(8 + 3);
+            cortado.putInt(100).putInt(0).put(new byte[3]).flip();
+            canal.write(cortado);
+        }
+        
+        // O produto P0 já existe com outro preço (como se viesse de um catálogo
+        // atualizado): a reprodução deve usar o preço gravado em cada item
+        Caixa recuperado = new Caixa();
+        recuperado.cadastrarProduto(Produto.emCentavos("P0", "Produto 0", 99_999, 100));
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            diario.reproduzir(recuperado);
+            verificar("final inválido descartado do arquivo", Files.size(ultimo) == tamanhoValido);
+            compararEstado(original, recuperado);
+            
+            // O diário continua gravável depois do descarte: uma venda nova também é recuperada
+            recuperado.setDiario(diario);
+            Venda venda = new Venda();
+            venda.adicionarItem(recuperado.buscarProduto("P1"), 1);
+            verificar("venda depois da recuperação", recuperado.realizarVenda(venda));
+        }
+        
+        Caixa denovo = new Caixa();
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            diario.reproduzir(denovo);
+        }
+        verificar("venda depois da recuperação reproduzida",
+                denovo.getQuantidadeVendas() == original.getQuantidadeVendas() + 1);
+    }
+    
+    private static void verificarSegmentoFechadoCorrompido(Path pasta) throws IOException {
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            Caixa caixa = new Caixa();
+            caixa.setDiario(diario);
+            preencher(caixa);
+            diario.rotacionar();
+        }
+        
+        // Troca um byte no meio do primeiro segmento (já fechado)
+        corromper(primeiroSegmento(pasta));
+        
+        boolean recusado = false;
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            diario.reproduzir(new Caixa());
+        } catch (IOException e) {
+            recusado = true;
+        }
+        verificar("segmento fechado corrompido recusado", recusado);
+    }
+    
+    private static void verificarInstantaneoCorrompido(Path pasta) throws IOException {
+        Caixa original = new Caixa();
+        long anterior;
+        long recente;
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            original.setDiario(diario);
+            preencher(original);
+            anterior = Instantaneo.gravar(original, diario, pasta);
+            vender(original, 20);
+            recente = Instantaneo.gravar(original, diario, pasta);
+            vender(original, 20);
+        }
+        
+        // Com o mais recente corrompido, carrega o anterior e reproduz o diário desde ele
+        corromper(pasta.resolve(String.format("caixa-%08d.instantaneo", recente)));
+        Caixa recuperado = new Caixa();
+        long segmento = Instantaneo.carregarMaisRecente(pasta, recuperado);
+        verificar("instantâneo anterior carregado", segmento == anterior);
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            diario.reproduzir(recuperado, segmento);
+        }
+        compararEstado(original, recuperado);
+        
+        // Com os dois corrompidos não há como reconstruir: o caixa não recebe nada
+        corromper(pasta.resolve(String.format("caixa-%08d.instantaneo", anterior)));
+        Caixa vazio = new Caixa();
+        boolean recusado = false;
+        try {
+            Instantaneo.carregarMaisRecente(pasta, vazio);
+        } catch (IOException e) {
+            recusado = true;
+        }
+        verificar("instantâneos corrompidos recusados", recusado && vazio.getQuantidadeVendas() == 0
+                && vazio.getProdutos().isEmpty());
+    }
+    
+    private static void verificarCatalogo(Path pasta) throws Exception {
+        Files.createDirectories(pasta);
+        Path arquivo = pasta.resolve("catalogo.dat");
+        List<Produto> externos = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            externos.add(new Produto("C" + i, "Catálogo " + i, 2.0 + i, 100));
+        }
+        CatalogoMapeado.gravar(arquivo, externos);
+        
+        Caixa original = new Caixa();
+        original.setCatalogo(new CatalogoMapeado(arquivo));
+        long anterior;
+        long recente;
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            original.setDiario(diario);
+            original.setEventos(new BarramentoEventos());
+            Set<String> avisados = ConcurrentHashMap.newKeySet();
+            original.getEventos().assinar("verificacao-catalogo", (evento, fimDoLote) -> {
+                if (evento.getTipo() == EventoCaixa.Tipo.PRODUTO_CADASTRADO) {
+                    avisados.add(evento.getProduto().getCodigo());
+                }
+            });
+            preencher(original);
+            venderCatalogo(original, 0, 5);
+            anterior = Instantaneo.gravar(original, diario, pasta);
+            venderCatalogo(original, 5, 10);
+            recente = Instantaneo.gravar(original, diario, pasta, arquivo);
+            venderCatalogo(original, 10, 12);
+            
+            long limite = System.nanoTime() + 2_000_000_000L;
+            while (avisados.size() < 22 && System.nanoTime() < limite) {
+                Thread.sleep(10);
+            }
+            verificar("produtos do catálogo publicados", avisados.size() == 22);
+        }
+        
+        // Carga normal: o catálogo novo é do instantâneo carregado
+        verificar("catálogo novo do segmento do instantâneo", new CatalogoMapeado(arquivo).getSegmento() == recente);
+        Caixa recuperado = carregarComCatalogo(pasta, arquivo, recente);
+        compararCatalogo(original, recuperado);
+        
+        // Com o instantâneo recente corrompido, o catálogo novo já tem vendas que
+        // o diário vai reproduzir de novo: a carga usa o catálogo anterior
+        corromper(pasta.resolve(String.format("caixa-%08d.instantaneo", recente)));
+        Caixa anteriorRecuperado = carregarComCatalogo(pasta, arquivo, anterior);
+        compararCatalogo(original, anteriorRecuperado);
+        
+        // Quantidade de registros maior que o índice: recusado ao abrir
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.WRITE)) {
+            ByteBuffer quantidade = ByteBuffer.allocate(4);
+            quantidade.putInt(0, 1 << 20);
+            canal.write(quantidade, 8);
+        }
+        boolean recusado = false;
+        try {
+            new CatalogoMapeado(arquivo).close();
+        } catch (IOException e) {
+            recusado = true;
+        }
+        verificar("cabeçalho inconsistente recusado", recusado);
+    }
+    
+    private static void verificarFalhaFsync(Path pasta) throws Exception {
+        Caixa original = new Caixa();
+        CanalComFalha canal;
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            original.setDiario(diario);
+            preencher(original);
+            
+            // Troca o canal do diário por um cujo fsync pode falhar
+            Field campo = Diario.class.getDeclaredField("canal");
+            campo.setAccessible(true);
+            canal = new CanalComFalha((FileChannel) campo.get(diario));
+            campo.set(diario, canal);
+            
+            int estoqueAntes = original.buscarProduto("P1").getEstoque();
+            int vendasAntes = original.getQuantidadeVendas();
+            canal.falhar = true;
+            verificar("venda com fsync falho recusada", falhaAoVender(original));
+            canal.falhar = false;
+            verificar("diário desativado depois da falha", falhaAoVender(original));
+            verificar("estoque devolvido", original.buscarProduto("P1").getEstoque() == estoqueAntes);
+            verificar("venda falha fora do caixa", original.getQuantidadeVendas() == vendasAntes);
+        }
+        
+        // A venda que falhou não pode voltar na reprodução
+        Caixa recuperado = new Caixa();
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            diario.reproduzir(recuperado);
+        }
+        compararEstado(original, recuperado);
+    }
+    
+    private static void verificarNumeroRepetido(Path pasta) throws IOException {
+        Produto produto = new Produto("P0", "Produto 0", 1.0, 100);
+        Venda venda = new Venda();
+        venda.adicionarItem(produto, 3);
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            diario.registrarProduto(produto);
+            diario.registrarVenda(venda);
+            diario.registrarVenda(venda);
+        }
+        
+        Caixa caixa = new Caixa();
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            diario.reproduzir(caixa);
+        }
+        verificar("registro repetido aplicado uma vez", caixa.getQuantidadeVendas() == 1
+                && caixa.buscarProduto("P0").getEstoque() == 97 && caixa.getSaldoCaixaCentavos() == 300);
+        
+        Venda repetida = new Venda(venda.getNumero(), venda.getData());
+        repetida.adicionarItem(caixa.buscarProduto("P0"), 5);
+        verificar("número repetido recusado", !caixa.realizarVenda(repetida)
+                && caixa.buscarProduto("P0").getEstoque() == 97 && caixa.getQuantidadeVendas() == 1
+                && caixa.buscarVenda(venda.getNumero()).getItens().get(0).getQuantidade() == 3);
+    }
+    
+    /**
+     * Tenta vender uma unidade de P1
+     * 
+     * @return true se a venda falhou por erro do diário
+     */
+    private static boolean falhaAoVender(Caixa caixa) {
+        Venda venda = new Venda();
+        venda.adicionarItem(caixa.buscarProduto("P1"), 1);
+        try {
+            caixa.realizarVenda(venda);
+            return false;
+        } catch (UncheckedIOException e) {
+            return true;
+        }
+    }
+    
+    /**
+     * Carrega instantâneo, catálogo e diário na ordem do Main: o catálogo
+     * escolhido é o mais novo que não passa do instantâneo carregado
+     */
+    private static Caixa carregarComCatalogo(Path pasta, Path arquivo, long esperado) throws IOException {
+        Caixa caixa = new Caixa();
+        long segmento = Instantaneo.carregarMaisRecente(pasta, caixa);
+        verificar("instantâneo " + esperado + " carregado", segmento == esperado);
+        for (Path candidato : new Path[] {arquivo, CatalogoMapeado.anterior(arquivo)}) {
+            CatalogoMapeado catalogo = new CatalogoMapeado(candidato);
+            if (catalogo.getSegmento() <= segmento) {
+                caixa.setCatalogo(catalogo);
+                break;
+            }
+            catalogo.close();
+        }
+        try (Diario diario = new Diario(pasta, Diario.Modo.SINCRONO)) {
+            diario.reproduzir(caixa, segmento);
+        }
+        return caixa;
+    }
+    
+    /**
+     * Vende uma unidade de cada produto do catálogo no intervalo [de, ate)
+     */
+    private static void venderCatalogo(Caixa caixa, int de, int ate) {
+        for (int i = de; i < ate; i++) {
+            Venda venda = new Venda();
+            venda.adicionarItem(caixa.buscarProduto("C" + i), 1 + i % 4);
+            caixa.realizarVenda(venda);
+        }
+    }
+    
+    private static void compararCatalogo(Caixa esperado, Caixa obtido) {
+        for (int i = 0; i < 20; i++) {
+            Produto p = esperado.buscarProduto("C" + i);
+            Produto q = obtido.buscarProduto("C" + i);
+            verificar("estoque de C" + i, q != null && q.getEstoque() == p.getEstoque());
+        }
+        for (int i = 0; i < 10; i++) {
+            Produto q = obtido.buscarProduto("P" + i);
+            verificar("estoque de P" + i, q != null && q.getEstoque() == esperado.buscarProduto("P" + i).getEstoque());
+        }
+        verificar("quantidade de vendas", esperado.getQuantidadeVendas() == obtido.getQuantidadeVendas());
+        verificar("saldo", esperado.getSaldoCaixaCentavos() == obtido.getSaldoCaixaCentavos());
+    }
+    
+    /**
+     * Troca um byte no meio do arquivo
+     */
+    private static void corromper(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long meio = canal.size() / 2;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            canal.read(b, meio);
+            b.put(0, (byte) (b.get(0) ^ 0x5A));
+            b.rewind();
+            canal.write(b, meio);
+        }
+    }
+    
+    /**
+     * Cadastra produtos e faz vendas (uma delas cancelada)
+     */
+    private static void preencher(Caixa caixa) {
+        for (int i = 0; i < 10; i++) {
+            caixa.cadastrarProduto(new Produto("P" + i, "Produto " + i, 1.0 + i, 100));
+        }
+        vender(caixa, 50);
+    }
+    
+    /**
+     * Faz vendas dos produtos cadastrados por preencher (uma a cada sete é cancelada)
+     */
+    private static void vender(Caixa caixa, int quantidade) {
+        for (int i = 0; i < quantidade; i++) {
+            Venda venda = new Venda();
+            venda.adicionarItem(caixa.buscarProduto("P" + (i % 10)), 1 + i % 3);
+            venda.adicionarItem(caixa.buscarProduto("P0"), 1);
+            caixa.realizarVenda(venda);
+            if (i % 7 == 0) {
+                caixa.cancelarVenda(venda.getNumero());
+            }
+        }
+    }
+    
+    private static void compararEstado(Caixa esperado, Caixa obtido) {
+        verificar("quantidade de produtos", esperado.getProdutos().size() == obtido.getProdutos().size());
+        for (Produto p : esperado.getProdutos()) {
+            Produto q = obtido.buscarProduto(p.getCodigo());
+            verificar("estoque de " + p.getCodigo(), q != null && q.getEstoque() == p.getEstoque());
+        }
+        verificar("quantidade de vendas", esperado.getQuantidadeVendas() == obtido.getQuantidadeVendas());
+        for (int i = 0; i < Math.min(esperado.getQuantidadeVendas(), obtido.getQuantidadeVendas()); i++) {
+            Venda a = esperado.getVenda(i);
+            Venda b = obtido.getVenda(i);
+            verificar("venda " + i, a.getNumero().equals(b.getNumero()) && a.getData().equals(b.getData())
+                    && a.isCancelada() == b.isCancelada() && a.calcularTotalCentavos() == b.calcularTotalCentavos());
+        }
+        verificar("saldo", esperado.getSaldoCaixaCentavos() == obtido.getSaldoCaixaCentavos());
+    }
+    
+    private static void verificar(String descricao, boolean ok) {
+        if (!ok) {
+            falhas++;
+            System.out.println("FALHOU: " + descricao);
+        }
+    }
+    
+    private static Path primeiroSegmento(Path pasta) throws IOException {
+        return segmentos(pasta).get(0);
+    }
+    
+    private static Path ultimoSegmento(Path pasta) throws IOException {
+        List<Path> segmentos = segmentos(pasta);
+        return segmentos.get(segmentos.size() - 1);
+    }
+    
+    private static List<Path> segmentos(Path pasta) throws IOException {
+        List<Path> segmentos = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta, "*.diario")) {
+            for (Path arquivo : arquivos) {
+                segmentos.add(arquivo);
+            }
+        }
+        segmentos.sort(null);
+        return segmentos;
+    }
+    
+    private static void apagar(Path caminho) throws IOException {
+        if (Files.isDirectory(caminho)) {
+            try (DirectoryStream<Path> filhos = Files.newDirectoryStream(caminho)) {
+                for (Path filho : filhos) {
+                    apagar(filho);
+                }
+            }
+        }
+        Files.deleteIfExists(caminho);
+    }
+    
+    /**
+     * Canal que repassa tudo para o canal do diário, mas cujo fsync falha
+     * enquanto "falhar" estiver ligado (simula um erro de disco)
+     */
+    private static class CanalComFalha extends FileChannel {
+        private final FileChannel canal;
+        volatile boolean falhar;
+        
+        CanalComFalha(FileChannel canal) {
+            this.canal = canal;
+        }
+        
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (falhar) {
+                throw new IOException("Falha de fsync simulada");
+            }
+            canal.force(metaData);
+        }
+        
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return canal.read(dst);
+        }
+        
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return canal.read(dsts, offset, length);
+        }
+        
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return canal.write(src);
+        }
+        
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return canal.write(srcs, offset, length);
+        }
+        
+        @Override
+        public long position() throws IOException {
+            return canal.position();
+        }
+        
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            canal.position(newPosition);
+            return this;
+        }
+        
+        @Override
+        public long size() throws IOException {
+            return canal.size();
+        }
+        
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            canal.truncate(size);
+            return this;
+        }
+        
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return canal.transferTo(position, count, target);
+        }
+        
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return canal.transferFrom(src, position, count);
+        }
+        
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return canal.read(dst, position);
+        }
+        
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return canal.write(src, position);
+        }
+        
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return canal.map(mode, position, size);
+        }
+        
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return canal.lock(position, size, shared);
+        }
+        
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return canal.tryLock(position, size, shared);
+        }
+        
+        @Override
+        protected void implCloseChannel() throws IOException {
+            canal.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package desempenho;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import controller.Caixa;
+import controller.GerenciadorReservas;
+import controller.Reserva;
+import model.ItemVenda;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Teste de estresse do Caixa compartilhado por vários terminais: cada thread
+ * faz vendas (avulsas, em lote e com reserva de cesta) e cancelamentos de
+ * produtos sorteados entre poucos, para as threads disputarem o mesmo
+ * estoque. No fim confere que nada se perdeu nem foi contado duas vezes:
+ * - estoque final + unidades vendidas = estoque inicial, para cada produto;
+ * - saldo do caixa = soma dos totais das vendas não canceladas;
+ * - nenhuma reserva sobrou e nenhum número de venda se repete.
+ *
+ * Uso: java -cp out desempenho.StressCaixa [threads] [operações por thread]
+ * (termina com código 1 se alguma verificação falhar)
+ */
+public class StressCaixa {
+    private static final int PRODUTOS = 20;
+    private static final int ESTOQUE_INICIAL = 5_000;
+    
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operacoes = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        
+        Caixa caixa = new Caixa();
+        GerenciadorReservas reservas = new GerenciadorReservas(caixa, 60);
+        caixa.setReservas(reservas);
+        List<Produto> produtos = new ArrayList<>();
+        for (int i = 0; i < PRODUTOS; i++) {
+            Produto p = new Produto("S" + i, "Produto " + i, 0.5 + i, ESTOQUE_INICIAL);
+            caixa.cadastrarProduto(p);
+            produtos.add(p);
+        }
+        
+        // Lotes reenviados por mais de um terminal: o mesmo número chega em vendas diferentes
+        ConcurrentLinkedQueue<String> numerosReenviados = new ConcurrentLinkedQueue<>();
+        
+        CountDownLatch inicio = new CountDownLatch(1);
+        CountDownLatch fim = new CountDownLatch(threads);
+        Throwable[] erro = new Throwable[1];
+        long comeco = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long semente = t;
+            new Thread(() -> {
+                try {
+                    inicio.await();
+                    terminal(caixa, reservas, produtos, new Random(semente), operacoes, numerosReenviados);
+                } catch (Throwable e) {
+                    erro[0] = e;
+                } finally {
+                    fim.countDown();
+                }
+            }, "terminal-" + t).start();
+        }
+        inicio.countDown();
+        fim.await();
+        double segundos = (System.nanoTime() - comeco) / 1e9;
+        reservas.close();
+        
+        int falhas = 0;
+        if (erro[0] != null) {
+            System.out.println("FALHOU: exceção num terminal: " + erro[0]);
+            falhas++;
+        }
+        
+        // Unidades vendidas e saldo esperado, a partir do histórico
+        int[] vendidas = new int[PRODUTOS];
+        long saldoEsperado = 0;
+        HashSet<String> numeros = new HashSet<>();
+        int quantidade = caixa.getQuantidadeVendas();
+        int canceladas = 0;
+        for (int i = 0; i < quantidade; i++) {
+            Venda venda = caixa.getVenda(i);
+            if (!numeros.add(venda.getNumero())) {
+                System.out.println("FALHOU: número repetido " + venda.getNumero());
+                falhas++;
+            }
+            if (venda.isCancelada()) {
+                canceladas++;
+                continue;
+            }
+            saldoEsperado += venda.calcularTotalCentavos();
+            for (ItemVenda item : venda.getItens()) {
+                vendidas[produtos.indexOf(item.getProduto())] += item.getQuantidade();
+            }
+        }
+        for (int i = 0; i < PRODUTOS; i++) {
+            Produto p = produtos.get(i);
+            if (p.getReservado() != 0) {
+                System.out.println("FALHOU: " + p.getCodigo() + " ainda tem " + p.getReservado() + " reservados");
+                falhas++;
+            }
+            if (p.getEstoque() + vendidas[i] != ESTOQUE_INICIAL) {
+                System.out.println("FALHOU: " + p.getCodigo() + " estoque " + p.getEstoque() + " + vendidas "
+                        + vendidas[i] + " != " + ESTOQUE_INICIAL);
+                falhas++;
+            }
+        }
+        if (caixa.getSaldoCaixaCentavos() != saldoEsperado) {
+            System.out.println("FALHOU: saldo " + caixa.getSaldoCaixaCentavos() + " != soma das vendas " + saldoEsperado);
+            falhas++;
+        }
+        if (reservas.getQuantidadeAtivas() != 0) {
+            System.out.println("FALHOU: " + reservas.getQuantidadeAtivas() + " reservas ativas no fim");
+            falhas++;
+        }
+        
+        System.out.printf("%d threads, %d operações em %.2f s: %d vendas (%d canceladas)%n",
+                threads, threads * operacoes, segundos, quantidade, canceladas);
+        System.out.println(falhas == 0 ? "OK" : falhas + " verificações falharam");
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Operações de um terminal: venda avulsa, venda de cesta reservada, lote e cancelamento
+     */
+    private static void terminal(Caixa caixa, GerenciadorReservas reservas, List<Produto> produtos, Random aleatorio,
+            int operacoes, ConcurrentLinkedQueue<String> numerosReenviados) {
+        List<String> minhas = new ArrayList<>();
+        for (int i = 0; i < operacoes; i++) {
+            int sorteio = aleatorio.nextInt(10);
+            if (sorteio < 4) {
+                Venda venda = cesta(produtos, aleatorio);
+                if (caixa.realizarVenda(venda)) {
+                    minhas.add(venda.getNumero());
+                }
+            } else if (sorteio < 6) {
+                Reserva reserva = reservas.abrir();
+                Venda venda = new Venda();
+                for (int j = 0; j < 1 + aleatorio.nextInt(3); j++) {
+                    Produto p = produtos.get(aleatorio.nextInt(produtos.size()));
+                    int q = 1 + aleatorio.nextInt(3);
+                    if (reservas.reservar(reserva, p, q)) {
+                        venda.adicionarItem(p, q);
+                    }
+                }
+                // Parte das cestas desiste e libera a reserva
+                if (aleatorio.nextInt(4) == 0 || venda.getItens().isEmpty()) {
+                    reservas.liberar(reserva);
+                } else if (reservas.confirmar(reserva, venda)) {
+                    minhas.add(venda.getNumero());
+                } else {
+                    reservas.liberar(reserva);
+                }
+            } else if (sorteio < 8) {
+                // Lote com um número já enviado por outro terminal (reenvio), que deve ser recusado ou aceito uma vez só
+                List<Venda> lote = new ArrayList<>();
+                for (int j = 0; j < 5; j++) {
+                    lote.add(cesta(produtos, aleatorio));
+                }
+                String reenviado = numerosReenviados.poll();
+                String numero = reenviado != null ? reenviado : UUID.randomUUID().toString();
+                Venda repetida = new Venda(numero, LocalDateTime.now());
+                repetida.adicionarItem(produtos.get(aleatorio.nextInt(produtos.size())), 1);
+                lote.add(repetida);
+                if (reenviado == null) {
+                    numerosReenviados.add(numero);
+                }
+                boolean[] realizadas = caixa.realizarVendas(lote);
+                for (int j = 0; j < realizadas.length; j++) {
+                    if (realizadas[j]) {
+                        minhas.add(lote.get(j).getNumero());
+                    }
+                }
+            } else if (!minhas.isEmpty()) {
+                caixa.cancelarVenda(minhas.remove(aleatorio.nextInt(minhas.size())));
+            }
+        }
+    }
+    
+    private static Venda cesta(List<Produto> produtos, Random aleatorio) {
+        Venda venda = new Venda();
+        for (int j = 0; j < 1 + aleatorio.nextInt(3); j++) {
+            venda.adicionarItem(produtos.get(aleatorio.nextInt(produtos.size())), 1 + aleatorio.nextInt(3));
+        }
+        return venda;
+    }
+}
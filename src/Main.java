@@ -1,31 +1,96 @@
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
+import controller.AnaliseVendas;
+import controller.BarramentoEventos;
 import controller.Caixa;
+import controller.GerenciadorReservas;
+import controller.Reposicao;
 import model.Produto;
+import persistencia.CatalogoMapeado;
+import persistencia.Diario;
+import persistencia.Instantaneo;
 import view.CadastroProdutoView;
 import view.GestaoVendasView;
+import view.PainelVendasView;
 import view.PontoVendaView;
+import view.ReposicaoView;
 
 public class Main {
+    // Pasta do diário e dos instantâneos, dentro da pasta onde o sistema é executado
+    private static final Path PASTA_DADOS = Paths.get("dados");
+
+    // Catálogo de produtos em layout fixo (opcional), aberto por mapeamento em memória
+    private static final Path ARQUIVO_CATALOGO = PASTA_DADOS.resolve("catalogo.dat");
+
+    // Intervalo entre instantâneos automáticos, em minutos
+    private static final int INTERVALO_INSTANTANEO = 15;
+
+    // Tempo sem uso depois do qual a reserva de estoque de uma cesta é liberada, em segundos
+    private static final long VALIDADE_RESERVA = 10 * 60;
+
+    // Limite de reposição dos produtos que não têm limite próprio, em unidades
+    private static final int LIMITE_REPOSICAO = 5;
+
     private static Caixa caixa;
 
+    // Diário ligado ao caixa, ou null se o sistema está só em memória
+    private static Diario diario;
+
+    // Totais de vendas por produto, hora e dia, mantidos a cada venda
+    private static AnaliseVendas analise;
+
+    // Produtos mais perto de acabar e previsão de quando acabam
+    private static Reposicao reposicao;
+
     public static void main(String[] args) {
         iniciarSistema();
     }
 
     private static void iniciarSistema() {
         caixa = new Caixa();
-        adicionarProdutosExemplo();
+        // O catálogo é escolhido depois do instantâneo e ligado antes de reproduzir o diário
+        long primeiroSegmento = carregarInstantaneo();
+        boolean temCatalogo = carregarCatalogo(primeiroSegmento);
+        if (primeiroSegmento >= 0) {
+            carregarDiario(primeiroSegmento);
+        }
+        caixa.setReservas(new GerenciadorReservas(caixa, VALIDADE_RESERVA));
+        caixa.setEventos(new BarramentoEventos());
+        analise = new AnaliseVendas();
+        analise.acompanhar(caixa);
+        reposicao = new Reposicao(LIMITE_REPOSICAO);
+        reposicao.acompanhar(caixa);
+
+        // Produtos de exemplo só na primeira execução (sem catálogo e diário vazio)
+        if (!temCatalogo && caixa.getProdutos().isEmpty()) {
+            adicionarProdutosExemplo();
+        }
 
         JFrame janela = new JFrame("Menu Principal");
 
         janela.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        janela.addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                encerrarSistema();
+            }
+        });
 
         /* é preciso pq Sem ela:
 O comportamento padrão de um JFrame é:
@@ -57,9 +122,35 @@ HIDE_ON_CLOSE
             }
         });
 
+        JButton btnPainel = new JButton("Painel de Vendas");
+        btnPainel.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                new PainelVendasView(caixa, analise);
+            }
+        });
+
         painel.add(btnCadastro);
         painel.add(btnVenda);
         painel.add(btnGestao);
+        // O botão mostra quantos produtos estão no limite: é atualizado na hora
+        // quando mais um chega nele e, para as saídas do limite (reposição,
+        // cancelamento, limite alterado), no mesmo intervalo da tela de reposição
+        JButton btnReposicao = new JButton(textoReposicao());
+        btnReposicao.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                new ReposicaoView(reposicao);
+            }
+        });
+        reposicao.adicionarAviso(produto -> SwingUtilities.invokeLater(() -> btnReposicao.setText(textoReposicao())));
+        Timer atualizacaoReposicao = new Timer(ReposicaoView.INTERVALO_ATUALIZACAO, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                btnReposicao.setText(textoReposicao());
+            }
+        });
+        atualizacaoReposicao.start();
+
+        painel.add(btnPainel);
+        painel.add(btnReposicao);
 
         janela.add(painel);
         janela.pack(); // Ajusta automaticamente o tamanho da janela aos componentes
@@ -67,6 +158,117 @@ HIDE_ON_CLOSE
         janela.setVisible(true);
     }
 
+    private static String textoReposicao() {
+        int abaixo = reposicao.getAbaixoDoLimite().size();
+        return abaixo == 0 ? "Reposição" : "Reposição (" + abaixo + " a repor)";
+    }
+
+    /**
+     * Abre o catálogo mapeado, se existir. Os produtos não são lidos agora:
+     * cada um é carregado na primeira vez em que é buscado. Um catálogo
+     * gravado depois do instantâneo carregado já tem vendas que o diário
+     * ainda vai reproduzir; nesse caso é usado o catálogo anterior.
+     *
+     * @param primeiroSegmento Segmento do instantâneo carregado, ou -1 se o sistema está só em memória
+     * @return true se o catálogo foi aberto
+     */
+    private static boolean carregarCatalogo(long primeiroSegmento) {
+        for (Path arquivo : new Path[] {ARQUIVO_CATALOGO, CatalogoMapeado.anterior(ARQUIVO_CATALOGO)}) {
+            if (!Files.exists(arquivo)) {
+                continue;
+            }
+            try {
+                CatalogoMapeado catalogo = new CatalogoMapeado(arquivo);
+                if (primeiroSegmento >= 0 && catalogo.getSegmento() > primeiroSegmento) {
+                    catalogo.close();
+                    continue;
+                }
+                caixa.setCatalogo(catalogo);
+                return true;
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(null,
+                        "Erro ao abrir o catálogo de produtos: " + e.getMessage(),
+                        "Erro", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Carrega o instantâneo mais recente no caixa.
+     * Se não puder ser lido, o sistema segue só em memória.
+     *
+     * @return Primeiro segmento do diário a reproduzir, ou -1 se o diário não será usado
+     */
+    private static long carregarInstantaneo() {
+        try {
+            return Instantaneo.carregarMaisRecente(PASTA_DADOS, caixa);
+        } catch (IOException e) {
+            mostrarErroDiario(e);
+            return -1;
+        }
+    }
+
+    /**
+     * Reproduz o trecho do diário gravado depois do instantâneo e liga o
+     * diário para as próximas operações. Se o diário não puder ser aberto,
+     * o sistema segue só em memória.
+     */
+    private static void carregarDiario(long primeiroSegmento) {
+        try {
+            Diario aberto = new Diario(PASTA_DADOS, Diario.Modo.GRUPO);
+            aberto.reproduzir(caixa, primeiroSegmento);
+            caixa.setDiario(aberto);
+            diario = aberto;
+            agendarInstantaneos(aberto);
+        } catch (IOException e) {
+            mostrarErroDiario(e);
+        }
+    }
+
+    private static void mostrarErroDiario(IOException e) {
+        JOptionPane.showMessageDialog(null,
+                "Erro ao carregar o diário de vendas: " + e.getMessage()
+                + "\nAs operações não serão gravadas em disco.",
+                "Erro", JOptionPane.ERROR_MESSAGE);
+    }
+
+    /**
+     * Ao fechar o sistema, grava um último instantâneo e, com ele, o catálogo
+     * mapeado, para a próxima inicialização abrir todos os produtos sem lê-los
+     */
+    private static void encerrarSistema() {
+        if (diario == null) {
+            return;
+        }
+        try {
+            Instantaneo.gravar(caixa, diario, PASTA_DADOS, ARQUIVO_CATALOGO);
+        } catch (IOException | IllegalArgumentException e) {
+            // O diário continua valendo; a próxima inicialização usa o catálogo que já existia
+            System.err.println("Erro ao gravar o catálogo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Grava instantâneos periodicamente em segundo plano, para que a
+     * próxima inicialização reproduza só um trecho curto do diário
+     */
+    private static void agendarInstantaneos(Diario diario) {
+        ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "instantaneo-caixa");
+            t.setDaemon(true);
+            return t;
+        });
+        agendador.scheduleWithFixedDelay(() -> {
+            try {
+                Instantaneo.gravar(caixa, diario, PASTA_DADOS);
+            } catch (IOException e) {
+                // O diário continua valendo; tenta de novo no próximo ciclo
+                System.err.println("Erro ao gravar instantâneo: " + e.getMessage());
+            }
+        }, INTERVALO_INSTANTANEO, INTERVALO_INSTANTANEO, TimeUnit.MINUTES);
+    }
+
     private static void adicionarProdutosExemplo() {
         if (!caixa.cadastrarProduto(new Produto("001", "Arroz 5Kg", 25.90, 10))) {
             JOptionPane.showMessageDialog(null,
@@ -0,0 +1,299 @@
+package controller;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.ItemVenda;
+import model.Venda;
+
+/**
+ * Totais de vendas mantidos a cada venda realizada ou cancelada: por
+ * produto, por hora e por dia, além do total geral.
+ *
+ * Cada venda realizada soma seus itens nos acumulados e cada cancelamento
+ * subtrai exatamente os mesmos valores (em centavos inteiros), então as
+ * consultas nunca precisam percorrer o histórico: um acumulado sai em O(1)
+ * e uma faixa de horas ou dias em O(quantidade de horas ou dias).
+ *
+ * As vendas chegam pelo barramento de eventos do Caixa, na thread da
+ * assinatura: os números podem ficar alguns milissegundos atrás do caixa.
+ * Se a assinatura for desligada por atraso, os acumulados são refeitos a
+ * partir do histórico do caixa numa thread à parte; enquanto isso,
+ * isDesatualizada() retorna true.
+ *
+ * Só uma thread escreve nos acumulados de cada vez: a da assinatura, ou a
+ * da carga com a assinatura parada. Por isso cada campo é um long comum
+ * (volatile, para as telas lerem o valor mais recente), sem somas atômicas.
+ */
+public class AnaliseVendas implements AssinanteEventos {
+    private final ConcurrentHashMap<String, Acumulado> porProduto = new ConcurrentHashMap<>();
+    
+    // Chave: horas (ou dias) desde 1970 na hora local da venda
+    private final ConcurrentHashMap<Long, Acumulado> porHora = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Acumulado> porDia = new ConcurrentHashMap<>();
+    
+    private final Acumulado total = new Acumulado();
+    
+    // Caixa acompanhado e assinatura no barramento dele (protegida por this)
+    private Caixa caixa;
+    private BarramentoEventos.Assinatura assinatura;
+    private boolean encerrada;
+    
+    // Verdadeiro da perda da assinatura até o fim da ressincronização
+    private volatile boolean desatualizada;
+    
+    /**
+     * Passa a acompanhar o caixa (que precisa ter barramento de eventos),
+     * somando as vendas não canceladas que ele já tem. A leitura do histórico
+     * e a assinatura acontecem com o caixa parado, então nenhuma venda é
+     * contada duas vezes nem perdida.
+     */
+    public void acompanhar(Caixa caixa) {
+        this.caixa = caixa;
+        caixa.executarComEstadoConsistente(this::carregar);
+    }
+    
+    /**
+     * Para de acompanhar o caixa
+     */
+    public synchronized void encerrar() {
+        encerrada = true;
+        if (assinatura != null) {
+            assinatura.close();
+        }
+    }
+    
+    /**
+     * Retorna true se os acumulados estão sendo refeitos depois de a
+     * assinatura ter ficado para trás (os números podem estar incompletos)
+     */
+    public boolean isDesatualizada() {
+        return desatualizada;
+    }
+    
+    @Override
+    public void aoDesligar(BarramentoEventos.Assinatura desligada) {
+        desatualizada = true;
+        Thread thread = new Thread(() -> ressincronizar(desligada), "analise-vendas-ressincronizacao");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Refaz os acumulados a partir do histórico e assina de novo, depois que
+     * a assinatura desligada entrega o último evento
+     */
+    private void ressincronizar(BarramentoEventos.Assinatura desligada) {
+        try {
+            desligada.aguardarEncerramento();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        caixa.executarComEstadoConsistente(this::carregar);
+        desatualizada = false;
+    }
+    
+    /**
+     * Zera os acumulados, soma as vendas não canceladas do caixa e assina os
+     * eventos seguintes (com o caixa parado)
+     */
+    private void carregar() {
+        porProduto.clear();
+        porHora.clear();
+        porDia.clear();
+        total.zerar();
+        int quantidade = caixa.getQuantidadeVendas();
+        for (int i = 0; i < quantidade; i++) {
+            Venda venda = caixa.getVenda(i);
+            if (!venda.isCancelada()) {
+                somar(venda, 1);
+            }
+        }
+        synchronized (this) {
+            if (!encerrada) {
+                assinatura = caixa.getEventos().assinar("analise-vendas", this);
+            }
+        }
+    }
+    
+    @Override
+    public void aoReceber(EventoCaixa evento, boolean fimDoLote) {
+        if (evento.getTipo() == EventoCaixa.Tipo.VENDA_REALIZADA) {
+            somar(evento.getVenda(), 1);
+        } else if (evento.getTipo() == EventoCaixa.Tipo.VENDA_CANCELADA) {
+            somar(evento.getVenda(), -1);
+        }
+    }
+    
+    /**
+     * Soma (sinal 1) ou retira (sinal -1) a venda de todos os acumulados
+     */
+    private void somar(Venda venda, int sinal) {
+        long centavos = 0;
+        long unidades = 0;
+        List<ItemVenda> itens = venda.getItens();
+        for (int i = 0; i < itens.size(); i++) {
+            ItemVenda item = itens.get(i);
+            Acumulado produto = porProduto.computeIfAbsent(item.getProduto().getCodigo(), c -> new Acumulado());
+            // A venda conta uma vez para o produto, mesmo com uma linha por preço
+            int vendas = primeiraLinha(itens, i) ? 1 : 0;
+            produto.somar(sinal, vendas, item.getQuantidade(), item.getValorTotalCentavos());
+            unidades += item.getQuantidade();
+            centavos += item.getValorTotalCentavos();
+        }
+        long hora = hora(venda.getData());
+        porHora.computeIfAbsent(hora, h -> new Acumulado()).somar(sinal, 1, unidades, centavos);
+        porDia.computeIfAbsent(Math.floorDiv(hora, 24), d -> new Acumulado()).somar(sinal, 1, unidades, centavos);
+        total.somar(sinal, 1, unidades, centavos);
+    }
+    
+    /**
+     * Retorna true se a linha é a primeira do seu produto na venda (só vendas
+     * antigas restauradas têm o mesmo produto em mais de uma linha)
+     */
+    private static boolean primeiraLinha(List<ItemVenda> itens, int linha) {
+        String codigo = itens.get(linha).getProduto().getCodigo();
+        for (int i = 0; i < linha; i++) {
+            if (itens.get(i).getProduto().getCodigo().equals(codigo)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Retorna o total geral das vendas não canceladas
+     */
+    public Acumulado getTotal() {
+        return total;
+    }
+    
+    /**
+     * Retorna o acumulado do produto (zerado se ele nunca foi vendido)
+     */
+    public Acumulado getProduto(String codigo) {
+        Acumulado acumulado = porProduto.get(codigo);
+        return acumulado == null ? new Acumulado() : acumulado;
+    }
+    
+    /**
+     * Retorna o acumulado da hora que contém o momento informado
+     */
+    public Acumulado getHora(LocalDateTime momento) {
+        Acumulado acumulado = porHora.get(hora(momento));
+        return acumulado == null ? new Acumulado() : acumulado;
+    }
+    
+    /**
+     * Retorna o acumulado do dia
+     */
+    public Acumulado getDia(LocalDate dia) {
+        Acumulado acumulado = porDia.get(dia.toEpochDay());
+        return acumulado == null ? new Acumulado() : acumulado;
+    }
+    
+    /**
+     * Retorna os acumulados hora a hora, da hora de "de" até a hora de "ate"
+     * (inclusive), com as horas sem vendas zeradas
+     */
+    public List<Acumulado> getHoras(LocalDateTime de, LocalDateTime ate) {
+        List<Acumulado> horas = new ArrayList<>();
+        for (LocalDateTime h = de.truncatedTo(ChronoUnit.HOURS); !h.isAfter(ate); h = h.plusHours(1)) {
+            horas.add(getHora(h));
+        }
+        return horas;
+    }
+    
+    /**
+     * Retorna os acumulados dia a dia, de "de" até "ate" (inclusive)
+     */
+    public List<Acumulado> getDias(LocalDate de, LocalDate ate) {
+        List<Acumulado> dias = new ArrayList<>();
+        for (LocalDate d = de; !d.isAfter(ate); d = d.plusDays(1)) {
+            dias.add(getDia(d));
+        }
+        return dias;
+    }
+    
+    /**
+     * Retorna os códigos dos produtos de maior faturamento, do maior para o menor.
+     * Percorre os produtos já vendidos uma vez, guardando só os k maiores.
+     */
+    public List<String> getMaisVendidos(int k) {
+        Comparator<Map.Entry<String, Long>> porValor = Map.Entry.comparingByValue();
+        PriorityQueue<Map.Entry<String, Long>> maiores = new PriorityQueue<>(k + 1, porValor);
+        for (Map.Entry<String, Acumulado> e : porProduto.entrySet()) {
+            long centavos = e.getValue().getCentavos();
+            if (centavos <= 0) {
+                continue;
+            }
+            if (maiores.size() < k) {
+                maiores.add(Map.entry(e.getKey(), centavos));
+            } else if (k > 0 && centavos > maiores.peek().getValue()) {
+                maiores.poll();
+                maiores.add(Map.entry(e.getKey(), centavos));
+            }
+        }
+        List<String> codigos = new ArrayList<>(maiores.size());
+        while (!maiores.isEmpty()) {
+            codigos.add(0, maiores.poll().getKey());
+        }
+        return codigos;
+    }
+    
+    private static long hora(LocalDateTime momento) {
+        return Math.floorDiv(momento.toEpochSecond(ZoneOffset.UTC), 3600);
+    }
+    
+    /**
+     * Quantidade de vendas, unidades e valor acumulados. Escrito por uma
+     * thread de cada vez e lido por qualquer uma.
+     */
+    public static class Acumulado {
+        private volatile long vendas;
+        private volatile long unidades;
+        private volatile long centavos;
+        
+        void somar(int sinal, long vendas, long unidades, long centavos) {
+            this.vendas += sinal * vendas;
+            this.unidades += sinal * unidades;
+            this.centavos += sinal * centavos;
+        }
+        
+        void zerar() {
+            vendas = 0;
+            unidades = 0;
+            centavos = 0;
+        }
+        
+        /**
+         * Retorna a quantidade de vendas (no acumulado de um produto, as vendas em que ele aparece)
+         */
+        public long getVendas() {
+            return vendas;
+        }
+        
+        /**
+         * Retorna a quantidade de unidades vendidas
+         */
+        public long getUnidades() {
+            return unidades;
+        }
+        
+        /**
+         * Retorna o valor vendido em centavos
+         */
+        public long getCentavos() {
+            return centavos;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package controller;
+
+/**
+ * Recebe os eventos do barramento na thread da própria assinatura, em
+ * lotes: fimDoLote indica o último evento já disponível, momento bom para
+ * aplicar de uma vez o que foi acumulado (ex: redesenhar uma tabela).
+ */
+public interface AssinanteEventos {
+    /**
+     * @param evento Evento recebido (não guardar a instância: ela é reaproveitada)
+     * @param fimDoLote true se não há outro evento pronto depois deste
+     */
+    void aoReceber(EventoCaixa evento, boolean fimDoLote);
+    
+    /**
+     * Chamado uma vez quando a assinatura é desligada por atraso: daí em
+     * diante o assinante não recebe mais eventos e, se mantém um estado
+     * derivado do Caixa, precisa se ressincronizar com ele. Roda na thread de
+     * quem publica (às vezes dentro de uma operação do Caixa), então não deve
+     * bloquear nem chamar o Caixa: só agendar o trabalho.
+     * 
+     * @param assinatura Assinatura desligada
+     */
+    default void aoDesligar(BarramentoEventos.Assinatura assinatura) {
+    }
+}
@@ -0,0 +1,256 @@
+package controller;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import model.Produto;
+import model.Venda;
+
+/**
+ * Barramento de eventos do Caixa num anel de tamanho fixo, no estilo do
+ * Disruptor.
+ *
+ * Quem publica (os terminais, dentro das operações do Caixa) reserva uma
+ * sequência com um incremento atômico, preenche a posição do anel e marca
+ * a posição como publicada, sem travas. Cada assinatura tem sua thread, que
+ * lê os eventos em ordem e em lotes (tudo o que já estiver publicado) e
+ * anda com a própria sequência. Assim, o tempo de uma venda não depende de
+ * quanto os assinantes demoram.
+ *
+ * O anel é limitado: se um assinante ficar uma volta inteira para trás, quem
+ * publica espera ele liberar espaço, em vez de perder eventos. A espera tem
+ * limite: um assinante que continua parado depois dela é desligado, para que
+ * uma venda nunca fique presa esperando um assinante. O desligamento não é
+ * silencioso: o assinante é avisado (AssinanteEventos.aoDesligar) e a
+ * assinatura fica marcada, para quem depende dele se ressincronizar.
+ */
+public class BarramentoEventos {
+    // Tamanho padrão do anel (potência de 2)
+    public static final int CAPACIDADE_PADRAO = 1 << 16;
+    
+    // Eventos entregues no máximo por lote, para a sequência do assinante andar com frequência
+    private static final int MAXIMO_LOTE = 1024;
+    
+    // Espera do assinante sem eventos, e de quem publica com o anel cheio
+    private static final long ESPERA_NANOS = 200_000;
+    
+    // Espera máxima de quem publica por um assinante atrasado (depois disso ele é desligado)
+    private static final long ESPERA_MAXIMA_NANOS = 100_000_000;
+    
+    private final EventoCaixa[] anel;
+    private final int mascara;
+    
+    // Sequência publicada em cada posição do anel (-1 enquanto nunca usada)
+    private final AtomicLongArray publicadas;
+    
+    // Próxima sequência a reservar
+    private final AtomicLong proxima = new AtomicLong();
+    
+    // Menor sequência já consumida por todas as assinaturas, na última vez em que foi calculada
+    private volatile long menorConsumida = -1;
+    
+    private final CopyOnWriteArrayList<Assinatura> assinaturas = new CopyOnWriteArrayList<>();
+    
+    public BarramentoEventos() {
+        this(CAPACIDADE_PADRAO);
+    }
+    
+    /**
+     * @param capacidade Quantidade de posições do anel (potência de 2)
+     */
+    public BarramentoEventos(int capacidade) {
+        if (capacidade <= 0 || Integer.bitCount(capacidade) != 1) {
+            throw new IllegalArgumentException("A capacidade deve ser potência de 2: " + capacidade);
+        }
+        anel = new EventoCaixa[capacidade];
+        for (int i = 0; i < capacidade; i++) {
+            anel[i] = new EventoCaixa();
+        }
+        mascara = capacidade - 1;
+        publicadas = new AtomicLongArray(capacidade);
+        for (int i = 0; i < capacidade; i++) {
+            publicadas.set(i, -1);
+        }
+    }
+    
+    /**
+     * Assina os eventos publicados daqui em diante, numa thread própria.
+     * Para não perder nem repetir eventos em relação ao estado do Caixa, assine
+     * dentro de Caixa.executarComEstadoConsistente (nenhuma publicação fica
+     * pela metade ali).
+     * 
+     * @param nome Nome da thread da assinatura
+     * @param assinante Quem recebe os eventos
+     * @return Assinatura, que pode ser encerrada
+     */
+    public Assinatura assinar(String nome, AssinanteEventos assinante) {
+        Assinatura assinatura = new Assinatura(assinante, proxima.get() - 1);
+        Thread thread = new Thread(assinatura::consumir, nome);
+        thread.setDaemon(true);
+        assinatura.thread = thread;
+        assinaturas.add(assinatura);
+        thread.start();
+        return assinatura;
+    }
+    
+    void publicarProduto(Produto produto) {
+        publicar(EventoCaixa.Tipo.PRODUTO_CADASTRADO, produto, null);
+    }
+    
+    void publicarVendaRealizada(Venda venda) {
+        publicar(EventoCaixa.Tipo.VENDA_REALIZADA, null, venda);
+    }
+    
+    void publicarVendaCancelada(Venda venda) {
+        publicar(EventoCaixa.Tipo.VENDA_CANCELADA, null, venda);
+    }
+    
+    private void publicar(EventoCaixa.Tipo tipo, Produto produto, Venda venda) {
+        long sequencia = proxima.getAndIncrement();
+        
+        // A posição só pode ser reescrita depois que todos consumiram a volta anterior
+        long volta = sequencia - anel.length;
+        if (volta > menorConsumida) {
+            long limite = System.nanoTime() + ESPERA_MAXIMA_NANOS;
+            long menor;
+            while (volta > (menor = calcularMenorConsumida(sequencia))) {
+                if (System.nanoTime() - limite > 0) {
+                    desligarAtrasadas(volta);
+                } else {
+                    LockSupport.parkNanos(ESPERA_NANOS);
+                }
+            }
+            menorConsumida = menor;
+        }
+        
+        int posicao = (int) sequencia & mascara;
+        anel[posicao].preencher(tipo, produto, venda);
+        // Escrita volátil: quem lê a sequência enxerga os campos preenchidos
+        publicadas.set(posicao, sequencia);
+    }
+    
+    /**
+     * Desliga as assinaturas que ainda não consumiram a sequência informada
+     * (quem publica já esperou o máximo por elas)
+     */
+    private void desligarAtrasadas(long sequencia) {
+        for (Assinatura assinatura : assinaturas) {
+            if (assinatura.consumida.get() < sequencia && assinatura.desligarPorAtraso()) {
+                System.err.println("Assinatura de eventos desligada por atraso: " + assinatura.thread.getName());
+                try {
+                    assinatura.assinante.aoDesligar(assinatura);
+                } catch (Throwable e) {
+                    System.err.println("Erro ao avisar assinante desligado: " + e);
+                }
+            }
+        }
+    }
+    
+    private long calcularMenorConsumida(long padrao) {
+        long menor = padrao;
+        for (Assinatura assinatura : assinaturas) {
+            menor = Math.min(menor, assinatura.consumida.get());
+        }
+        return menor;
+    }
+    
+    /**
+     * Assinatura de um assinante: sua thread e até onde ele já leu
+     */
+    public class Assinatura implements AutoCloseable {
+        private final AssinanteEventos assinante;
+        private final AtomicLong consumida;
+        private volatile boolean ativa = true;
+        private volatile boolean desligadaPorAtraso;
+        private Thread thread;
+        
+        Assinatura(AssinanteEventos assinante, long consumida) {
+            this.assinante = assinante;
+            this.consumida = new AtomicLong(consumida);
+        }
+        
+        /**
+         * Retorna a última sequência entregue ao assinante
+         */
+        public long getConsumida() {
+            return consumida.get();
+        }
+        
+        /**
+         * Retorna true se a assinatura foi desligada por ficar para trás (o
+         * assinante perdeu eventos desde então)
+         */
+        public boolean isDesligadaPorAtraso() {
+            return desligadaPorAtraso;
+        }
+        
+        /**
+         * Espera a thread da assinatura terminar o evento em andamento depois
+         * de encerrada (a partir daí o assinante não recebe mais nada dela)
+         */
+        public void aguardarEncerramento() throws InterruptedException {
+            thread.join();
+        }
+        
+        /**
+         * Desliga a assinatura por atraso
+         * 
+         * @return false se ela já estava encerrada (outro publicador chegou antes)
+         */
+        private synchronized boolean desligarPorAtraso() {
+            if (!ativa) {
+                return false;
+            }
+            desligadaPorAtraso = true;
+            close();
+            return true;
+        }
+        
+        /**
+         * Encerra a assinatura (o assinante para de receber e deixa de segurar o anel)
+         */
+        @Override
+        public void close() {
+            ativa = false;
+            assinaturas.remove(this);
+            LockSupport.unpark(thread);
+        }
+        
+        private void consumir() {
+            try {
+                entregar();
+            } finally {
+                // Thread encerrada (inclusive por erro): deixa de segurar o anel
+                ativa = false;
+                assinaturas.remove(this);
+            }
+        }
+        
+        private void entregar() {
+            long seguinte = consumida.get() + 1;
+            while (ativa) {
+                // Fim do lote: última sequência já publicada em sequência a partir de seguinte
+                long fim = seguinte - 1;
+                while (fim - seguinte + 1 < MAXIMO_LOTE && publicadas.get((int) (fim + 1) & mascara) == fim + 1) {
+                    fim++;
+                }
+                if (fim < seguinte) {
+                    LockSupport.parkNanos(ESPERA_NANOS);
+                    continue;
+                }
+                for (long s = seguinte; s <= fim && ativa; s++) {
+                    try {
+                        assinante.aoReceber(anel[(int) s & mascara], s == fim);
+                    } catch (Throwable e) {
+                        // Um evento com problema não pode parar a assinatura
+                        System.err.println("Erro ao tratar evento do caixa: " + e);
+                    }
+                }
+                consumida.set(fim);
+                seguinte = fim + 1;
+            }
+        }
+    }
+}
@@ -1,55 +1,310 @@
 package controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import model.ItemVenda;
 import model.Produto;
 import model.Venda;
+import persistencia.CatalogoMapeado;
+import persistencia.Diario;
 
 /**
  * Controlador principal do sistema de caixa.
  * Esta classe gerencia produtos e vendas, sendo o centro do padrão MVC.
+ *
+ * Pode ser compartilhada por vários terminais (PontoVendaView) ao mesmo tempo:
+ * o estoque é alterado por CAS em cada produto (Produto.reservarEstoque),
+ * sem nenhuma trava, então vendas de produtos diferentes não se disputam.
  */
 public class Caixa {
-    // Lista de produtos cadastrados
-    private ArrayList<Produto> produtos;
+    // Lista de produtos cadastrados (mantém a ordem de cadastro para as telas)
+    private final ArrayList<Produto> produtos;
+    
+    // Índice dos produtos pelo código, para busca e checagem de duplicidade em O(1)
+    private final ConcurrentHashMap<String, Produto> produtosPorCodigo;
+    
+    // Índice de busca por início de palavra do nome ou do código (sem acentos)
+    private final IndiceBusca indiceBusca;
     
     // Lista de vendas realizadas
-    private ArrayList<Venda> vendas;
+    private final ArrayList<Venda> vendas;
+    
+    // Índice das vendas pelo número, para busca e cancelamento em O(1)
+    private final ConcurrentHashMap<String, Venda> vendasPorNumero;
+    
+    // Posições (em vendas) das vendas canceladas, na ordem dos cancelamentos.
+    // Só cresce, como a lista de vendas: um instantâneo guarda quantos havia
+    // e depois lê quais eram, sem copiar nada com o caixa parado
+    private final ArrayList<Integer> cancelamentos;
+    
+    // Números das vendas com cancelamento em andamento (só um terminal por venda)
+    private final Set<String> cancelando;
+    
+    // Vendas que já reservaram o número no índice mas ainda não foram
+    // confirmadas: para busca e cancelamento, ainda não existem
+    private final Set<Venda> vendasPendentes;
+    
+    // Saldo total do caixa em centavos. LongAdder espalha as somas entre células,
+    // então terminais concorrentes não disputam o mesmo campo, e centavos
+    // inteiros não acumulam erro de ponto flutuante.
+    private final LongAdder saldoCentavos;
+    
+    // Catálogo mapeado em memória (opcional): produtos que ainda não foram
+    // buscados ficam só no arquivo e viram objetos na primeira busca
+    private volatile CatalogoMapeado catalogo;
     
-    // Saldo total do caixa
-    private double saldoCaixa;
+    // Diário onde as operações são gravadas antes de serem confirmadas (opcional)
+    private volatile Diario diario;
+    
+    // Reservas de estoque das cestas abertas nos terminais (opcional)
+    private volatile GerenciadorReservas reservas;
+    
+    // Barramento onde cadastros, vendas e cancelamentos são publicados depois
+    // de confirmados, para os assinantes tratarem em suas threads (opcional)
+    private volatile BarramentoEventos eventos;
+    
+    // Operações que alteram o estado usam a trava de leitura (várias ao mesmo
+    // tempo); a captura de um instantâneo usa a de escrita por um instante,
+    // para ver produtos, vendas e saldo num mesmo ponto do diário
+    private final ReentrantReadWriteLock travaEstado;
     
     /**
      * Construtor que inicializa as listas e o saldo do caixa
      */
     public Caixa() {
         this.produtos = new ArrayList<>();
+        this.produtosPorCodigo = new ConcurrentHashMap<>();
+        this.indiceBusca = new IndiceBusca();
         this.vendas = new ArrayList<>();
-        this.saldoCaixa = 0.0;
+        this.vendasPorNumero = new ConcurrentHashMap<>();
+        this.cancelamentos = new ArrayList<>();
+        this.cancelando = ConcurrentHashMap.newKeySet();
+        this.vendasPendentes = ConcurrentHashMap.newKeySet();
+        this.saldoCentavos = new LongAdder();
+        this.travaEstado = new ReentrantReadWriteLock();
     }
     
     // Métodos de acesso (Getters)
     
     /**
-     * Retorna a lista de produtos cadastrados
+     * Retorna uma cópia da lista de produtos cadastrados, na ordem de cadastro.
+     * Produtos do catálogo mapeado só aparecem depois de buscados pela primeira vez.
      */
     public ArrayList<Produto> getProdutos() {
-        return produtos;
+        synchronized (produtos) {
+            return new ArrayList<>(produtos);
+        }
     }
     
     /**
-     * Retorna a lista de vendas realizadas
+     * Retorna uma cópia da lista de vendas realizadas
      */
     public ArrayList<Venda> getVendas() {
-        return vendas;
+        synchronized (vendas) {
+            return new ArrayList<>(vendas);
+        }
+    }
+    
+    /**
+     * Liga um catálogo mapeado ao caixa. Seus produtos passam a ser
+     * encontrados por buscarProduto e não podem ser cadastrados de novo.
+     * Deve ser ligado antes de reproduzir o diário. Os nomes do catálogo
+     * entram no índice de busca em segundo plano (sem criar os objetos
+     * Produto); até terminar, a busca por nome só encontra parte deles.
+     * Cada produto entra no índice uma vez só: os que já estão no caixa
+     * (ex: restaurados do instantâneo) não são indexados de novo pelo catálogo.
+     * 
+     * @param catalogo Catálogo aberto, ou null para desligar
+     */
+    public void setCatalogo(CatalogoMapeado catalogo) {
+        // Copiados antes de ligar o catálogo: os carregados dele depois disso não estão no índice
+        Set<String> indexados = catalogo == null ? null : new HashSet<>(produtosPorCodigo.keySet());
+        this.catalogo = catalogo;
+        if (catalogo != null) {
+            Thread indexacao = new Thread(() -> {
+                for (int i = 0; i < catalogo.getQuantidade(); i++) {
+                    String codigo = catalogo.codigoNaPosicao(i);
+                    if (!indexados.contains(codigo)) {
+                        indiceBusca.adicionar(codigo, catalogo.nomeNaPosicao(i));
+                    }
+                }
+            }, "indice-catalogo");
+            indexacao.setDaemon(true);
+            indexacao.start();
+        }
+    }
+    
+    /**
+     * Retorna o catálogo mapeado ligado ao caixa, ou null se não houver
+     */
+    public CatalogoMapeado getCatalogo() {
+        return catalogo;
+    }
+    
+    /**
+     * Liga o diário ao caixa. A partir daqui, cadastros, vendas e
+     * cancelamentos são gravados no diário antes de retornarem.
+     * 
+     * @param diario Diário já reproduzido, ou null para desligar
+     */
+    public void setDiario(Diario diario) {
+        this.diario = diario;
+    }
+    
+    /**
+     * Liga o gerenciador de reservas de estoque das cestas abertas
+     * 
+     * @param reservas Gerenciador, ou null para os terminais venderem sem reservar
+     */
+    public void setReservas(GerenciadorReservas reservas) {
+        this.reservas = reservas;
+    }
+    
+    /**
+     * Retorna o gerenciador de reservas, ou null se não houver
+     */
+    public GerenciadorReservas getReservas() {
+        return reservas;
+    }
+    
+    /**
+     * Liga o barramento de eventos. A partir daqui, cada cadastro, venda e
+     * cancelamento confirmado é publicado nele.
+     * 
+     * @param eventos Barramento, ou null para não publicar
+     */
+    public void setEventos(BarramentoEventos eventos) {
+        this.eventos = eventos;
+    }
+    
+    /**
+     * Retorna o barramento de eventos, ou null se não houver
+     */
+    public BarramentoEventos getEventos() {
+        return eventos;
+    }
+    
+    /**
+     * Executa a ação com o caixa parado num estado consistente: nenhuma
+     * operação fica pela metade enquanto ela roda. A ação deve ser curta
+     * (apenas copiar o que precisa), pois os terminais esperam por ela.
+     * 
+     * @param acao Ação a executar
+     */
+    public void executarComEstadoConsistente(Runnable acao) {
+        travaEstado.writeLock().lock();
+        try {
+            acao.run();
+        } finally {
+            travaEstado.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Restaura o estado gravado em um instantâneo. Os produtos já vêm com o
+     * estoque final e as vendas com o status final, então nada é recalculado.
+     * Deve ser chamado com o caixa vazio e antes de ligar o diário.
+     * 
+     * @param produtosSalvos Produtos na ordem de cadastro
+     * @param vendasSalvas Vendas na ordem em que foram realizadas
+     * @param saldoCentavosSalvo Saldo do caixa em centavos
+     */
+    public void restaurarEstado(List<Produto> produtosSalvos, List<Venda> vendasSalvas, long saldoCentavosSalvo) {
+        CatalogoMapeado c = catalogo;
+        synchronized (produtos) {
+            for (Produto p : produtosSalvos) {
+                produtosPorCodigo.put(p.getCodigo(), p);
+                produtos.add(p);
+                // Com o catálogo já ligado, os produtos dele são indexados por setCatalogo
+                if (c == null || !c.contem(p.getCodigo())) {
+                    indiceBusca.adicionar(p.getCodigo(), p.getNome());
+                }
+            }
+        }
+        synchronized (vendas) {
+            for (Venda v : vendasSalvas) {
+                vendasPorNumero.put(v.getNumero(), v);
+                v.registrarPosicao(vendas.size());
+                vendas.add(v);
+                if (v.isCancelada()) {
+                    synchronized (cancelamentos) {
+                        cancelamentos.add(v.getPosicao());
+                    }
+                }
+            }
+        }
+        saldoCentavos.add(saldoCentavosSalvo);
     }
     
     /**
-     * Retorna o saldo atual do caixa
+     * Retorna a quantidade de vendas realizadas (inclusive canceladas)
+     */
+    public int getQuantidadeVendas() {
+        synchronized (vendas) {
+            return vendas.size();
+        }
+    }
+    
+    /**
+     * Retorna a venda na posição informada, na ordem em que foram realizadas.
+     * Permite percorrer o histórico sem copiar a lista inteira.
+     * 
+     * @param posicao Posição de 0 até getQuantidadeVendas() - 1
+     */
+    public Venda getVenda(int posicao) {
+        synchronized (vendas) {
+            return vendas.get(posicao);
+        }
+    }
+    
+    /**
+     * Retorna a quantidade de cancelamentos feitos (inclusive os restaurados de um instantâneo)
+     */
+    public int getQuantidadeCancelamentos() {
+        synchronized (cancelamentos) {
+            return cancelamentos.size();
+        }
+    }
+    
+    /**
+     * Retorna a posição (em getVenda) da venda cancelada, na ordem dos
+     * cancelamentos. Os primeiros n cancelamentos são sempre os mesmos, então
+     * quem guardou n num momento sabe depois quais vendas estavam canceladas nele.
+     * 
+     * @param ordem Ordem do cancelamento, de 0 até getQuantidadeCancelamentos() - 1
+     */
+    public int getPosicaoCancelada(int ordem) {
+        synchronized (cancelamentos) {
+            return cancelamentos.get(ordem);
+        }
+    }
+    
+    /**
+     * Retorna o saldo atual do caixa em reais
      */
     public double getSaldoCaixa() {
-        return saldoCaixa;
+        return getSaldoCaixaCentavos() / 100.0;
+    }
+    
+    /**
+     * Retorna o saldo atual do caixa em centavos (valor exato)
+     */
+    public long getSaldoCaixaCentavos() {
+        return saldoCentavos.sum();
     }
     
     /**
@@ -59,13 +314,89 @@ public class Caixa {
      * @return true se cadastrado com sucesso, false se código já existe
      */
     public boolean cadastrarProduto(Produto novo) {
-        // Verifica se já existe produto com o mesmo código
-        if (produtos.stream().anyMatch(p -> p.getCodigo().equals(novo.getCodigo()))) {
-            return false;
+        travaEstado.readLock().lock();
+        try {
+            // Cadastros são raros: a trava garante que o produto entra no diário
+            // antes de ficar visível para as vendas
+            synchronized (produtos) {
+                // Verifica se já existe produto com o mesmo código
+                CatalogoMapeado c = catalogo;
+                if (produtosPorCodigo.containsKey(novo.getCodigo())
+                        || (c != null && c.contem(novo.getCodigo()))) {
+                    return false;
+                }
+                Diario d = diario;
+                if (d != null) {
+                    try {
+                        d.registrarProduto(novo);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Falha ao gravar o produto no diário", e);
+                    }
+                }
+                // Adiciona o produto nos índices e na lista
+                produtosPorCodigo.put(novo.getCodigo(), novo);
+                produtos.add(novo);
+                indiceBusca.adicionar(novo.getCodigo(), novo.getNome());
+                BarramentoEventos e = eventos;
+                if (e != null) {
+                    e.publicarProduto(novo);
+                }
+            }
+            return true;
+        } finally {
+            travaEstado.readLock().unlock();
         }
-        // Adiciona o produto na lista
-        produtos.add(novo);
-        return true;
+    }
+    
+    /**
+     * Cadastra vários produtos de uma vez (importação em lote).
+     * Faz uma única gravação no diário para o lote inteiro.
+     * 
+     * @param novos Produtos a cadastrar
+     * @return Produtos recusados por já existir o código (no caixa ou no próprio lote)
+     */
+    public List<Produto> cadastrarProdutos(List<Produto> novos) {
+        List<Produto> recusados = new ArrayList<>();
+        travaEstado.readLock().lock();
+        try {
+            synchronized (produtos) {
+                CatalogoMapeado c = catalogo;
+                HashMap<String, Produto> aceitos = new HashMap<>();
+                for (Produto novo : novos) {
+                    if (produtosPorCodigo.containsKey(novo.getCodigo())
+                            || (c != null && c.contem(novo.getCodigo()))
+                            || aceitos.putIfAbsent(novo.getCodigo(), novo) != null) {
+                        recusados.add(novo);
+                    }
+                }
+                List<Produto> lote = new ArrayList<>(novos.size() - recusados.size());
+                for (Produto novo : novos) {
+                    if (aceitos.get(novo.getCodigo()) == novo) {
+                        lote.add(novo);
+                    }
+                }
+                Diario d = diario;
+                if (d != null && !lote.isEmpty()) {
+                    try {
+                        d.registrarProdutos(lote);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Falha ao gravar os produtos no diário", e);
+                    }
+                }
+                BarramentoEventos e = eventos;
+                for (Produto novo : lote) {
+                    produtosPorCodigo.put(novo.getCodigo(), novo);
+                    produtos.add(novo);
+                    indiceBusca.adicionar(novo.getCodigo(), novo.getNome());
+                    if (e != null) {
+                        e.publicarProduto(novo);
+                    }
+                }
+            }
+        } finally {
+            travaEstado.readLock().unlock();
+        }
+        return recusados;
     }
     
     /**
@@ -75,65 +406,509 @@ public class Caixa {
      * @return O produto encontrado ou null se não existir
      */
     public Produto buscarProduto(String codigo) {
-        // Utiliza Stream API para buscar o produto
-        return produtos.stream()
-                .filter(p -> p.getCodigo().equals(codigo))
-                .findFirst()
-                .orElse(null);
+        // Consulta direta no índice por código
+        Produto p = produtosPorCodigo.get(codigo);
+        if (p == null && catalogo != null) {
+            p = carregarDoCatalogo(codigo);
+        }
+        return p;
+    }
+    
+    /**
+     * Busca produtos com estoque pelo início das palavras do nome ou do código,
+     * sem diferenciar maiúsculas nem acentos (ex: "acucar" encontra "Açúcar")
+     * 
+     * A busca só lê: um produto do catálogo ainda não carregado tem o estoque
+     * lido direto do registro e volta como uma cópia para exibição, sem entrar
+     * no caixa. Para vendê-lo, use buscarProduto pelo código.
+     * 
+     * @param texto Texto digitado (um ou mais termos)
+     * @param limite Quantidade máxima de produtos retornados
+     * @return Produtos encontrados, com estoque no momento da busca
+     */
+    public List<Produto> buscarProdutos(String texto, int limite) {
+        CatalogoMapeado c = catalogo;
+        List<Produto> encontrados = new ArrayList<>(Math.min(limite, 64));
+        for (String codigo : indiceBusca.buscar(texto, limite, cod -> {
+            Produto p = produtosPorCodigo.get(cod);
+            if (p != null) {
+                return p.getEstoque() > 0;
+            }
+            return c != null && c.estoque(cod) > 0;
+        })) {
+            Produto p = produtosPorCodigo.get(codigo);
+            encontrados.add(p != null ? p : c.buscar(codigo));
+        }
+        return encontrados;
+    }
+    
+    /**
+     * Cria o produto a partir do catálogo mapeado e o guarda no índice,
+     * para que todos os terminais usem o mesmo objeto (e o mesmo estoque)
+     */
+    private Produto carregarDoCatalogo(String codigo) {
+        synchronized (produtos) {
+            Produto p = produtosPorCodigo.get(codigo);
+            if (p == null) {
+                p = catalogo.buscar(codigo);
+                if (p != null) {
+                    produtosPorCodigo.put(codigo, p);
+                    produtos.add(p);
+                    // Para os assinantes, o produto passa a existir agora
+                    BarramentoEventos e = eventos;
+                    if (e != null) {
+                        e.publicarProduto(p);
+                    }
+                }
+            }
+            return p;
+        }
+    }
+    
+    /**
+     * Busca uma venda pelo número (ID)
+     * 
+     * @param numero Número da venda a ser buscada
+     * @return A venda encontrada ou null se não existir
+     */
+    public Venda buscarVenda(String numero) {
+        Venda venda = vendasPorNumero.get(numero);
+        return venda == null || vendasPendentes.contains(venda) ? null : venda;
     }
     
     /**
-     * Realiza uma venda, atualizando o estoque dos produtos
+     * Realiza uma venda, atualizando o estoque dos produtos.
+     * A venda é efetivada de forma atômica: ou todos os itens saem do
+     * estoque, ou nenhum sai.
      * 
      * @param venda Venda a ser realizada
-     * @return true se venda realizada, false se estoque insuficiente
+     * @return true se venda realizada, false se estoque insuficiente ou se
+     *         já existe venda com o mesmo número
      */
     public boolean realizarVenda(Venda venda) {
-        // Verificar se há estoque suficiente para todos os itens
-        for (ItemVenda item : venda.getItens()) {
-            Produto p = item.getProduto();
-            if (p.getEstoque() < item.getQuantidade()) {
+        travaEstado.readLock().lock();
+        try {
+            return efetivarVenda(venda);
+        } finally {
+            travaEstado.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Realiza um lote de vendas de uma vez (ex: vendas que um terminal
+     * acumulou enquanto estava sem conexão). O estoque de cada produto é
+     * retirado uma única vez para o lote inteiro, as vendas vão para o diário
+     * com um único fsync e o saldo recebe uma única soma.
+     * Quando o estoque não dá para todas, as vendas mais antigas (pela data,
+     * e pelo número no empate) têm prioridade, então o resultado não depende
+     * da ordem do lote nem dos outros terminais. Vendas já realizadas (mesmo
+     * número) são recusadas, para o terminal poder reenviar o lote sem duplicar,
+     * assim como as repetições dentro do próprio lote.
+     * 
+     * @param lote Vendas a realizar
+     * @return Para cada venda, na ordem do lote, true se foi realizada
+     */
+    public boolean[] realizarVendas(Collection<Venda> lote) {
+        Venda[] vendasLote = lote.toArray(new Venda[0]);
+        boolean[] realizadas = new boolean[vendasLote.length];
+        int[] ordem = ordenarPorData(vendasLote);
+        
+        // Repetidas dentro do lote (o mesmo objeto ou o mesmo número): só a
+        // primeira na ordem de data é considerada, e as outras nem pedem estoque
+        boolean[] repetidas = new boolean[vendasLote.length];
+        HashSet<String> numerosLote = new HashSet<>();
+        for (int i : ordem) {
+            repetidas[i] = !numerosLote.add(vendasLote[i].getNumero());
+        }
+        
+        travaEstado.readLock().lock();
+        try {
+            // Quantidade pedida de cada produto no lote inteiro
+            HashMap<Produto, int[]> saldos = new HashMap<>();
+            for (int i = 0; i < vendasLote.length; i++) {
+                if (repetidas[i]) {
+                    continue;
+                }
+                for (ItemVenda item : vendasLote[i].getItens()) {
+                    saldos.computeIfAbsent(item.getProduto(), p -> new int[1])[0] += item.getQuantidade();
+                }
+            }
+            // Retira do estoque o pedido de cada produto, ou o que houver dele
+            for (Map.Entry<Produto, int[]> e : saldos.entrySet()) {
+                e.getValue()[0] = retirarAte(e.getKey(), e.getValue()[0]);
+            }
+            
+            // Distribui o que foi retirado entre as vendas, das mais antigas para as
+            // mais novas. Cada número é reservado no índice de uma vez (putIfAbsent):
+            // entre lotes concorrentes só uma venda fica com ele.
+            List<Venda> aceitas = new ArrayList<>(vendasLote.length);
+            long totalCentavos = 0;
+            for (int i : ordem) {
+                Venda venda = vendasLote[i];
+                if (repetidas[i] || !reservarNumero(venda)) {
+                    continue;
+                }
+                if (consumir(venda, saldos)) {
+                    realizadas[i] = true;
+                    aceitas.add(venda);
+                    totalCentavos += venda.calcularTotalCentavos();
+                } else {
+                    liberarNumero(venda);
+                }
+            }
+            
+            Diario d = diario;
+            if (d != null && !aceitas.isEmpty()) {
+                try {
+                    d.registrarVendas(aceitas);
+                } catch (IOException e) {
+                    for (Venda venda : aceitas) {
+                        for (ItemVenda item : venda.getItens()) {
+                            item.getProduto().devolverEstoque(item.getQuantidade());
+                        }
+                        liberarNumero(venda);
+                    }
+                    devolverSobras(saldos);
+                    throw new UncheckedIOException("Falha ao gravar as vendas no diário", e);
+                }
+            }
+            devolverSobras(saldos);
+            
+            synchronized (vendas) {
+                for (Venda venda : aceitas) {
+                    venda.registrarPosicao(vendas.size());
+                    vendas.add(venda);
+                }
+            }
+            saldoCentavos.add(totalCentavos);
+            BarramentoEventos e = eventos;
+            for (Venda venda : aceitas) {
+                if (e != null) {
+                    e.publicarVendaRealizada(venda);
+                }
+                // Só agora a venda pode ser buscada e cancelada (o evento dela já saiu)
+                vendasPendentes.remove(venda);
+            }
+            return realizadas;
+        } finally {
+            travaEstado.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Realiza a venda de uma cesta que reservou estoque enquanto estava aberta.
+     * A parte reservada só recebe baixa (já saiu do disponível); o que passar
+     * da reserva sai do disponível como numa venda comum, e o que sobrar da
+     * reserva volta ao disponível. Se a reserva já expirou, a venda é tentada
+     * normalmente.
+     * 
+     * @param venda Venda a ser realizada
+     * @param reserva Reserva da cesta (encerrada se a venda for realizada)
+     * @return true se venda realizada, false se estoque insuficiente ou número
+     *         repetido (a reserva continua valendo)
+     */
+    public boolean realizarVenda(Venda venda, Reserva reserva) {
+        travaEstado.readLock().lock();
+        try {
+            synchronized (reserva) {
+                if (!reserva.isAtiva()) {
+                    return efetivarVenda(venda);
+                }
+                if (!reservarNumero(venda)) {
+                    return false;
+                }
+                
+                // Consome a reserva item a item; o excedente sai do disponível
+                HashMap<Produto, Integer> restantes = reserva.getQuantidades();
+                List<ItemVenda> itens = venda.getItens();
+                int[] excedentes = new int[itens.size()];
+                for (int i = 0; i < itens.size(); i++) {
+                    ItemVenda item = itens.get(i);
+                    int reservada = restantes.getOrDefault(item.getProduto(), 0);
+                    int coberta = Math.min(reservada, item.getQuantidade());
+                    if (coberta > 0) {
+                        restantes.put(item.getProduto(), reservada - coberta);
+                    }
+                    excedentes[i] = item.getQuantidade() - coberta;
+                    if (excedentes[i] > 0 && !item.getProduto().reservarEstoque(excedentes[i])) {
+                        devolverExcedentes(itens, excedentes, i - 1);
+                        liberarNumero(venda);
+                        return false;
+                    }
+                }
+                
+                try {
+                    registrarVenda(venda);
+                } catch (IOException e) {
+                    devolverExcedentes(itens, excedentes, itens.size() - 1);
+                    liberarNumero(venda);
+                    throw new UncheckedIOException("Falha ao gravar a venda no diário", e);
+                }
+                
+                // Baixa do que foi vendido da reserva e devolução do que sobrou
+                for (Map.Entry<Produto, Integer> e : reserva.encerrar().entrySet()) {
+                    int sobra = restantes.get(e.getKey());
+                    e.getKey().baixarReserva(e.getValue() - sobra);
+                    if (sobra > 0) {
+                        e.getKey().liberarReserva(sobra);
+                    }
+                }
+                publicarVenda(venda);
+                return true;
+            }
+        } finally {
+            travaEstado.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Executa a operação com a trava de leitura do estado, como as demais
+     * alterações (ex: reservas), para não ficar pela metade num instantâneo
+     */
+    <T> T executarOperacao(Supplier<T> operacao) {
+        travaEstado.readLock().lock();
+        try {
+            return operacao.get();
+        } finally {
+            travaEstado.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Retira os itens do estoque e efetiva a venda (chamado com a trava de leitura)
+     */
+    private boolean efetivarVenda(Venda venda) {
+        if (!reservarNumero(venda)) {
+            return false;
+        }
+        // Retirar cada item do estoque; se algum faltar, devolver os já retirados
+        List<ItemVenda> itens = venda.getItens();
+        for (int i = 0; i < itens.size(); i++) {
+            ItemVenda item = itens.get(i);
+            if (!item.getProduto().reservarEstoque(item.getQuantidade())) {
+                for (int j = i - 1; j >= 0; j--) {
+                    ItemVenda retirado = itens.get(j);
+                    retirado.getProduto().devolverEstoque(retirado.getQuantidade());
+                }
+                liberarNumero(venda);
                 return false;
             }
         }
-        // Atualizar o estoque dos produtos
-        for (ItemVenda item : venda.getItens()) {
-            Produto p = item.getProduto();
-            p.setEstoque(p.getEstoque() - item.getQuantidade());
+        try {
+            registrarVenda(venda);
+        } catch (IOException e) {
+            for (ItemVenda item : itens) {
+                item.getProduto().devolverEstoque(item.getQuantidade());
+            }
+            liberarNumero(venda);
+            throw new UncheckedIOException("Falha ao gravar a venda no diário", e);
         }
-        // Adicionar a venda à lista
-        vendas.add(venda);
-        // Atualizar o saldo do caixa
-        saldoCaixa += venda.calcularTotal();
+        publicarVenda(venda);
         return true;
     }
     
+    /**
+     * Grava a venda no diário antes de ela ficar visível (e poder ser cancelada)
+     */
+    private void registrarVenda(Venda venda) throws IOException {
+        Diario d = diario;
+        if (d != null) {
+            d.registrarVenda(venda);
+        }
+    }
+    
+    /**
+     * Torna a venda visível (lista e índice), soma o total ao saldo e publica o evento
+     */
+    private void publicarVenda(Venda venda) {
+        synchronized (vendas) {
+            venda.registrarPosicao(vendas.size());
+            vendas.add(venda);
+        }
+        saldoCentavos.add(venda.calcularTotalCentavos());
+        // O evento sai antes de a venda deixar de ser pendente: como o
+        // cancelamento a procura por buscarVenda, o evento dele sempre vem depois deste
+        BarramentoEventos e = eventos;
+        if (e != null) {
+            e.publicarVendaRealizada(venda);
+        }
+        vendasPendentes.remove(venda);
+    }
+    
+    /**
+     * Reserva o número da venda no índice (putIfAbsent) antes de ela ser
+     * efetivada: entre chamadas concorrentes, só uma venda fica com cada
+     * número. Até ser publicada, a venda fica pendente (buscarVenda não a
+     * encontra).
+     * 
+     * @return false se já existe, ou está sendo realizada, venda com o mesmo número
+     */
+    private boolean reservarNumero(Venda venda) {
+        if (!vendasPendentes.add(venda)) {
+            // O mesmo objeto já está sendo realizado por outra chamada
+            return false;
+        }
+        if (vendasPorNumero.putIfAbsent(venda.getNumero(), venda) != null) {
+            vendasPendentes.remove(venda);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Ordena as posições das vendas pela data, e pelo número no empate.
+     * Lotes de terminais costumam chegar já em ordem: nesse caso não há ordenação.
+     */
+    private static int[] ordenarPorData(Venda[] vendasLote) {
+        // Data em nanossegundos (cabe num long até o ano 2262), para comparar sem objetos
+        long[] chaves = new long[vendasLote.length];
+        boolean ordenado = true;
+        for (int i = 0; i < chaves.length; i++) {
+            LocalDateTime data = vendasLote[i].getData();
+            chaves[i] = data.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + data.getNano();
+            if (i > 0 && compararNaOrdem(vendasLote, chaves, i - 1, i) > 0) {
+                ordenado = false;
+            }
+        }
+        int[] ordem = new int[vendasLote.length];
+        for (int i = 0; i < ordem.length; i++) {
+            ordem[i] = i;
+        }
+        if (!ordenado) {
+            Integer[] posicoes = new Integer[ordem.length];
+            for (int i = 0; i < posicoes.length; i++) {
+                posicoes[i] = i;
+            }
+            Arrays.sort(posicoes, (a, b) -> compararNaOrdem(vendasLote, chaves, a, b));
+            for (int i = 0; i < ordem.length; i++) {
+                ordem[i] = posicoes[i];
+            }
+        }
+        return ordem;
+    }
+    
+    private static int compararNaOrdem(Venda[] vendasLote, long[] chaves, int a, int b) {
+        int c = Long.compare(chaves[a], chaves[b]);
+        return c != 0 ? c : vendasLote[a].getNumero().compareTo(vendasLote[b].getNumero());
+    }
+    
+    /**
+     * Retira do estoque até a quantidade informada (menos, se não houver tanto)
+     * 
+     * @return Quantidade retirada
+     */
+    private static int retirarAte(Produto produto, int maximo) {
+        while (true) {
+            int quantidade = Math.min(produto.getEstoque(), maximo);
+            if (quantidade <= 0) {
+                return 0;
+            }
+            if (produto.reservarEstoque(quantidade)) {
+                return quantidade;
+            }
+        }
+    }
+    
+    /**
+     * Desconta os itens da venda do que foi retirado para o lote, se der para todos
+     */
+    private static boolean consumir(Venda venda, HashMap<Produto, int[]> saldos) {
+        List<ItemVenda> itens = venda.getItens();
+        for (int i = 0; i < itens.size(); i++) {
+            int[] saldo = saldos.get(itens.get(i).getProduto());
+            saldo[0] -= itens.get(i).getQuantidade();
+            if (saldo[0] < 0) {
+                for (int j = i; j >= 0; j--) {
+                    saldos.get(itens.get(j).getProduto())[0] += itens.get(j).getQuantidade();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Desfaz a reserva do número de uma venda que não foi realizada
+     */
+    private void liberarNumero(Venda venda) {
+        vendasPorNumero.remove(venda.getNumero(), venda);
+        vendasPendentes.remove(venda);
+    }
+    
+    /**
+     * Devolve ao estoque o que foi retirado para o lote e não foi vendido
+     */
+    private static void devolverSobras(HashMap<Produto, int[]> saldos) {
+        for (Map.Entry<Produto, int[]> e : saldos.entrySet()) {
+            if (e.getValue()[0] > 0) {
+                e.getKey().devolverEstoque(e.getValue()[0]);
+            }
+        }
+    }
+    
+    /**
+     * Devolve ao disponível o que já saiu além da reserva, do item ate para trás
+     */
+    private static void devolverExcedentes(List<ItemVenda> itens, int[] excedentes, int ate) {
+        for (int j = ate; j >= 0; j--) {
+            if (excedentes[j] > 0) {
+                itens.get(j).getProduto().devolverEstoque(excedentes[j]);
+            }
+        }
+    }
+    
     /**
      * Cancela uma venda pelo número (ID)
      * 
      * @param numero Número da venda a ser cancelada
+     * @return true se cancelada, false se não existe ou já estava cancelada
      */
-    public void cancelarVenda(String numero) {
-        // Usar Iterator para percorrer a lista de forma segura
-        Iterator<Venda> iterator = vendas.iterator();
-        
-        while (iterator.hasNext()) {
-            Venda venda = iterator.next();
-            // Encontrou a venda e ela não está cancelada
-            if (venda.getNumero().equals(numero) && !venda.isCancelada()) {
-                // Marcar a venda como cancelada
+    public boolean cancelarVenda(String numero) {
+        travaEstado.readLock().lock();
+        try {
+            // Localiza a venda direto pelo índice (vendas de lote ainda não confirmadas não contam)
+            Venda venda = buscarVenda(numero);
+            
+            // Reserva o cancelamento (só um terminal consegue); a venda só é
+            // marcada depois de gravada no diário, então uma falha na gravação
+            // deixa a venda como estava
+            if (venda == null || venda.isCancelada() || !cancelando.add(numero)) {
+                return false;
+            }
+            try {
+                if (venda.isCancelada()) {
+                    return false;
+                }
+                Diario d = diario;
+                if (d != null) {
+                    try {
+                        d.registrarCancelamento(numero);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Falha ao gravar o cancelamento no diário", e);
+                    }
+                }
                 venda.cancelar();
-                
-                // Devolver produtos ao estoque
-                for (ItemVenda item : venda.getItens()) {
-                    Produto p = item.getProduto();
-                    p.setEstoque(p.getEstoque() + item.getQuantidade());
+                synchronized (cancelamentos) {
+                    cancelamentos.add(venda.getPosicao());
                 }
-                
-                // Remover valor da venda do saldo do caixa
-                saldoCaixa -= venda.calcularTotal();
-                break;
+            } finally {
+                cancelando.remove(numero);
+            }
+            
+            // Devolver produtos ao estoque
+            for (ItemVenda item : venda.getItens()) {
+                item.getProduto().devolverEstoque(item.getQuantidade());
+            }
+            
+            // Remover valor da venda do saldo do caixa
+            saldoCentavos.add(-venda.calcularTotalCentavos());
+            BarramentoEventos e = eventos;
+            if (e != null) {
+                e.publicarVendaCancelada(venda);
             }
+            return true;
+        } finally {
+            travaEstado.readLock().unlock();
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,53 @@
+package controller;
+
+import model.Produto;
+import model.Venda;
+
+/**
+ * Evento publicado pelo Caixa no barramento de eventos.
+ *
+ * Os eventos são posições reaproveitadas do anel do barramento: depois que
+ * o assinante retorna de aoReceber, a mesma instância pode receber outro
+ * evento. Quem precisar guardar algo deve copiar o produto ou a venda.
+ */
+public class EventoCaixa {
+    /**
+     * Tipos de evento
+     */
+    public enum Tipo {
+        PRODUTO_CADASTRADO,
+        VENDA_REALIZADA,
+        VENDA_CANCELADA
+    }
+    
+    private Tipo tipo;
+    private Produto produto;
+    private Venda venda;
+    
+    EventoCaixa() {
+    }
+    
+    void preencher(Tipo tipo, Produto produto, Venda venda) {
+        this.tipo = tipo;
+        this.produto = produto;
+        this.venda = venda;
+    }
+    
+    public Tipo getTipo() {
+        return tipo;
+    }
+    
+    /**
+     * Retorna o produto cadastrado (só em PRODUTO_CADASTRADO)
+     */
+    public Produto getProduto() {
+        return produto;
+    }
+    
+    /**
+     * Retorna a venda realizada ou cancelada (só em VENDA_REALIZADA e VENDA_CANCELADA)
+     */
+    public Venda getVenda() {
+        return venda;
+    }
+}
@@ -0,0 +1,149 @@
+package controller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Produto;
+import model.Venda;
+
+/**
+ * Reservas de estoque para as cestas abertas nos terminais.
+ *
+ * Cada item adicionado à cesta é reservado na hora (sai do disponível do
+ * produto), então dois terminais nunca vendem a mesma unidade e a venda não
+ * falha no "Finalizar Venda" por falta de estoque. Uma reserva sem uso por
+ * mais que a validade é liberada por uma tarefa periódica, para cestas
+ * abandonadas não prenderem estoque.
+ */
+public class GerenciadorReservas implements AutoCloseable {
+    private final Caixa caixa;
+    private final long validadeNanos;
+    
+    // Reservas ativas, pelo número
+    private final ConcurrentHashMap<Long, Reserva> ativas = new ConcurrentHashMap<>();
+    private final AtomicLong proximoNumero = new AtomicLong(1);
+    
+    // Tarefa que libera as reservas vencidas
+    private final ScheduledExecutorService coletor;
+    
+    /**
+     * @param caixa Caixa dos produtos reservados
+     * @param validadeSegundos Tempo sem uso depois do qual a reserva é liberada
+     */
+    public GerenciadorReservas(Caixa caixa, long validadeSegundos) {
+        this.caixa = caixa;
+        this.validadeNanos = TimeUnit.SECONDS.toNanos(validadeSegundos);
+        this.coletor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reservas-caixa");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalo = Math.max(1, validadeSegundos / 4);
+        coletor.scheduleWithFixedDelay(this::liberarVencidas, intervalo, intervalo, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Abre uma reserva vazia para uma nova cesta
+     */
+    public Reserva abrir() {
+        Reserva reserva = new Reserva(proximoNumero.getAndIncrement(), System.nanoTime() + validadeNanos);
+        ativas.put(reserva.getNumero(), reserva);
+        return reserva;
+    }
+    
+    /**
+     * Reserva mais uma quantidade do produto para a cesta e renova a validade
+     * 
+     * @return true se reservou, false se não há disponível ou a reserva não está mais ativa
+     */
+    public boolean reservar(Reserva reserva, Produto produto, int quantidade) {
+        return caixa.executarOperacao(() -> {
+            synchronized (reserva) {
+                if (!reserva.isAtiva() || !produto.reservarParaCesta(quantidade)) {
+                    return false;
+                }
+                reserva.somar(produto, quantidade);
+                reserva.renovar(System.nanoTime() + validadeNanos);
+                return true;
+            }
+        });
+    }
+    
+    /**
+     * Libera tudo o que a reserva segura (cesta cancelada ou terminal fechado)
+     */
+    public void liberar(Reserva reserva) {
+        caixa.executarOperacao(() -> {
+            synchronized (reserva) {
+                if (reserva.isAtiva()) {
+                    devolver(reserva.encerrar());
+                }
+            }
+            return null;
+        });
+        ativas.remove(reserva.getNumero());
+    }
+    
+    /**
+     * Finaliza a venda usando o estoque reservado para a cesta.
+     * Se a reserva já expirou, tenta a venda normalmente.
+     * 
+     * @return true se a venda foi realizada, false se faltou estoque (a reserva continua valendo)
+     */
+    public boolean confirmar(Reserva reserva, Venda venda) {
+        boolean realizada = caixa.realizarVenda(venda, reserva);
+        if (!reserva.isAtiva()) {
+            ativas.remove(reserva.getNumero());
+        }
+        return realizada;
+    }
+    
+    /**
+     * Retorna a quantidade de reservas ativas
+     */
+    public int getQuantidadeAtivas() {
+        return ativas.size();
+    }
+    
+    /**
+     * Para a tarefa de expiração (as reservas ativas continuam valendo)
+     */
+    @Override
+    public void close() {
+        coletor.shutdownNow();
+    }
+    
+    /**
+     * Libera as reservas sem uso há mais que a validade
+     */
+    void liberarVencidas() {
+        long agora = System.nanoTime();
+        for (Reserva reserva : ativas.values()) {
+            boolean liberada = caixa.executarOperacao(() -> {
+                synchronized (reserva) {
+                    if (!reserva.isAtiva()) {
+                        return true;
+                    }
+                    if (!reserva.venceuEm(agora)) {
+                        return false;
+                    }
+                    devolver(reserva.encerrar());
+                    return true;
+                }
+            });
+            if (liberada) {
+                ativas.remove(reserva.getNumero());
+            }
+        }
+    }
+    
+    private static void devolver(Map<Produto, Integer> reservadas) {
+        for (Map.Entry<Produto, Integer> e : reservadas.entrySet()) {
+            e.getKey().liberarReserva(e.getValue());
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package controller;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+import model.ItemVenda;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Histórico de vendas guardado em colunas de tipos primitivos, em vez de um
+ * objeto Venda (com número em String, lista de itens e LocalDateTime) por
+ * venda. Serve para manter em memória históricos de milhões de vendas
+ * (ex: as vendas de um instantâneo guardado, lidas por Instantaneo.lerHistorico
+ * para consulta na ArquivoVendasView).
+ *
+ * Por venda: o número (UUID em dois longs), a data em milissegundos e a
+ * posição do primeiro item; canceladas num BitSet. Por item: o id do
+ * produto (posição numa tabela de produtos), a quantidade e o preço
+ * unitário em centavos. A busca pelo número usa uma tabela de espalhamento
+ * de ints, sem objetos por venda.
+ *
+ * getVenda monta uma Venda nova a cada chamada, só para leitura: ela não é
+ * a mesma instância guardada no Caixa, e cancelá-la não altera o histórico
+ * (use cancelar). As datas ficam com precisão de milissegundos.
+ */
+public class HistoricoColunar {
+    // Capacidade inicial das colunas
+    private static final int CAPACIDADE_INICIAL = 1024;
+    
+    // Colunas das vendas
+    private long[] numeroAlto = new long[CAPACIDADE_INICIAL];
+    private long[] numeroBaixo = new long[CAPACIDADE_INICIAL];
+    private long[] dataMillis = new long[CAPACIDADE_INICIAL];
+    // Posição do primeiro item de cada venda; os itens da venda i vão até o primeiro da i + 1
+    private int[] primeiroItem = new int[CAPACIDADE_INICIAL + 1];
+    private final BitSet canceladas = new BitSet();
+    private int quantidade;
+    
+    // Colunas dos itens
+    private int[] produtoItem = new int[CAPACIDADE_INICIAL];
+    private int[] quantidadeItem = new int[CAPACIDADE_INICIAL];
+    private long[] precoItem = new long[CAPACIDADE_INICIAL];
+    private int quantidadeItens;
+    
+    // Números que não são UUID (raros: ex: vendas importadas), pela posição da venda
+    private final HashMap<Integer, String> numerosTexto = new HashMap<>();
+    
+    // Tabela de produtos: o id é a posição na lista
+    private final ArrayList<Produto> produtos = new ArrayList<>();
+    private final HashMap<String, Integer> idPorCodigo = new HashMap<>();
+    
+    // Busca pelo número: endereçamento aberto, guarda posição + 1 (0 é vazio)
+    private int[] tabelaNumeros = new int[CAPACIDADE_INICIAL * 2];
+    
+    /**
+     * Guarda uma cópia da venda no fim do histórico, com o status atual dela
+     * 
+     * @return Posição da venda no histórico
+     */
+    public synchronized int adicionar(Venda venda) {
+        List<ItemVenda> itens = venda.getItens();
+        garantirCapacidade(itens.size());
+        
+        int posicao = quantidade;
+        UUID uuid = comoUuid(venda.getNumero());
+        if (uuid != null) {
+            numeroAlto[posicao] = uuid.getMostSignificantBits();
+            numeroBaixo[posicao] = uuid.getLeastSignificantBits();
+        } else {
+            numerosTexto.put(posicao, venda.getNumero());
+        }
+        dataMillis[posicao] = venda.getData().toInstant(ZoneOffset.UTC).toEpochMilli();
+        if (venda.isCancelada()) {
+            canceladas.set(posicao);
+        }
+        for (int i = 0; i < itens.size(); i++) {
+            ItemVenda item = itens.get(i);
+            produtoItem[quantidadeItens] = idProduto(item.getProduto());
+            quantidadeItem[quantidadeItens] = item.getQuantidade();
+            precoItem[quantidadeItens] = item.getPrecoUnitarioCentavos();
+            quantidadeItens++;
+        }
+        quantidade++;
+        primeiroItem[quantidade] = quantidadeItens;
+        indexar(posicao);
+        return posicao;
+    }
+    
+    /**
+     * Retorna a quantidade de vendas guardadas (inclusive canceladas)
+     */
+    public synchronized int getQuantidade() {
+        return quantidade;
+    }
+    
+    /**
+     * Monta a venda da posição informada a partir das colunas
+     * 
+     * @param posicao Posição de 0 até getQuantidade() - 1
+     */
+    public synchronized Venda getVenda(int posicao) {
+        verificarPosicao(posicao);
+        Venda venda = new Venda(getNumero(posicao), getData(posicao));
+        for (int i = primeiroItem[posicao]; i < primeiroItem[posicao + 1]; i++) {
+            venda.adicionarItem(produtos.get(produtoItem[i]), quantidadeItem[i], precoItem[i]);
+        }
+        if (canceladas.get(posicao)) {
+            venda.cancelar();
+        }
+        return venda;
+    }
+    
+    /**
+     * Retorna a posição da venda com o número informado, ou -1 se não houver
+     */
+    public synchronized int localizar(String numero) {
+        UUID uuid = comoUuid(numero);
+        int mascara = tabelaNumeros.length - 1;
+        for (int i = espalhar(numero, uuid) & mascara; tabelaNumeros[i] != 0; i = (i + 1) & mascara) {
+            int posicao = tabelaNumeros[i] - 1;
+            if (uuid != null ? !numerosTexto.containsKey(posicao)
+                    && numeroAlto[posicao] == uuid.getMostSignificantBits()
+                    && numeroBaixo[posicao] == uuid.getLeastSignificantBits()
+                    : numero.equals(numerosTexto.get(posicao))) {
+                return posicao;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Marca a venda como cancelada
+     * 
+     * @return true se foi cancelada agora, false se já estava cancelada
+     */
+    public synchronized boolean cancelar(int posicao) {
+        verificarPosicao(posicao);
+        if (canceladas.get(posicao)) {
+            return false;
+        }
+        canceladas.set(posicao);
+        return true;
+    }
+    
+    public synchronized boolean isCancelada(int posicao) {
+        verificarPosicao(posicao);
+        return canceladas.get(posicao);
+    }
+    
+    public synchronized String getNumero(int posicao) {
+        verificarPosicao(posicao);
+        String texto = numerosTexto.get(posicao);
+        return texto != null ? texto : new UUID(numeroAlto[posicao], numeroBaixo[posicao]).toString();
+    }
+    
+    public synchronized LocalDateTime getData(int posicao) {
+        verificarPosicao(posicao);
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(dataMillis[posicao]), ZoneOffset.UTC);
+    }
+    
+    /**
+     * Retorna o total da venda em centavos, somado direto das colunas (sem montar a venda)
+     */
+    public synchronized long getTotalCentavos(int posicao) {
+        verificarPosicao(posicao);
+        long total = 0;
+        for (int i = primeiroItem[posicao]; i < primeiroItem[posicao + 1]; i++) {
+            total += precoItem[i] * quantidadeItem[i];
+        }
+        return total;
+    }
+    
+    /**
+     * Retorna o id do produto, incluindo-o na tabela na primeira vez
+     */
+    private int idProduto(Produto produto) {
+        Integer id = idPorCodigo.get(produto.getCodigo());
+        if (id == null) {
+            id = produtos.size();
+            produtos.add(produto);
+            idPorCodigo.put(produto.getCodigo(), id);
+        }
+        return id;
+    }
+    
+    /**
+     * Converte o número para UUID, ou retorna null se ele não for um UUID na
+     * forma canônica (a única que volta igual do toString)
+     */
+    private static UUID comoUuid(String numero) {
+        if (numero.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(numero);
+            return uuid.toString().equals(numero) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private static int espalhar(String numero, UUID uuid) {
+        long h = uuid != null ? uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits() : numero.hashCode();
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    /**
+     * Inclui a venda na tabela de números, dobrando a tabela acima de metade cheia
+     */
+    private void indexar(int posicao) {
+        if (quantidade * 2 > tabelaNumeros.length) {
+            tabelaNumeros = new int[tabelaNumeros.length * 2];
+            for (int p = 0; p < quantidade - 1; p++) {
+                inserirNaTabela(p);
+            }
+        }
+        inserirNaTabela(posicao);
+    }
+    
+    private void inserirNaTabela(int posicao) {
+        String texto = numerosTexto.get(posicao);
+        UUID uuid = texto == null ? new UUID(numeroAlto[posicao], numeroBaixo[posicao]) : null;
+        int mascara = tabelaNumeros.length - 1;
+        int i = espalhar(texto, uuid) & mascara;
+        while (tabelaNumeros[i] != 0) {
+            i = (i + 1) & mascara;
+        }
+        tabelaNumeros[i] = posicao + 1;
+    }
+    
+    /**
+     * Aumenta as colunas, se preciso, para mais uma venda com a quantidade de itens informada
+     */
+    private void garantirCapacidade(int itens) {
+        if (quantidade == numeroAlto.length) {
+            int capacidade = numeroAlto.length * 2;
+            numeroAlto = Arrays.copyOf(numeroAlto, capacidade);
+            numeroBaixo = Arrays.copyOf(numeroBaixo, capacidade);
+            dataMillis = Arrays.copyOf(dataMillis, capacidade);
+            primeiroItem = Arrays.copyOf(primeiroItem, capacidade + 1);
+        }
+        if (quantidadeItens + itens > produtoItem.length) {
+            int capacidade = Math.max(produtoItem.length * 2, quantidadeItens + itens);
+            produtoItem = Arrays.copyOf(produtoItem, capacidade);
+            quantidadeItem = Arrays.copyOf(quantidadeItem, capacidade);
+            precoItem = Arrays.copyOf(precoItem, capacidade);
+        }
+    }
+    
+    private void verificarPosicao(int posicao) {
+        if (posicao < 0 || posicao >= quantidade) {
+            throw new IndexOutOfBoundsException("Posição " + posicao + " fora do histórico (" + quantidade + " vendas)");
+        }
+    }
+}
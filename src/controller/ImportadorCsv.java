@@ -0,0 +1,250 @@
+package controller;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.Produto;
+
+/**
+ * Importação em lote de produtos a partir de um arquivo CSV no formato
+ * codigo,nome,preco,estoque (uma linha por produto, cabeçalho opcional).
+ *
+ * O arquivo é lido em blocos de linhas; cada bloco é validado em paralelo
+ * com as mesmas regras do cadastro (ValidacaoProduto) e os produtos válidos
+ * entram no Caixa bloco a bloco, na ordem do arquivo. Só alguns blocos ficam
+ * em memória ao mesmo tempo, então o consumo não cresce com o tamanho do arquivo.
+ */
+public class ImportadorCsv {
+    // Linhas por bloco
+    private static final int LINHAS_POR_BLOCO = 10_000;
+    
+    // Quantidade máxima de mensagens de erro guardadas (as demais só são contadas)
+    private static final int MAXIMO_ERROS_GUARDADOS = 1000;
+    
+    private final Caixa caixa;
+    private final int threads;
+    
+    /**
+     * Cria um importador que usa todos os processadores disponíveis
+     */
+    public ImportadorCsv(Caixa caixa) {
+        this(caixa, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Cria um importador com a quantidade de threads de validação informada
+     */
+    public ImportadorCsv(Caixa caixa, int threads) {
+        this.caixa = caixa;
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Importa o arquivo CSV (UTF-8) para o caixa
+     * 
+     * @param arquivo Arquivo a importar
+     * @return Resumo da importação, com os erros por linha
+     */
+    public Resultado importar(Path arquivo) throws IOException {
+        Resultado resultado = new Resultado();
+        ExecutorService validadores = Executors.newFixedThreadPool(threads);
+        // Blocos em validação; o limite segura a memória usada
+        ArrayDeque<Future<Bloco>> pendentes = new ArrayDeque<>();
+        int maximoPendentes = threads * 2;
+        
+        try (BufferedReader leitor = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            List<String> linhas = new ArrayList<>(LINHAS_POR_BLOCO);
+            long primeiraLinha = 1;
+            long numeroLinha = 0;
+            String linha;
+            while ((linha = leitor.readLine()) != null) {
+                numeroLinha++;
+                if (numeroLinha == 1 && linha.startsWith("\uFEFF")) {
+                    // Marca de ordem de bytes que o Excel põe no começo de CSVs em UTF-8
+                    linha = linha.substring(1);
+                }
+                if (numeroLinha == 1 && ehCabecalho(linha)) {
+                    primeiraLinha = 2;
+                    continue;
+                }
+                linhas.add(linha);
+                if (linhas.size() == LINHAS_POR_BLOCO) {
+                    List<String> bloco = linhas;
+                    long inicio = primeiraLinha;
+                    pendentes.add(validadores.submit(() -> validar(bloco, inicio)));
+                    linhas = new ArrayList<>(LINHAS_POR_BLOCO);
+                    primeiraLinha = numeroLinha + 1;
+                    if (pendentes.size() >= maximoPendentes) {
+                        inserir(pendentes.poll(), resultado);
+                    }
+                }
+            }
+            if (!linhas.isEmpty()) {
+                List<String> bloco = linhas;
+                long inicio = primeiraLinha;
+                pendentes.add(validadores.submit(() -> validar(bloco, inicio)));
+            }
+            while (!pendentes.isEmpty()) {
+                inserir(pendentes.poll(), resultado);
+            }
+        } finally {
+            validadores.shutdownNow();
+        }
+        return resultado;
+    }
+    
+    /**
+     * Aguarda a validação de um bloco e cadastra seus produtos válidos no caixa
+     */
+    private void inserir(Future<Bloco> futuro, Resultado resultado) throws IOException {
+        Bloco bloco;
+        try {
+            bloco = futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Importação interrompida", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Erro ao validar o arquivo", e.getCause());
+        }
+        
+        resultado.linhasLidas += bloco.linhasLidas;
+        for (String erro : bloco.erros) {
+            resultado.adicionarErro(erro);
+        }
+        
+        List<Produto> recusados = caixa.cadastrarProdutos(bloco.produtos);
+        resultado.importados += bloco.produtos.size() - recusados.size();
+        // Os recusados vêm na mesma ordem do bloco: basta avançar junto para achar a linha
+        int i = 0;
+        for (Produto recusado : recusados) {
+            while (bloco.produtos.get(i) != recusado) {
+                i++;
+            }
+            resultado.adicionarErro("Linha " + bloco.linhaDoProduto[i] + ": Já existe um produto com esse código!");
+        }
+    }
+    
+    /**
+     * Valida as linhas de um bloco (roda nas threads de validação)
+     */
+    private static Bloco validar(List<String> linhas, long primeiraLinha) {
+        Bloco bloco = new Bloco(linhas.size());
+        for (int i = 0; i < linhas.size(); i++) {
+            long numeroLinha = primeiraLinha + i;
+            String linha = linhas.get(i);
+            if (linha.trim().isEmpty()) {
+                continue;
+            }
+            bloco.linhasLidas++;
+            try {
+                Produto p = interpretar(linha);
+                bloco.linhaDoProduto[bloco.produtos.size()] = numeroLinha;
+                bloco.produtos.add(p);
+            } catch (IllegalArgumentException e) {
+                bloco.erros.add("Linha " + numeroLinha + ": " + e.getMessage());
+            }
+        }
+        return bloco;
+    }
+    
+    /**
+     * Separa os campos de uma linha e valida o produto.
+     * O código vai até a primeira vírgula e preço e estoque são os dois
+     * últimos campos, então o nome pode conter vírgulas.
+     */
+    private static Produto interpretar(String linha) {
+        int primeira = linha.indexOf(',');
+        int ultima = linha.lastIndexOf(',');
+        int penultima = ultima > 0 ? linha.lastIndexOf(',', ultima - 1) : -1;
+        if (primeira < 0 || penultima <= primeira) {
+            throw new IllegalArgumentException("Todos os campos são obrigatórios!");
+        }
+        String codigo = linha.substring(0, primeira);
+        String nome = semAspas(linha.substring(primeira + 1, penultima).trim());
+        String preco = linha.substring(penultima + 1, ultima);
+        String estoque = linha.substring(ultima + 1);
+        return ValidacaoProduto.criarProduto(codigo, nome, preco, estoque);
+    }
+    
+    private static String semAspas(String texto) {
+        if (texto.length() >= 2 && texto.startsWith("\"") && texto.endsWith("\"")) {
+            return texto.substring(1, texto.length() - 1).replace("\"\"", "\"");
+        }
+        return texto;
+    }
+    
+    private static boolean ehCabecalho(String linha) {
+        return linha.trim().toLowerCase().startsWith("codigo,")
+                || linha.trim().toLowerCase().startsWith("código,");
+    }
+    
+    /**
+     * Resultado da validação de um bloco de linhas
+     */
+    private static class Bloco {
+        final List<Produto> produtos;
+        final long[] linhaDoProduto;
+        final List<String> erros = new ArrayList<>();
+        int linhasLidas;
+        
+        Bloco(int tamanho) {
+            this.produtos = new ArrayList<>(tamanho);
+            this.linhaDoProduto = new long[tamanho];
+        }
+    }
+    
+    /**
+     * Resumo de uma importação
+     */
+    public static class Resultado {
+        private long linhasLidas;
+        private long importados;
+        private long totalErros;
+        private final List<String> erros = new ArrayList<>();
+        
+        /**
+         * Retorna a quantidade de linhas de dados lidas (sem cabeçalho e linhas vazias)
+         */
+        public long getLinhasLidas() {
+            return linhasLidas;
+        }
+        
+        /**
+         * Retorna a quantidade de produtos cadastrados
+         */
+        public long getImportados() {
+            return importados;
+        }
+        
+        /**
+         * Retorna a quantidade total de linhas recusadas
+         */
+        public long getTotalErros() {
+            return totalErros;
+        }
+        
+        /**
+         * Retorna as mensagens de erro ("Linha N: motivo"), limitadas às primeiras 1000
+         */
+        public List<String> getErros() {
+            return erros;
+        }
+        
+        private void adicionarErro(String erro) {
+            totalErros++;
+            if (erros.size() < MAXIMO_ERROS_GUARDADOS) {
+                erros.add(erro);
+            }
+        }
+    }
+}
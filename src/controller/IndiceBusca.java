@@ -0,0 +1,200 @@
+package controller;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Índice de busca de produtos por prefixo de palavra, sem diferenciar
+ * maiúsculas nem acentos ("acucar" encontra "Açúcar").
+ *
+ * Cada palavra distinta (do nome ou do código) é uma chave num mapa ordenado
+ * e aponta para a lista dos produtos que a contêm. Buscar um prefixo é
+ * percorrer a faixa de chaves que começa com ele, parando ao juntar os k
+ * primeiros resultados. O mapa e as listas aceitam inclusões concorrentes,
+ * então o índice é atualizado a cada cadastro sem ser reconstruído.
+ */
+class IndiceBusca {
+    // Caracteres de U+00C0 a U+00FF já sem acento e em minúsculas
+    private static final String SEM_ACENTO_LATIN1 =
+            "aaaaaaæceeeeiiiiðnooooo×øuuuuyþß" +
+            "aaaaaaæceeeeiiiiðnooooo÷øuuuuyþy";
+    
+    private final ConcurrentSkipListMap<String, Postagens> palavras = new ConcurrentSkipListMap<>();
+    
+    /**
+     * Inclui o produto no índice
+     */
+    void adicionar(String codigo, String nome) {
+        // O código entra inteiro e também separado em partes (ex: "789-123" e "123")
+        List<String> lista = new ArrayList<>();
+        String codigoNormalizado = normalizar(codigo);
+        if (!codigoNormalizado.isEmpty()) {
+            lista.add(codigoNormalizado);
+        }
+        separarPalavras(codigoNormalizado, lista);
+        separarPalavras(normalizar(nome), lista);
+        
+        Entrada entrada = new Entrada(codigo, lista.toArray(new String[0]));
+        for (String palavra : entrada.palavras) {
+            Postagens postagens = palavras.get(palavra);
+            if (postagens == null) {
+                Postagens nova = new Postagens();
+                postagens = palavras.putIfAbsent(palavra, nova);
+                if (postagens == null) {
+                    postagens = nova;
+                }
+            }
+            postagens.adicionar(entrada);
+        }
+    }
+    
+    /**
+     * Busca os códigos dos produtos cujas palavras começam com os termos digitados.
+     * Com vários termos, todos precisam aparecer (cada um como início de
+     * alguma palavra do nome ou do código).
+     * 
+     * @param texto Texto digitado
+     * @param limite Quantidade máxima de códigos
+     * @param aceitar Filtro aplicado a cada código antes de contá-lo no limite
+     * @return Códigos encontrados, sem repetição, na ordem alfabética da palavra
+     */
+    List<String> buscar(String texto, int limite, Predicate<String> aceitar) {
+        List<String> resultado = new ArrayList<>();
+        List<String> lista = new ArrayList<>();
+        separarPalavras(normalizar(texto), lista);
+        String[] termos = lista.toArray(new String[0]);
+        if (termos.length == 0 || limite <= 0) {
+            return resultado;
+        }
+        
+        // O termo mais longo é o mais seletivo: ele percorre o índice e os demais só filtram
+        String principal = termos[0];
+        for (String termo : termos) {
+            if (termo.length() > principal.length()) {
+                principal = termo;
+            }
+        }
+        
+        for (Postagens postagens : palavras.subMap(principal, principal + Character.MAX_VALUE).values()) {
+            int tamanho = postagens.tamanho;
+            Entrada[] itens = postagens.itens;
+            for (int i = 0; i < tamanho; i++) {
+                Entrada entrada = itens[i];
+                if (resultado.contains(entrada.codigo)) {
+                    continue;
+                }
+                if (termos.length > 1 && !entrada.contemTodos(termos)) {
+                    continue;
+                }
+                if (!aceitar.test(entrada.codigo)) {
+                    continue;
+                }
+                resultado.add(entrada.codigo);
+                if (resultado.size() == limite) {
+                    return resultado;
+                }
+            }
+        }
+        return resultado;
+    }
+    
+    /**
+     * Remove acentos, passa para minúsculas e apara os espaços
+     */
+    static String normalizar(String texto) {
+        StringBuilder sb = new StringBuilder(texto.length());
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                sb.append(Character.toLowerCase(c));
+            } else if (c >= 0xC0 && c <= 0xFF) {
+                // Acentos do português: tabela direta, sem decompor
+                sb.append(SEM_ACENTO_LATIN1.charAt(c - 0xC0));
+            } else {
+                // Demais caracteres: decompõe e descarta as marcas de acento
+                String decomposto = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+                for (int j = 0; j < decomposto.length(); j++) {
+                    char d = decomposto.charAt(j);
+                    if (Character.getType(d) != Character.NON_SPACING_MARK) {
+                        sb.append(Character.toLowerCase(d));
+                    }
+                }
+            }
+        }
+        return sb.toString().trim();
+    }
+    
+    /**
+     * Separa um texto normalizado em palavras (sequências de letras e dígitos),
+     * acrescentando à lista as que ainda não estão nela
+     */
+    private static void separarPalavras(String normalizado, List<String> lista) {
+        int inicio = -1;
+        for (int i = 0; i <= normalizado.length(); i++) {
+            boolean letra = i < normalizado.length() && Character.isLetterOrDigit(normalizado.charAt(i));
+            if (letra && inicio < 0) {
+                inicio = i;
+            } else if (!letra && inicio >= 0) {
+                String palavra = normalizado.substring(inicio, i);
+                if (!lista.contains(palavra)) {
+                    lista.add(palavra);
+                }
+                inicio = -1;
+            }
+        }
+    }
+    
+    /**
+     * Produto indexado: código e palavras normalizadas
+     */
+    private static class Entrada {
+        final String codigo;
+        final String[] palavras;
+        
+        Entrada(String codigo, String[] palavras) {
+            this.codigo = codigo;
+            this.palavras = palavras;
+        }
+        
+        /**
+         * Verifica se cada termo é início de alguma palavra do produto
+         */
+        boolean contemTodos(String[] termos) {
+            for (String termo : termos) {
+                boolean achou = false;
+                for (String palavra : palavras) {
+                    if (palavra.startsWith(termo)) {
+                        achou = true;
+                        break;
+                    }
+                }
+                if (!achou) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Produtos que contêm uma palavra, na ordem em que foram incluídos.
+     * A lista só cresce: quem lê pega o tamanho e depois o vetor, e enxerga
+     * os itens até aquele tamanho sem precisar de trava.
+     */
+    private static class Postagens {
+        volatile Entrada[] itens = new Entrada[2];
+        volatile int tamanho;
+        
+        synchronized void adicionar(Entrada entrada) {
+            if (tamanho == itens.length) {
+                itens = Arrays.copyOf(itens, tamanho * 2);
+            }
+            itens[tamanho] = entrada;
+            tamanho++;
+        }
+    }
+}
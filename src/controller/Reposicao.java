@@ -0,0 +1,408 @@
+package controller;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import model.ItemVenda;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Acompanhamento do estoque para reposição: cada produto tem um limite de
+ * reposição, e os produtos ficam num heap ordenado pela cobertura
+ * (estoque / limite), com os mais perto de acabar no topo. Uma venda ou
+ * cancelamento só reposiciona no heap os produtos da venda, em O(log n),
+ * sem percorrer o catálogo.
+ *
+ * Também estima a velocidade de venda de cada produto (média móvel
+ * exponencial das unidades por segundo, com constante de tempo de 6 horas:
+ * o peso de uma venda cai para 1/e a cada 6 horas, uma meia-vida de cerca de
+ * 4 horas e 10 minutos) e, com ela, quanto tempo falta para o estoque acabar.
+ *
+ * As vendas chegam pelo barramento de eventos do Caixa. Se a assinatura for
+ * desligada por atraso, o heap e as velocidades são refeitos a partir do
+ * caixa numa thread à parte (isDesatualizada() indica isso). Os limites
+ * ficam só em memória: produtos sem limite definido usam o limite padrão.
+ */
+public class Reposicao implements AssinanteEventos {
+    // Constante de tempo da média de velocidade, em segundos (o peso cai para 1/e nesse tempo)
+    private static final double CONSTANTE_VELOCIDADE = 6 * 3600;
+    
+    private final int limitePadrao;
+    
+    // Produtos acompanhados (protegidos por this)
+    private final IdentityHashMap<Produto, Item> itens = new IdentityHashMap<>();
+    
+    // Heap de mínimo pela cobertura; cada item sabe sua posição nele
+    private Item[] heap = new Item[64];
+    private int tamanho;
+    
+    // Avisados quando um produto passa a ficar no limite ou abaixo dele
+    private final CopyOnWriteArrayList<Consumer<Produto>> avisos = new CopyOnWriteArrayList<>();
+    
+    // Caixa acompanhado e assinatura no barramento dele
+    private Caixa caixa;
+    private BarramentoEventos.Assinatura assinatura;
+    private boolean encerrada;
+    
+    // Verdadeiro da perda da assinatura até o fim da ressincronização
+    private volatile boolean desatualizada;
+    
+    /**
+     * @param limitePadrao Limite de reposição dos produtos sem limite próprio
+     */
+    public Reposicao(int limitePadrao) {
+        this.limitePadrao = limitePadrao;
+    }
+    
+    /**
+     * Passa a acompanhar o caixa (que precisa ter barramento de eventos):
+     * indexa os produtos atuais e usa as vendas não canceladas do histórico
+     * para a velocidade inicial. Tudo com o caixa parado, então nenhuma venda
+     * é contada duas vezes nem perdida.
+     */
+    public void acompanhar(Caixa caixa) {
+        this.caixa = caixa;
+        caixa.executarComEstadoConsistente(this::carregar);
+    }
+    
+    /**
+     * Para de acompanhar o caixa
+     */
+    public synchronized void encerrar() {
+        encerrada = true;
+        if (assinatura != null) {
+            assinatura.close();
+        }
+    }
+    
+    /**
+     * Retorna true se o heap e as velocidades estão sendo refeitos depois de
+     * a assinatura ter ficado para trás
+     */
+    public boolean isDesatualizada() {
+        return desatualizada;
+    }
+    
+    @Override
+    public void aoDesligar(BarramentoEventos.Assinatura desligada) {
+        desatualizada = true;
+        Thread thread = new Thread(() -> ressincronizar(desligada), "reposicao-ressincronizacao");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Refaz o acompanhamento a partir do caixa e assina de novo, depois que
+     * a assinatura desligada entrega o último evento
+     */
+    private void ressincronizar(BarramentoEventos.Assinatura desligada) {
+        try {
+            desligada.aguardarEncerramento();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        caixa.executarComEstadoConsistente(this::carregar);
+        desatualizada = false;
+    }
+    
+    /**
+     * Indexa os produtos do caixa, recalcula as velocidades a partir das
+     * vendas não canceladas e assina os eventos seguintes (com o caixa
+     * parado). Os limites já definidos são mantidos.
+     */
+    private synchronized void carregar() {
+        for (Item item : itens.values()) {
+            item.taxa = 0;
+            item.ultimaAtualizacao = 0;
+        }
+        for (Produto p : caixa.getProdutos()) {
+            item(p);
+        }
+        int quantidade = caixa.getQuantidadeVendas();
+        for (int i = 0; i < quantidade; i++) {
+            Venda venda = caixa.getVenda(i);
+            if (!venda.isCancelada()) {
+                registrarVelocidade(venda, 1);
+            }
+        }
+        // Estoques mudaram sem aviso enquanto a assinatura esteve fora
+        for (Item item : itens.values()) {
+            atualizarChave(item);
+        }
+        if (!encerrada) {
+            assinatura = caixa.getEventos().assinar("reposicao", this);
+        }
+    }
+    
+    /**
+     * Passa a avisar quando um produto chegar ao limite de reposição
+     * (chamado na thread do barramento)
+     */
+    public void adicionarAviso(Consumer<Produto> aviso) {
+        avisos.add(aviso);
+    }
+    
+    @Override
+    public void aoReceber(EventoCaixa evento, boolean fimDoLote) {
+        List<Produto> chegaramAoLimite = new ArrayList<>();
+        synchronized (this) {
+            switch (evento.getTipo()) {
+                case PRODUTO_CADASTRADO:
+                    item(evento.getProduto());
+                    break;
+                case VENDA_REALIZADA:
+                    registrarVelocidade(evento.getVenda(), 1);
+                    reposicionar(evento.getVenda(), chegaramAoLimite);
+                    break;
+                default:
+                    registrarVelocidade(evento.getVenda(), -1);
+                    reposicionar(evento.getVenda(), chegaramAoLimite);
+                    break;
+            }
+        }
+        for (Produto p : chegaramAoLimite) {
+            for (Consumer<Produto> aviso : avisos) {
+                aviso.accept(p);
+            }
+        }
+    }
+    
+    /**
+     * Define o limite de reposição do produto (0 para não acompanhar)
+     */
+    public synchronized void setLimite(Produto produto, int limite) {
+        Item item = item(produto);
+        item.limite = limite;
+        atualizarChave(item);
+    }
+    
+    /**
+     * Retorna o limite de reposição do produto
+     */
+    public synchronized int getLimite(Produto produto) {
+        Item item = itens.get(produto);
+        return item == null ? limitePadrao : item.limite;
+    }
+    
+    /**
+     * Retorna os produtos no limite de reposição ou abaixo dele, dos mais
+     * perto de acabar para os menos. Custa O(k log k) para k produtos
+     * retornados, qualquer que seja o tamanho do catálogo.
+     */
+    public synchronized List<Produto> getAbaixoDoLimite() {
+        return percorrer(Integer.MAX_VALUE, 1.0);
+    }
+    
+    /**
+     * Retorna os k produtos mais perto de acabar (pela cobertura estoque / limite)
+     */
+    public synchronized List<Produto> getMaisProximos(int k) {
+        return percorrer(k, Double.MAX_VALUE);
+    }
+    
+    /**
+     * Retorna a velocidade de venda atual do produto, em unidades por dia
+     */
+    public synchronized double getVelocidadePorDia(Produto produto) {
+        Item item = itens.get(produto);
+        return item == null ? 0 : taxaAgora(item) * 86400;
+    }
+    
+    /**
+     * Estima quanto tempo falta para o estoque do produto acabar, na
+     * velocidade de venda atual
+     * 
+     * @return Tempo estimado, ou null se o produto não tem vendas recentes
+     */
+    public synchronized Duration getPrevisaoEsgotar(Produto produto) {
+        Item item = itens.get(produto);
+        double taxa = item == null ? 0 : taxaAgora(item);
+        if (taxa <= 0) {
+            return null;
+        }
+        return Duration.ofSeconds((long) Math.min(produto.getEstoqueTotal() / taxa, Long.MAX_VALUE / 2));
+    }
+    
+    /**
+     * Percorre o heap em ordem de cobertura sem retirar nada: uma fila
+     * auxiliar guarda as posições candidatas (os filhos das já visitadas)
+     */
+    private List<Produto> percorrer(int k, double coberturaMaxima) {
+        List<Produto> produtos = new ArrayList<>();
+        PriorityQueue<Integer> candidatas = new PriorityQueue<>((a, b) -> Double.compare(heap[a].chave, heap[b].chave));
+        if (tamanho > 0) {
+            candidatas.add(0);
+        }
+        while (!candidatas.isEmpty() && produtos.size() < k) {
+            int posicao = candidatas.poll();
+            if (heap[posicao].chave > coberturaMaxima) {
+                break;
+            }
+            produtos.add(heap[posicao].produto);
+            for (int filho = 2 * posicao + 1; filho <= 2 * posicao + 2 && filho < tamanho; filho++) {
+                candidatas.add(filho);
+            }
+        }
+        return produtos;
+    }
+    
+    /**
+     * Reposiciona no heap os produtos da venda e junta os que chegaram ao limite agora
+     */
+    private void reposicionar(Venda venda, List<Produto> chegaramAoLimite) {
+        for (ItemVenda itemVenda : venda.getItens()) {
+            Item item = item(itemVenda.getProduto());
+            boolean estavaAcima = item.chave > 1.0;
+            atualizarChave(item);
+            if (estavaAcima && item.chave <= 1.0) {
+                chegaramAoLimite.add(item.produto);
+            }
+        }
+    }
+    
+    /**
+     * Atualiza a velocidade dos produtos da venda: cada venda soma
+     * quantidade / constante à taxa, que decai exponencialmente com o tempo.
+     * O cancelamento retira a mesma contribuição, já decaída até agora.
+     */
+    private void registrarVelocidade(Venda venda, int sinal) {
+        long momento = millis(venda.getData());
+        for (ItemVenda itemVenda : venda.getItens()) {
+            Item item = item(itemVenda.getProduto());
+            double contribuicao = itemVenda.getQuantidade() / CONSTANTE_VELOCIDADE;
+            if (momento >= item.ultimaAtualizacao) {
+                item.taxa = decair(item.taxa, momento - item.ultimaAtualizacao) + sinal * contribuicao;
+                item.ultimaAtualizacao = momento;
+            } else {
+                // Venda mais antiga que a última atualização (ex: lote de um terminal que ficou sem conexão)
+                item.taxa += sinal * decair(contribuicao, item.ultimaAtualizacao - momento);
+            }
+            item.taxa = Math.max(0, item.taxa);
+        }
+    }
+    
+    private double taxaAgora(Item item) {
+        long agora = System.currentTimeMillis();
+        return agora > item.ultimaAtualizacao ? decair(item.taxa, agora - item.ultimaAtualizacao) : item.taxa;
+    }
+    
+    private static double decair(double valor, long millis) {
+        return valor * Math.exp(-millis / 1000.0 / CONSTANTE_VELOCIDADE);
+    }
+    
+    private static long millis(LocalDateTime data) {
+        return data.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    /**
+     * Retorna o item do produto, incluindo-o no heap se ainda não estiver
+     * (ex: produto do catálogo mapeado vendido pela primeira vez)
+     */
+    private Item item(Produto produto) {
+        Item item = itens.get(produto);
+        if (item == null) {
+            item = new Item(produto, limitePadrao);
+            itens.put(produto, item);
+            if (tamanho == heap.length) {
+                Item[] maior = new Item[tamanho * 2];
+                System.arraycopy(heap, 0, maior, 0, tamanho);
+                heap = maior;
+            }
+            item.chave = cobertura(item);
+            item.posicao = tamanho;
+            heap[tamanho++] = item;
+            subir(item.posicao);
+        }
+        return item;
+    }
+    
+    private void atualizarChave(Item item) {
+        double anterior = item.chave;
+        item.chave = cobertura(item);
+        if (item.chave < anterior) {
+            subir(item.posicao);
+        } else if (item.chave > anterior) {
+            descer(item.posicao);
+        }
+    }
+    
+    /**
+     * Estoque físico (disponível + reservado) dividido pelo limite; sem limite, fica no fim do heap
+     */
+    private static double cobertura(Item item) {
+        if (item.limite <= 0) {
+            return Double.MAX_VALUE;
+        }
+        return (double) item.produto.getEstoqueTotal() / item.limite;
+    }
+    
+    private void subir(int posicao) {
+        Item item = heap[posicao];
+        while (posicao > 0) {
+            int pai = (posicao - 1) / 2;
+            if (heap[pai].chave <= item.chave) {
+                break;
+            }
+            colocar(pai, posicao);
+            posicao = pai;
+        }
+        heap[posicao] = item;
+        item.posicao = posicao;
+    }
+    
+    private void descer(int posicao) {
+        Item item = heap[posicao];
+        while (true) {
+            int filho = 2 * posicao + 1;
+            if (filho >= tamanho) {
+                break;
+            }
+            if (filho + 1 < tamanho && heap[filho + 1].chave < heap[filho].chave) {
+                filho++;
+            }
+            if (item.chave <= heap[filho].chave) {
+                break;
+            }
+            colocar(filho, posicao);
+            posicao = filho;
+        }
+        heap[posicao] = item;
+        item.posicao = posicao;
+    }
+    
+    /**
+     * Move o item da posição de origem para a de destino
+     */
+    private void colocar(int origem, int destino) {
+        heap[destino] = heap[origem];
+        heap[destino].posicao = destino;
+    }
+    
+    /**
+     * Produto acompanhado: limite, chave no heap e velocidade de venda
+     */
+    private static class Item {
+        final Produto produto;
+        int limite;
+        double chave;
+        int posicao;
+        
+        // Taxa de venda em unidades por segundo, válida no momento ultimaAtualizacao
+        double taxa;
+        long ultimaAtualizacao;
+        
+        Item(Produto produto, int limite) {
+            this.produto = produto;
+            this.limite = limite;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import model.Produto;
+
+/**
+ * Reserva de estoque de uma cesta aberta num terminal. As quantidades
+ * reservadas saem do disponível do produto até a venda ser finalizada, a
+ * cesta ser cancelada ou a reserva expirar por falta de uso.
+ *
+ * Os métodos que alteram a reserva são chamados pelo GerenciadorReservas e
+ * pelo Caixa, sempre sincronizados na própria reserva.
+ */
+public class Reserva {
+    private final long numero;
+    
+    // Quantidade reservada por produto
+    private final HashMap<Produto, Integer> quantidades = new HashMap<>();
+    
+    // Momento (System.nanoTime) em que a reserva expira se não for usada
+    private long expiraEm;
+    
+    private boolean ativa = true;
+    
+    Reserva(long numero, long expiraEm) {
+        this.numero = numero;
+        this.expiraEm = expiraEm;
+    }
+    
+    public long getNumero() {
+        return numero;
+    }
+    
+    /**
+     * Indica se a reserva ainda segura estoque (não foi finalizada, cancelada nem expirou)
+     */
+    public synchronized boolean isAtiva() {
+        return ativa;
+    }
+    
+    /**
+     * Retorna a quantidade reservada do produto
+     */
+    public synchronized int getQuantidade(Produto produto) {
+        Integer quantidade = quantidades.get(produto);
+        return quantidade == null ? 0 : quantidade;
+    }
+    
+    /**
+     * Retorna uma cópia das quantidades reservadas por produto
+     */
+    HashMap<Produto, Integer> getQuantidades() {
+        return new HashMap<>(quantidades);
+    }
+    
+    void somar(Produto produto, int quantidade) {
+        quantidades.merge(produto, quantidade, Integer::sum);
+    }
+    
+    void renovar(long expiraEm) {
+        this.expiraEm = expiraEm;
+    }
+    
+    boolean venceuEm(long agora) {
+        return agora - expiraEm >= 0;
+    }
+    
+    /**
+     * Encerra a reserva e retorna o que estava reservado (quem chama decide
+     * se a quantidade volta ao disponível ou é baixada numa venda)
+     */
+    Map<Produto, Integer> encerrar() {
+        ativa = false;
+        Map<Produto, Integer> reservadas = new HashMap<>(quantidades);
+        quantidades.clear();
+        return reservadas;
+    }
+}
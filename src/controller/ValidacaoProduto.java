@@ -0,0 +1,58 @@
+package controller;
+
+import model.Produto;
+
+/**
+ * Regras de validação dos dados de um produto.
+ * Usadas tanto pelo cadastro na tela quanto pela importação em lote,
+ * para que as duas aceitem e recusem exatamente os mesmos valores.
+ */
+public final class ValidacaoProduto {
+    
+    private ValidacaoProduto() {
+    }
+    
+    /**
+     * Valida os campos (em texto, como digitados) e cria o produto
+     * 
+     * @param codigo Código do produto
+     * @param nome Nome do produto
+     * @param preco Preço em reais
+     * @param estoque Quantidade em estoque
+     * @return Produto criado com os valores já convertidos
+     * @throws IllegalArgumentException com a mensagem do erro, se algum campo for inválido
+     */
+    public static Produto criarProduto(String codigo, String nome, String preco, String estoque) {
+        codigo = codigo == null ? "" : codigo.trim();
+        nome = nome == null ? "" : nome.trim();
+        preco = preco == null ? "" : preco.trim();
+        estoque = estoque == null ? "" : estoque.trim();
+        
+        // Campos obrigatórios
+        if (codigo.isEmpty() || nome.isEmpty() || preco.isEmpty() || estoque.isEmpty()) {
+            throw new IllegalArgumentException("Todos os campos são obrigatórios!");
+        }
+        
+        double valorPreco;
+        try {
+            valorPreco = Double.parseDouble(preco);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Preço inválido!");
+        }
+        if (valorPreco <= 0) {
+            throw new IllegalArgumentException("O preço deve ser maior que zero!");
+        }
+        
+        int valorEstoque;
+        try {
+            valorEstoque = Integer.parseInt(estoque);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Estoque inválido!");
+        }
+        if (valorEstoque < 0) {
+            throw new IllegalArgumentException("O estoque não pode ser negativo!");
+        }
+        
+        return new Produto(codigo, nome, valorPreco, valorEstoque);
+    }
+}
@@ -7,12 +7,25 @@ public class ItemVenda {
     private Produto produto;
     private int quantidade;
     
+    // Preço unitário em centavos no momento em que o item entrou na venda
+    private long precoUnitarioCentavos;
+    
     /**
      * Construtor completo da classe ItemVenda
      */
     public ItemVenda(Produto produto, int quantidade) {
         this.produto = produto;
         this.quantidade = quantidade;
+        this.precoUnitarioCentavos = produto.getPrecoCentavos();
+    }
+    
+    /**
+     * Construtor com o preço unitário já definido (usado ao restaurar vendas antigas)
+     */
+    public ItemVenda(Produto produto, int quantidade, long precoUnitarioCentavos) {
+        this.produto = produto;
+        this.quantidade = quantidade;
+        this.precoUnitarioCentavos = precoUnitarioCentavos;
     }
     
     // Getters e Setters
@@ -20,28 +33,39 @@ public class ItemVenda {
         return produto;
     }
     
-    public void setProduto(Produto produto) {
-        this.produto = produto;
-    }
-    
     public int getQuantidade() {
         return quantidade;
     }
     
-    public void setQuantidade(int quantidade) {
+    /**
+     * Altera a quantidade da linha (só pela Venda, que mantém o total junto)
+     */
+    void setQuantidade(int quantidade) {
         this.quantidade = quantidade;
     }
     
+    public long getPrecoUnitarioCentavos() {
+        return precoUnitarioCentavos;
+    }
+    
     /**
-     * Calcula o valor total do item (preço * quantidade)
+     * Calcula o valor total do item em reais (compatibilidade; prefira getValorTotalCentavos)
      */
     public double getValorTotal() {
-        return produto.getPreco() * quantidade;
+        return getValorTotalCentavos() / 100.0;
+    }
+    
+    /**
+     * Calcula o valor total do item em centavos (preço * quantidade)
+     */
+    public long getValorTotalCentavos() {
+        return precoUnitarioCentavos * quantidade;
     }
     
     @Override
     public String toString() {
         return "ItemVenda [produto=" + produto.getNome() + ", quantidade=" + quantidade + 
-                ", valor unitário=" + produto.getPreco() + ", valor total=" + getValorTotal() + "]";
+                ", valor unitário=" + Moeda.formatar(precoUnitarioCentavos) + 
+                ", valor total=" + Moeda.formatar(getValorTotalCentavos()) + "]";
     }
 } 
\ No newline at end of file
@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * Funções auxiliares para valores em dinheiro.
+ * O sistema guarda os valores como centavos inteiros (long) e só converte
+ * para reais na hora de exibir.
+ */
+public final class Moeda {
+    
+    private Moeda() {
+    }
+    
+    /**
+     * Converte um valor em reais para centavos, arredondando
+     * 
+     * @param reais Valor em reais
+     * @return Valor em centavos
+     */
+    public static long paraCentavos(double reais) {
+        return Math.round(reais * 100);
+    }
+    
+    /**
+     * Formata um valor em centavos no padrão "R$ 1234,56".
+     * Monta o texto direto, sem String.format, pois é chamado para cada linha das tabelas.
+     * 
+     * @param centavos Valor em centavos
+     * @return Texto formatado
+     */
+    public static String formatar(long centavos) {
+        StringBuilder sb = new StringBuilder(16);
+        sb.append("R$ ");
+        if (centavos < 0) {
+            sb.append('-');
+            centavos = -centavos;
+        }
+        long resto = centavos % 100;
+        sb.append(centavos / 100).append(',');
+        if (resto < 10) {
+            sb.append('0');
+        }
+        sb.append(resto);
+        return sb.toString();
+    }
+}
@@ -1,5 +1,7 @@
 package model;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Classe que representa um produto no sistema.
  * Um produto tem código único, nome, preço e quantidade em estoque.
@@ -11,11 +13,15 @@ public class Produto {
     // Nome ou descrição do produto
     private String nome;
     
-    // Preço unitário do produto em reais
-    private double preco;
+    // Preço unitário do produto em centavos (inteiro, para contas exatas)
+    private long precoCentavos;
+    
+    // Quantidade disponível em estoque (atômica: alterada por vários terminais sem trava)
+    private final AtomicInteger estoque;
     
-    // Quantidade disponível em estoque
-    private int estoque;
+    // Quantidade separada para cestas ainda abertas nos terminais (reservas).
+    // Já saiu do disponível, mas continua fisicamente na loja.
+    private final AtomicInteger reservado;
     
     /**
      * Construtor completo da classe Produto.
@@ -26,10 +32,28 @@ public class Produto {
      * @param estoque Quantidade em estoque
      */
     public Produto(String codigo, String nome, double preco, int estoque) {
+        this(codigo, nome, Moeda.paraCentavos(preco), estoque);
+    }
+    
+    private Produto(String codigo, String nome, long precoCentavos, int estoque) {
         this.codigo = codigo;
         this.nome = nome;
-        this.preco = preco;
-        this.estoque = estoque;
+        this.precoCentavos = precoCentavos;
+        this.estoque = new AtomicInteger(estoque);
+        this.reservado = new AtomicInteger();
+    }
+    
+    /**
+     * Cria um produto com o preço já em centavos (ex: lido do diário, do
+     * instantâneo ou do catálogo), sem passar por reais em double.
+     * 
+     * @param codigo Código único do produto
+     * @param nome Nome ou descrição do produto
+     * @param precoCentavos Preço unitário em centavos
+     * @param estoque Quantidade em estoque
+     */
+    public static Produto emCentavos(String codigo, String nome, long precoCentavos, int estoque) {
+        return new Produto(codigo, nome, precoCentavos, estoque);
     }
     
     // Métodos de acesso (getters e setters)
@@ -63,31 +87,114 @@ public class Produto {
     }
     
     /**
-     * Retorna o preço do produto
+     * Retorna o preço do produto em reais (compatibilidade; prefira getPrecoCentavos)
      */
     public double getPreco() {
-        return preco;
+        return precoCentavos / 100.0;
     }
     
     /**
-     * Define o preço do produto
+     * Define o preço do produto em reais (compatibilidade; prefira setPrecoCentavos)
      */
     public void setPreco(double preco) {
-        this.preco = preco;
+        this.precoCentavos = Moeda.paraCentavos(preco);
+    }
+    
+    /**
+     * Retorna o preço do produto em centavos
+     */
+    public long getPrecoCentavos() {
+        return precoCentavos;
+    }
+    
+    /**
+     * Define o preço do produto em centavos
+     */
+    public void setPrecoCentavos(long precoCentavos) {
+        this.precoCentavos = precoCentavos;
     }
     
     /**
      * Retorna a quantidade em estoque
      */
     public int getEstoque() {
-        return estoque;
+        return estoque.get();
     }
     
     /**
      * Define a quantidade em estoque
      */
     public void setEstoque(int estoque) {
-        this.estoque = estoque;
+        this.estoque.set(estoque);
+    }
+    
+    /**
+     * Retira a quantidade do estoque de forma atômica (CAS), sem travas.
+     * O estoque nunca fica negativo: se não houver o suficiente, nada é retirado.
+     * 
+     * @param quantidade Quantidade a retirar
+     * @return true se retirou, false se o estoque era insuficiente
+     */
+    public boolean reservarEstoque(int quantidade) {
+        int atual;
+        do {
+            atual = estoque.get();
+            if (atual < quantidade) {
+                return false;
+            }
+        } while (!estoque.compareAndSet(atual, atual - quantidade));
+        return true;
+    }
+    
+    /**
+     * Devolve a quantidade ao estoque de forma atômica
+     * 
+     * @param quantidade Quantidade a devolver
+     */
+    public void devolverEstoque(int quantidade) {
+        estoque.addAndGet(quantidade);
+    }
+    
+    /**
+     * Retorna a quantidade reservada para cestas abertas
+     */
+    public int getReservado() {
+        return reservado.get();
+    }
+    
+    /**
+     * Retorna o estoque físico: disponível mais reservado
+     */
+    public int getEstoqueTotal() {
+        return estoque.get() + reservado.get();
+    }
+    
+    /**
+     * Passa a quantidade do disponível para o reservado, se houver disponível
+     * 
+     * @return true se reservou, false se o disponível era insuficiente
+     */
+    public boolean reservarParaCesta(int quantidade) {
+        if (!reservarEstoque(quantidade)) {
+            return false;
+        }
+        reservado.addAndGet(quantidade);
+        return true;
+    }
+    
+    /**
+     * Devolve uma quantidade reservada ao disponível (cesta cancelada ou expirada)
+     */
+    public void liberarReserva(int quantidade) {
+        reservado.addAndGet(-quantidade);
+        estoque.addAndGet(quantidade);
+    }
+    
+    /**
+     * Dá baixa numa quantidade reservada que foi vendida (não volta ao disponível)
+     */
+    public void baixarReserva(int quantidade) {
+        reservado.addAndGet(-quantidade);
     }
     
     /**
@@ -97,6 +204,6 @@ public class Produto {
     @Override
     public String toString() {
         return "Produto [codigo=" + codigo + ", nome=" + nome + 
-               ", preco=" + preco + ", estoque=" + estoque + "]";
+               ", preco=" + Moeda.formatar(precoCentavos) + ", estoque=" + estoque.get() + "]";
     }
 } 
\ No newline at end of file
@@ -3,6 +3,9 @@ package model;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -11,8 +14,27 @@ import java.util.UUID;
 public class Venda {
     private String numero;
     private ArrayList<ItemVenda> itens;
+    private List<ItemVenda> itensSomenteLeitura;
+    
+    // O mesmo produto adicionado de novo soma na linha existente em vez de criar
+    // outra. Com poucas linhas a linha é procurada percorrendo a lista; acima de
+    // LIMITE_BUSCA_LINEAR são criados os índices abaixo, para não gastar memória
+    // com mapas em cada venda pequena guardada no histórico.
+    private static final int LIMITE_BUSCA_LINEAR = 16;
+    
+    // Posição da linha de cada produto em itens, pelo código (null enquanto a venda é pequena)
+    private HashMap<String, Integer> linhaPorCodigo;
+    
+    // Quantidade total de cada produto na venda, pelo código (null enquanto a venda é pequena)
+    private HashMap<String, Integer> quantidadePorCodigo;
     private LocalDateTime data;
-    private boolean cancelada;
+    private volatile boolean cancelada;
+    
+    // Posição da venda no histórico do caixa (-1 enquanto não foi realizada)
+    private volatile int posicao = -1;
+    
+    // Total em centavos, mantido a cada item adicionado (leitura em O(1))
+    private long totalCentavos;
     
     /**
      * Construtor que inicializa uma nova venda com um número único
@@ -20,17 +42,36 @@ public class Venda {
     public Venda() {
         this.numero = UUID.randomUUID().toString();
         this.itens = new ArrayList<>();
+        this.itensSomenteLeitura = Collections.unmodifiableList(itens);
         this.data = LocalDateTime.now();
         this.cancelada = false;
     }
     
+    /**
+     * Construtor usado para restaurar uma venda já existente (ex: do diário)
+     * 
+     * @param numero Número original da venda
+     * @param data Data original da venda
+     */
+    public Venda(String numero, LocalDateTime data) {
+        this.numero = numero;
+        this.itens = new ArrayList<>();
+        this.itensSomenteLeitura = Collections.unmodifiableList(itens);
+        this.data = data;
+        this.cancelada = false;
+    }
+    
     // Getters e Setters
     public String getNumero() {
         return numero;
     }
     
-    public ArrayList<ItemVenda> getItens() {
-        return itens;
+    /**
+     * Retorna os itens da venda (somente leitura: use adicionarItem para
+     * que o total continue correto)
+     */
+    public List<ItemVenda> getItens() {
+        return itensSomenteLeitura;
     }
     
     public LocalDateTime getData() {
@@ -42,32 +83,152 @@ public class Venda {
     }
     
     /**
-     * Adiciona um item à venda
+     * Retorna a posição da venda no histórico do caixa (a de Caixa.getVenda),
+     * ou -1 se ela ainda não foi realizada
+     */
+    public int getPosicao() {
+        return posicao;
+    }
+    
+    /**
+     * Registra a posição da venda no histórico do caixa (chamado pelo Caixa
+     * quando ela entra no histórico)
+     */
+    public void registrarPosicao(int posicao) {
+        this.posicao = posicao;
+    }
+    
+    /**
+     * Adiciona um item à venda. Se o produto já estiver na venda, a
+     * quantidade é somada na linha dele.
      */
     public void adicionarItem(Produto produto, int quantidade) {
-        itens.add(new ItemVenda(produto, quantidade));
+        somarItem(produto, quantidade);
     }
     
     /**
-     * Calcula o valor total da venda
+     * Adiciona um item com o preço unitário original (usado ao restaurar vendas antigas).
+     * Soma na linha do produto se o preço for o mesmo; vendas antigas com o
+     * mesmo produto a preços diferentes mantêm uma linha para cada preço.
+     */
+    public void adicionarItem(Produto produto, int quantidade, long precoUnitarioCentavos) {
+        somar(produto, quantidade, precoUnitarioCentavos);
+    }
+    
+    /**
+     * Soma a quantidade na linha do produto, criando a linha só na primeira vez
+     * (ex: o mesmo código lido várias vezes pelo leitor de código de barras).
+     * A busca da linha e o ajuste do total são O(1).
+     * 
+     * @return Posição da linha do produto em getItens()
+     */
+    public int somarItem(Produto produto, int quantidade) {
+        int linha = localizarLinha(produto.getCodigo());
+        long preco = linha < 0 ? produto.getPrecoCentavos() : itens.get(linha).getPrecoUnitarioCentavos();
+        return somar(produto, quantidade, preco);
+    }
+    
+    /**
+     * Retorna a quantidade total do produto nesta venda (0 se não estiver nela)
+     */
+    public int getQuantidade(String codigo) {
+        if (quantidadePorCodigo != null) {
+            Integer quantidade = quantidadePorCodigo.get(codigo);
+            return quantidade == null ? 0 : quantidade;
+        }
+        int quantidade = 0;
+        for (ItemVenda item : itens) {
+            if (item.getProduto().getCodigo().equals(codigo)) {
+                quantidade += item.getQuantidade();
+            }
+        }
+        return quantidade;
+    }
+    
+    private int somar(Produto produto, int quantidade, long precoUnitarioCentavos) {
+        String codigo = produto.getCodigo();
+        boolean indexada = quantidadePorCodigo != null;
+        int linha = localizarLinha(codigo);
+        if (linha < 0 || itens.get(linha).getPrecoUnitarioCentavos() != precoUnitarioCentavos) {
+            linha = itens.size();
+            itens.add(new ItemVenda(produto, quantidade, precoUnitarioCentavos));
+            if (linhaPorCodigo != null) {
+                linhaPorCodigo.put(codigo, linha);
+            } else if (itens.size() > LIMITE_BUSCA_LINEAR) {
+                criarIndices();
+            }
+        } else {
+            ItemVenda item = itens.get(linha);
+            item.setQuantidade(item.getQuantidade() + quantidade);
+        }
+        // (se os índices acabaram de ser criados, já contam este item)
+        if (indexada) {
+            quantidadePorCodigo.merge(codigo, quantidade, Integer::sum);
+        }
+        totalCentavos += precoUnitarioCentavos * quantidade;
+        return linha;
+    }
+    
+    /**
+     * Retorna a posição da (última) linha do produto, ou -1 se não estiver na venda
+     */
+    private int localizarLinha(String codigo) {
+        if (linhaPorCodigo != null) {
+            Integer linha = linhaPorCodigo.get(codigo);
+            return linha == null ? -1 : linha;
+        }
+        for (int i = itens.size() - 1; i >= 0; i--) {
+            if (itens.get(i).getProduto().getCodigo().equals(codigo)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Cria os índices por código quando a venda passa de LIMITE_BUSCA_LINEAR linhas
+     */
+    private void criarIndices() {
+        linhaPorCodigo = new HashMap<>();
+        quantidadePorCodigo = new HashMap<>();
+        for (int i = 0; i < itens.size(); i++) {
+            ItemVenda item = itens.get(i);
+            linhaPorCodigo.put(item.getProduto().getCodigo(), i);
+            quantidadePorCodigo.merge(item.getProduto().getCodigo(), item.getQuantidade(), Integer::sum);
+        }
+    }
+    
+    /**
+     * Calcula o valor total da venda em reais (compatibilidade; prefira calcularTotalCentavos)
      */
     public double calcularTotal() {
-        return itens.stream()
-                .mapToDouble(ItemVenda::getValorTotal)
-                .sum();
+        return calcularTotalCentavos() / 100.0;
+    }
+    
+    /**
+     * Retorna o valor total da venda em centavos (mantido por adicionarItem)
+     */
+    public long calcularTotalCentavos() {
+        return totalCentavos;
     }
     
     /**
      * Cancela a venda
+     * 
+     * @return true se a venda foi cancelada agora, false se já estava cancelada
      */
-    public void cancelar() {
+    public synchronized boolean cancelar() {
+        if (cancelada) {
+            return false;
+        }
         this.cancelada = true;
+        return true;
     }
     
     @Override
     public String toString() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
         return "Venda [numero=" + numero + ", data=" + data.format(formatter) + 
-                ", cancelada=" + cancelada + ", total=" + calcularTotal() + "]";
+                ", cancelada=" + cancelada + ", total=" + Moeda.formatar(calcularTotalCentavos()) + "]";
     }
 } 
\ No newline at end of file
@@ -0,0 +1,335 @@
+package persistencia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import model.Produto;
+
+/**
+ * Catálogo de produtos em arquivo de layout fixo, lido por mapeamento em
+ * memória (FileChannel.map). Abrir o catálogo não lê os registros: o sistema
+ * operacional carrega só as páginas consultadas, e um Produto só é criado no
+ * heap quando alguém o busca.
+ *
+ * Layout do arquivo:
+ * - cabeçalho (32 bytes): assinatura, versão, quantidade de registros,
+ *   capacidade do índice, início de cada área e segmento do diário com que
+ *   foi gravado (0 para um catálogo externo, que não depende do diário);
+ * - índice hash (capacidade x int): posição do registro + 1, ou 0 se vazio,
+ *   com sondagem linear;
+ * - registros (48 bytes cada): código (1 byte de tamanho + 23 bytes),
+ *   início e tamanho do nome, preço em centavos e estoque;
+ * - área de nomes, em UTF-8.
+ */
+public class CatalogoMapeado implements Closeable {
+    private static final int ASSINATURA = 0x43415431;
+    private static final int VERSAO = 1;
+    
+    private static final int TAMANHO_CABECALHO = 32;
+    private static final int TAMANHO_REGISTRO = 48;
+    private static final int TAMANHO_MAXIMO_CODIGO = 23;
+    
+    // Deslocamentos dentro de um registro
+    private static final int REG_CODIGO = 0;
+    private static final int REG_NOME_INICIO = 24;
+    private static final int REG_NOME_TAMANHO = 28;
+    private static final int REG_PRECO = 32;
+    private static final int REG_ESTOQUE = 40;
+    
+    private final FileChannel canal;
+    private final MappedByteBuffer mapa;
+    private final int quantidade;
+    private final int capacidadeIndice;
+    private final int inicioIndice;
+    private final int inicioRegistros;
+    private final int inicioNomes;
+    private final int segmento;
+    
+    /**
+     * Abre e mapeia um arquivo de catálogo (somente leitura)
+     * 
+     * @param arquivo Arquivo gravado por {@link #gravar(Path, List)}
+     */
+    public CatalogoMapeado(Path arquivo) throws IOException {
+        this.canal = FileChannel.open(arquivo, StandardOpenOption.READ);
+        if (canal.size() > Integer.MAX_VALUE) {
+            canal.close();
+            throw new IOException("Catálogo maior que 2 GB não é suportado");
+        }
+        this.mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        if (mapa.capacity() < TAMANHO_CABECALHO || mapa.getInt(0) != ASSINATURA || mapa.getInt(4) != VERSAO) {
+            canal.close();
+            throw new IOException("Arquivo de catálogo inválido");
+        }
+        this.quantidade = mapa.getInt(8);
+        this.capacidadeIndice = mapa.getInt(12);
+        this.inicioIndice = mapa.getInt(16);
+        this.inicioRegistros = mapa.getInt(20);
+        this.inicioNomes = mapa.getInt(24);
+        this.segmento = mapa.getInt(28);
+        // Confere as áreas antes de qualquer consulta: um cabeçalho corrompido
+        // faria a busca ler fora do arquivo ou sondar o índice sem fim
+        if (quantidade < 0 || segmento < 0
+                || capacidadeIndice <= quantidade || Integer.bitCount(capacidadeIndice) != 1
+                || inicioIndice < TAMANHO_CABECALHO
+                || inicioRegistros < inicioIndice + 4L * capacidadeIndice
+                || inicioNomes < inicioRegistros + (long) TAMANHO_REGISTRO * quantidade
+                || inicioNomes > mapa.capacity()) {
+            canal.close();
+            throw new IOException("Cabeçalho do catálogo inconsistente");
+        }
+    }
+    
+    /**
+     * Retorna o arquivo onde fica a versão anterior do catálogo, mantida
+     * por {@link Instantaneo} ao gravar uma nova
+     */
+    public static Path anterior(Path arquivo) {
+        return arquivo.resolveSibling(arquivo.getFileName() + ".anterior");
+    }
+    
+    /**
+     * Retorna o segmento do diário com que o catálogo foi gravado, ou 0 se é
+     * um catálogo externo. O catálogo só vale com um instantâneo desse
+     * segmento ou mais novo: o estoque gravado já inclui as vendas anteriores.
+     */
+    public long getSegmento() {
+        return segmento;
+    }
+    
+    /**
+     * Retorna a quantidade de produtos no catálogo
+     */
+    public int getQuantidade() {
+        return quantidade;
+    }
+    
+    /**
+     * Verifica se existe produto com o código, sem criar objetos Produto
+     */
+    public boolean contem(String codigo) {
+        return localizar(codigo) >= 0;
+    }
+    
+    /**
+     * Busca um produto pelo código no índice mapeado e cria o objeto Produto
+     * 
+     * @param codigo Código do produto
+     * @return Novo objeto Produto com os dados do arquivo, ou null se não existir
+     */
+    public Produto buscar(String codigo) {
+        int registro = localizar(codigo);
+        return registro < 0 ? null : materializar(registro);
+    }
+    
+    /**
+     * Lê só o estoque gravado para o código, sem criar o Produto
+     * 
+     * @return Estoque do registro, ou -1 se o código não existir
+     */
+    public int estoque(String codigo) {
+        int registro = localizar(codigo);
+        return registro < 0 ? -1 : mapa.getInt(inicioRegistros + registro * TAMANHO_REGISTRO + REG_ESTOQUE);
+    }
+    
+    /**
+     * Cria o objeto Produto do registro na posição informada (0 até getQuantidade() - 1)
+     */
+    public Produto produtoNaPosicao(int registro) {
+        if (registro < 0 || registro >= quantidade) {
+            throw new IndexOutOfBoundsException("Registro " + registro);
+        }
+        return materializar(registro);
+    }
+    
+    /**
+     * Lê só o código do registro na posição informada, sem criar o Produto
+     */
+    public String codigoNaPosicao(int registro) {
+        int base = inicioRegistros + registro * TAMANHO_REGISTRO;
+        byte[] codigo = new byte[mapa.get(base + REG_CODIGO)];
+        mapa.get(base + REG_CODIGO + 1, codigo);
+        return new String(codigo, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Lê só o nome do registro na posição informada, sem criar o Produto
+     */
+    public String nomeNaPosicao(int registro) {
+        int base = inicioRegistros + registro * TAMANHO_REGISTRO;
+        byte[] nome = new byte[mapa.getInt(base + REG_NOME_TAMANHO)];
+        mapa.get(inicioNomes + mapa.getInt(base + REG_NOME_INICIO), nome);
+        return new String(nome, StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+    
+    /**
+     * Grava um arquivo de catálogo externo com os produtos informados
+     * 
+     * @param arquivo Arquivo de destino (substituído se existir)
+     * @param produtos Produtos, com códigos únicos de até 23 bytes em UTF-8
+     */
+    public static void gravar(Path arquivo, List<Produto> produtos) throws IOException {
+        gravar(arquivo, produtos, 0);
+    }
+    
+    /**
+     * Grava um arquivo de catálogo com os produtos informados
+     * 
+     * @param arquivo Arquivo de destino (substituído se existir)
+     * @param produtos Produtos, com códigos únicos de até 23 bytes em UTF-8
+     * @param segmento Segmento do diário do instantâneo com o mesmo estoque, ou 0
+     */
+    public static void gravar(Path arquivo, List<Produto> produtos, long segmento) throws IOException {
+        if (segmento < 0 || segmento > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segmento fora do intervalo do catálogo: " + segmento);
+        }
+        int n = produtos.size();
+        int capacidade = Integer.highestOneBit(Math.max(2, n * 2 - 1)) << 1;
+        
+        byte[][] codigos = new byte[n][];
+        byte[][] nomes = new byte[n][];
+        long tamanhoNomes = 0;
+        for (int i = 0; i < n; i++) {
+            codigos[i] = produtos.get(i).getCodigo().getBytes(StandardCharsets.UTF_8);
+            if (codigos[i].length > TAMANHO_MAXIMO_CODIGO) {
+                throw new IllegalArgumentException("Código muito longo para o catálogo: " + produtos.get(i).getCodigo());
+            }
+            nomes[i] = produtos.get(i).getNome().getBytes(StandardCharsets.UTF_8);
+            tamanhoNomes += nomes[i].length;
+        }
+        
+        long inicioIndice = TAMANHO_CABECALHO;
+        long inicioRegistros = inicioIndice + 4L * capacidade;
+        long inicioNomes = inicioRegistros + (long) TAMANHO_REGISTRO * n;
+        long tamanhoTotal = inicioNomes + tamanhoNomes;
+        if (tamanhoTotal > Integer.MAX_VALUE) {
+            throw new IOException("Catálogo maior que 2 GB não é suportado");
+        }
+        
+        ByteBuffer buf = ByteBuffer.allocate((int) tamanhoTotal);
+        buf.putInt(0, ASSINATURA);
+        buf.putInt(4, VERSAO);
+        buf.putInt(8, n);
+        buf.putInt(12, capacidade);
+        buf.putInt(16, (int) inicioIndice);
+        buf.putInt(20, (int) inicioRegistros);
+        buf.putInt(24, (int) inicioNomes);
+        buf.putInt(28, (int) segmento);
+        
+        int posicaoNome = 0;
+        for (int i = 0; i < n; i++) {
+            Produto p = produtos.get(i);
+            int base = (int) inicioRegistros + i * TAMANHO_REGISTRO;
+            buf.put(base + REG_CODIGO, (byte) codigos[i].length);
+            buf.put(base + REG_CODIGO + 1, codigos[i]);
+            buf.putInt(base + REG_NOME_INICIO, posicaoNome);
+            buf.putInt(base + REG_NOME_TAMANHO, nomes[i].length);
+            buf.putLong(base + REG_PRECO, p.getPrecoCentavos());
+            // Estoque físico: reservas de cestas abertas não sobrevivem ao reinício
+            buf.putInt(base + REG_ESTOQUE, p.getEstoqueTotal());
+            buf.put((int) inicioNomes + posicaoNome, nomes[i]);
+            posicaoNome += nomes[i].length;
+            
+            // Insere no índice hash (sondagem linear)
+            int slot = hash(codigos[i]) & (capacidade - 1);
+            while (true) {
+                int pos = (int) inicioIndice + 4 * slot;
+                int ocupante = buf.getInt(pos);
+                if (ocupante == 0) {
+                    buf.putInt(pos, i + 1);
+                    break;
+                }
+                int baseOcupante = (int) inicioRegistros + (ocupante - 1) * TAMANHO_REGISTRO;
+                if (mesmoCodigo(buf, baseOcupante, codigos[i])) {
+                    throw new IllegalArgumentException("Código duplicado no catálogo: " + p.getCodigo());
+                }
+                slot = (slot + 1) & (capacidade - 1);
+            }
+        }
+        
+        // Grava num temporário e renomeia, para o catálogo nunca ficar pela metade
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        try (FileChannel saida = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                saida.write(buf);
+            }
+            saida.force(true);
+        }
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Procura o código no índice mapeado
+     * 
+     * @return Posição do registro, ou -1 se não existir
+     */
+    private int localizar(String codigo) {
+        byte[] chave = codigo.getBytes(StandardCharsets.UTF_8);
+        if (chave.length > TAMANHO_MAXIMO_CODIGO || quantidade == 0) {
+            return -1;
+        }
+        int slot = hash(chave) & (capacidadeIndice - 1);
+        while (true) {
+            int ocupante = mapa.getInt(inicioIndice + 4 * slot);
+            if (ocupante == 0) {
+                return -1;
+            }
+            int registro = ocupante - 1;
+            if (mesmoCodigo(mapa, inicioRegistros + registro * TAMANHO_REGISTRO, chave)) {
+                return registro;
+            }
+            slot = (slot + 1) & (capacidadeIndice - 1);
+        }
+    }
+    
+    /**
+     * Cria o Produto lendo o registro do arquivo mapeado
+     */
+    private Produto materializar(int registro) {
+        int base = inicioRegistros + registro * TAMANHO_REGISTRO;
+        return Produto.emCentavos(codigoNaPosicao(registro), nomeNaPosicao(registro),
+                mapa.getLong(base + REG_PRECO), mapa.getInt(base + REG_ESTOQUE));
+    }
+    
+    /**
+     * Compara o código gravado no registro com a chave, byte a byte
+     */
+    private static boolean mesmoCodigo(ByteBuffer buf, int base, byte[] chave) {
+        if (buf.get(base + REG_CODIGO) != chave.length) {
+            return false;
+        }
+        for (int i = 0; i < chave.length; i++) {
+            if (buf.get(base + REG_CODIGO + 1 + i) != chave[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Hash FNV-1a dos bytes do código
+     */
+    private static int hash(byte[] chave) {
+        int h = 0x811C9DC5;
+        for (byte b : chave) {
+            h ^= b & 0xFF;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,576 @@
+package persistencia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import controller.Caixa;
+import model.ItemVenda;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Diário (journal) de escrita antecipada do caixa.
+ * Cada cadastro de produto, venda e cancelamento é gravado como um registro
+ * binário no fim do arquivo antes de ser confirmado para a tela. Na
+ * inicialização o diário é reproduzido para reconstruir o Caixa.
+ *
+ * O diário é dividido em segmentos numerados (caixa-00000001.diario, ...).
+ * Ao gravar um instantâneo, o segmento atual é fechado e um novo é aberto;
+ * os segmentos anteriores ao instantâneo podem então ser apagados.
+ *
+ * Formato de cada registro: [int tamanho][int crc32][dados]. Um registro
+ * incompleto ou com CRC errado no fim do último segmento (queda no meio da
+ * escrita) é descartado na reprodução.
+ */
+public class Diario implements Closeable {
+    /**
+     * Modo de sincronização com o disco
+     */
+    public enum Modo {
+        // fsync a cada registro
+        SINCRONO,
+        // fsync em grupo: um único fsync confirma todos os registros já escritos
+        GRUPO
+    }
+    
+    // Prefixo e extensão dos arquivos de segmento
+    private static final String PREFIXO = "caixa-";
+    private static final String EXTENSAO = ".diario";
+    
+    // Tipos de registro
+    private static final byte PRODUTO = 1;
+    private static final byte VENDA = 2;
+    private static final byte CANCELAMENTO = 3;
+    // Venda com o preço unitário de cada item (VENDA é o formato antigo, sem preço)
+    private static final byte VENDA_COM_PRECO = 4;
+    
+    // Tamanho do cabeçalho de cada registro (tamanho + crc)
+    private static final int CABECALHO = 8;
+    
+    // Maior registro aceito na leitura; acima disso o arquivo está corrompido
+    private static final int TAMANHO_MAXIMO = 16 * 1024 * 1024;
+    
+    private final Path pasta;
+    private final Modo modo;
+    
+    // Segmento aberto para escrita e sua posição de escrita (protegidos por "this")
+    private volatile FileChannel canal;
+    private long segmentoAtual;
+    private long posicaoArquivo;
+    
+    // Total de bytes escritos desde a abertura, somando todos os segmentos
+    // (protegido por "this"); serve para saber quem já está em disco
+    private long posicaoEscrita;
+    
+    // Trava do fsync e posição lógica até onde tudo já está garantido em disco
+    private final Object travaSync = new Object();
+    private volatile long posicaoDuravel;
+    
+    // Posição no segmento atual até onde tudo já está em disco (protegida por "this")
+    private long posicaoArquivoDuravel;
+    
+    // Falha de escrita ou de fsync: a partir dela o diário recusa novas gravações,
+    // para nunca ter registros de operações que o caixa deu como falhas
+    private volatile IOException falha;
+    
+    /**
+     * Abre o diário da pasta informada. O último segmento existente é aberto
+     * para escrita (ou o primeiro é criado, se a pasta não tiver nenhum).
+     * 
+     * @param pasta Pasta onde ficam os segmentos
+     * @param modo Modo de sincronização com o disco
+     */
+    public Diario(Path pasta, Modo modo) throws IOException {
+        this.pasta = pasta;
+        this.modo = modo;
+        Files.createDirectories(pasta);
+        List<Long> segmentos = listarSegmentos();
+        this.segmentoAtual = segmentos.isEmpty() ? 1 : segmentos.get(segmentos.size() - 1);
+        this.canal = abrirSegmento(segmentoAtual);
+        this.posicaoArquivo = canal.size();
+        this.posicaoArquivoDuravel = posicaoArquivo;
+    }
+    
+    /**
+     * Reproduz todos os registros válidos do diário no caixa informado.
+     * Deve ser chamado antes de o diário ser ligado ao caixa (setDiario),
+     * para que a reprodução não seja gravada de novo.
+     * 
+     * @param caixa Caixa a ser reconstruído
+     * @return Quantidade de registros reproduzidos
+     */
+    public int reproduzir(Caixa caixa) throws IOException {
+        return reproduzir(caixa, 0);
+    }
+    
+    /**
+     * Reproduz os registros dos segmentos a partir do número informado
+     * (usado após carregar um instantâneo). Um final truncado ou corrompido
+     * no último segmento é removido do arquivo; nos segmentos anteriores,
+     * que foram fechados com fsync, isso é um erro.
+     * 
+     * @param caixa Caixa a ser reconstruído
+     * @param primeiroSegmento Primeiro segmento a reproduzir
+     * @return Quantidade de registros reproduzidos
+     */
+    public synchronized int reproduzir(Caixa caixa, long primeiroSegmento) throws IOException {
+        int registros = 0;
+        for (long segmento : listarSegmentos()) {
+            if (segmento < primeiroSegmento) {
+                continue;
+            }
+            if (segmento == segmentoAtual) {
+                long[] resultado = reproduzirCanal(canal, caixa);
+                registros += (int) resultado[1];
+                if (resultado[0] < canal.size()) {
+                    // Descarta o final inválido para que os próximos registros fiquem contíguos
+                    canal.truncate(resultado[0]);
+                    canal.force(true);
+                }
+                posicaoArquivo = resultado[0];
+                posicaoArquivoDuravel = posicaoArquivo;
+            } else {
+                try (FileChannel leitura = FileChannel.open(arquivoSegmento(segmento), StandardOpenOption.READ)) {
+                    long[] resultado = reproduzirCanal(leitura, caixa);
+                    if (resultado[0] < leitura.size()) {
+                        throw new IOException("Segmento " + segmento + " do diário está corrompido");
+                    }
+                    registros += (int) resultado[1];
+                }
+            }
+        }
+        return registros;
+    }
+    
+    /**
+     * Fecha o segmento atual (com fsync) e passa a escrever em um novo.
+     * Os registros seguintes vão para o novo segmento.
+     * 
+     * @return Número do novo segmento
+     */
+    public long rotacionar() throws IOException {
+        synchronized (travaSync) {
+            synchronized (this) {
+                canal.force(false);
+                canal.close();
+                segmentoAtual++;
+                canal = abrirSegmento(segmentoAtual);
+                posicaoArquivo = 0;
+                posicaoArquivoDuravel = 0;
+                posicaoDuravel = posicaoEscrita;
+                return segmentoAtual;
+            }
+        }
+    }
+    
+    /**
+     * Apaga os segmentos anteriores ao número informado
+     * (já cobertos por um instantâneo gravado)
+     * 
+     * @param segmento Primeiro segmento que deve ser mantido
+     */
+    public void apagarSegmentosAnteriores(long segmento) throws IOException {
+        for (long s : listarSegmentos()) {
+            if (s < segmento) {
+                Files.deleteIfExists(arquivoSegmento(s));
+            }
+        }
+    }
+    
+    /**
+     * Grava o cadastro de um produto
+     */
+    public void registrarProduto(Produto p) throws IOException {
+        gravar(registroProduto(p));
+    }
+    
+    /**
+     * Grava o cadastro de vários produtos de uma vez, com um único fsync
+     * (usado na importação em lote)
+     */
+    public void registrarProdutos(List<Produto> produtos) throws IOException {
+        ByteBuffer[] registros = new ByteBuffer[produtos.size()];
+        for (int i = 0; i < registros.length; i++) {
+            registros[i] = registroProduto(produtos.get(i));
+        }
+        gravar(registros);
+    }
+    
+    /**
+     * Grava a realização de uma venda (número, data e itens com preço)
+     */
+    public void registrarVenda(Venda venda) throws IOException {
+        gravar(registroVenda(venda));
+    }
+    
+    /**
+     * Grava a realização de várias vendas de uma vez, com um único fsync
+     * (usado no envio em lote dos terminais que ficaram sem conexão)
+     */
+    public void registrarVendas(List<Venda> vendas) throws IOException {
+        ByteBuffer[] registros = new ByteBuffer[vendas.size()];
+        for (int i = 0; i < registros.length; i++) {
+            registros[i] = registroVenda(vendas.get(i));
+        }
+        gravar(registros);
+    }
+    
+    /**
+     * Grava o cancelamento de uma venda
+     */
+    public void registrarCancelamento(String numeroVenda) throws IOException {
+        byte[] numero = bytes(numeroVenda);
+        ByteBuffer buf = novoRegistro(1 + 2 + numero.length);
+        buf.put(CANCELAMENTO);
+        putTexto(buf, numero);
+        gravar(buf);
+    }
+    
+    /**
+     * Retorna o número do segmento aberto para escrita
+     */
+    public synchronized long getSegmentoAtual() {
+        return segmentoAtual;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (travaSync) {
+            if (canal.isOpen()) {
+                canal.force(false);
+                canal.close();
+            }
+        }
+    }
+    
+    /**
+     * Aplica um registro lido do arquivo no caixa
+     */
+    private void aplicar(ByteBuffer dados, Caixa caixa) throws IOException {
+        byte tipo = dados.get();
+        switch (tipo) {
+            case PRODUTO: {
+                String codigo = getTexto(dados);
+                String nome = getTexto(dados);
+                long precoCentavos = dados.getLong();
+                int estoque = dados.getInt();
+                caixa.cadastrarProduto(Produto.emCentavos(codigo, nome, precoCentavos, estoque));
+                break;
+            }
+            case VENDA:
+            case VENDA_COM_PRECO: {
+                String numero = getTexto(dados);
+                if (caixa.buscarVenda(numero) != null) {
+                    // Venda já aplicada (ex: registro repetido): aplicar de novo tiraria o estoque duas vezes
+                    break;
+                }
+                long segundos = dados.getLong();
+                int nanos = dados.getInt();
+                Venda venda = new Venda(numero, LocalDateTime.ofEpochSecond(segundos, nanos, ZoneOffset.UTC));
+                int quantidadeItens = dados.getInt();
+                for (int i = 0; i < quantidadeItens; i++) {
+                    String codigo = getTexto(dados);
+                    int quantidade = dados.getInt();
+                    Produto p = caixa.buscarProduto(codigo);
+                    if (p == null) {
+                        throw new IOException("Diário inconsistente: produto " + codigo + " não cadastrado");
+                    }
+                    if (tipo == VENDA_COM_PRECO) {
+                        venda.adicionarItem(p, quantidade, dados.getLong());
+                    } else {
+                        // Registro antigo: o preço não foi gravado, vale o atual do produto
+                        venda.adicionarItem(p, quantidade);
+                    }
+                }
+                if (!caixa.realizarVenda(venda)) {
+                    throw new IOException("Diário inconsistente: estoque insuficiente na venda " + numero);
+                }
+                break;
+            }
+            case CANCELAMENTO:
+                caixa.cancelarVenda(getTexto(dados));
+                break;
+            default:
+                throw new IOException("Tipo de registro desconhecido: " + tipo);
+        }
+    }
+    
+    /**
+     * Monta o registro de cadastro de um produto
+     */
+    private static ByteBuffer registroProduto(Produto p) {
+        byte[] codigo = bytes(p.getCodigo());
+        byte[] nome = bytes(p.getNome());
+        ByteBuffer buf = novoRegistro(1 + 2 + codigo.length + 2 + nome.length + 8 + 4);
+        buf.put(PRODUTO);
+        putTexto(buf, codigo);
+        putTexto(buf, nome);
+        buf.putLong(p.getPrecoCentavos());
+        buf.putInt(p.getEstoque());
+        return buf;
+    }
+    
+    /**
+     * Monta o registro de uma venda, com o preço unitário de cada item, para
+     * a reprodução chegar ao mesmo total mesmo que o preço do produto mude depois
+     */
+    private static ByteBuffer registroVenda(Venda venda) {
+        byte[] numero = bytes(venda.getNumero());
+        List<ItemVenda> itens = venda.getItens();
+        byte[][] codigos = new byte[itens.size()][];
+        int tamanho = 1 + 2 + numero.length + 8 + 4 + 4;
+        for (int i = 0; i < itens.size(); i++) {
+            codigos[i] = bytes(itens.get(i).getProduto().getCodigo());
+            tamanho += 2 + codigos[i].length + 4 + 8;
+        }
+        ByteBuffer buf = novoRegistro(tamanho);
+        buf.put(VENDA_COM_PRECO);
+        putTexto(buf, numero);
+        buf.putLong(venda.getData().toEpochSecond(ZoneOffset.UTC));
+        buf.putInt(venda.getData().getNano());
+        buf.putInt(itens.size());
+        for (int i = 0; i < itens.size(); i++) {
+            putTexto(buf, codigos[i]);
+            buf.putInt(itens.get(i).getQuantidade());
+            buf.putLong(itens.get(i).getPrecoUnitarioCentavos());
+        }
+        return buf;
+    }
+    
+    /**
+     * Reserva espaço para o cabeçalho e os dados de um registro
+     */
+    private static ByteBuffer novoRegistro(int tamanhoDados) {
+        ByteBuffer buf = ByteBuffer.allocate(CABECALHO + tamanhoDados);
+        buf.position(CABECALHO);
+        return buf;
+    }
+    
+    /**
+     * Preenche o cabeçalho dos registros, escreve todos no fim do arquivo
+     * (em sequência) e aguarda até estarem em disco, conforme o modo
+     */
+    private void gravar(ByteBuffer... registros) throws IOException {
+        CRC32 crc = new CRC32();
+        for (ByteBuffer buf : registros) {
+            int tamanhoDados = buf.position() - CABECALHO;
+            crc.reset();
+            crc.update(buf.array(), CABECALHO, tamanhoDados);
+            buf.putInt(0, tamanhoDados);
+            buf.putInt(4, (int) crc.getValue());
+            buf.flip();
+        }
+        
+        long fim;
+        synchronized (this) {
+            verificarFalha();
+            long posicao = posicaoArquivo;
+            long escrita = posicaoEscrita;
+            try {
+                for (ByteBuffer buf : registros) {
+                    while (buf.hasRemaining()) {
+                        posicao += canal.write(buf, posicao);
+                    }
+                }
+            } catch (IOException e) {
+                desativar(e);
+                throw e;
+            }
+            posicaoEscrita = escrita + (posicao - posicaoArquivo);
+            posicaoArquivo = posicao;
+            fim = posicaoEscrita;
+        }
+        sincronizar(fim);
+    }
+    
+    /**
+     * Garante que o arquivo está em disco até a posição informada.
+     * No modo GRUPO, quem pega a trava faz um único fsync que cobre todos os
+     * registros escritos até então; quem chega depois e já foi coberto não
+     * precisa de outro fsync. Se o fsync falhar, o diário é desativado e quem
+     * ainda não estava coberto recebe o erro.
+     */
+    private void sincronizar(long fim) throws IOException {
+        synchronized (travaSync) {
+            if (modo == Modo.GRUPO && posicaoDuravel >= fim) {
+                return;
+            }
+            verificarFalha();
+            long alvo;
+            long alvoArquivo;
+            synchronized (this) {
+                alvo = posicaoEscrita;
+                alvoArquivo = posicaoArquivo;
+            }
+            try {
+                canal.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    desativar(e);
+                }
+                throw e;
+            }
+            synchronized (this) {
+                if (alvo > posicaoDuravel) {
+                    posicaoDuravel = alvo;
+                    posicaoArquivoDuravel = alvoArquivo;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Recusa a gravação se o diário já foi desativado por uma falha
+     */
+    private void verificarFalha() throws IOException {
+        IOException f = falha;
+        if (f != null) {
+            throw new IOException("Diário desativado depois de uma falha de gravação", f);
+        }
+    }
+    
+    /**
+     * Desativa o diário depois de uma falha de escrita ou de fsync (chamado
+     * com a trava "this"). Os registros ainda não confirmados em disco são
+     * cortados do segmento: todos os que os gravaram recebem o erro, e o
+     * caixa desfaz essas operações, então a próxima inicialização não pode
+     * reproduzi-las.
+     */
+    private void desativar(IOException causa) {
+        if (falha == null) {
+            falha = causa;
+        }
+        try {
+            canal.truncate(posicaoArquivoDuravel);
+            canal.force(false);
+        } catch (IOException e) {
+            causa.addSuppressed(e);
+        }
+        posicaoArquivo = posicaoArquivoDuravel;
+        posicaoEscrita = posicaoDuravel;
+    }
+    
+    /**
+     * Reproduz os registros válidos de um segmento
+     * 
+     * @return {posição do fim do último registro válido, quantidade de registros}
+     */
+    private long[] reproduzirCanal(FileChannel leitura, Caixa caixa) throws IOException {
+        long posicao = 0;
+        long tamanhoArquivo = leitura.size();
+        ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO);
+        CRC32 crc = new CRC32();
+        long registros = 0;
+        
+        while (posicao + CABECALHO <= tamanhoArquivo) {
+            cabecalho.clear();
+            lerCompleto(leitura, cabecalho, posicao);
+            cabecalho.flip();
+            int tamanho = cabecalho.getInt();
+            int crcEsperado = cabecalho.getInt();
+            if (tamanho <= 0 || tamanho > TAMANHO_MAXIMO
+                    || posicao + CABECALHO + tamanho > tamanhoArquivo) {
+                break;
+            }
+            ByteBuffer dados = ByteBuffer.allocate(tamanho);
+            lerCompleto(leitura, dados, posicao + CABECALHO);
+            crc.reset();
+            crc.update(dados.array(), 0, tamanho);
+            if ((int) crc.getValue() != crcEsperado) {
+                break;
+            }
+            dados.flip();
+            aplicar(dados, caixa);
+            posicao += CABECALHO + tamanho;
+            registros++;
+        }
+        return new long[] {posicao, registros};
+    }
+    
+    /**
+     * Lê até preencher o buffer a partir da posição informada
+     */
+    private static void lerCompleto(FileChannel leitura, ByteBuffer buf, long posicao) throws IOException {
+        while (buf.hasRemaining()) {
+            int lidos = leitura.read(buf, posicao);
+            if (lidos < 0) {
+                throw new IOException("Fim inesperado do diário");
+            }
+            posicao += lidos;
+        }
+    }
+    
+    /**
+     * Retorna o número do primeiro segmento existente na pasta, ou 1 se não
+     * houver nenhum (um diário novo começa no segmento 1)
+     */
+    public static long primeiroSegmento(Path pasta) throws IOException {
+        List<Long> segmentos = listarSegmentos(pasta);
+        return segmentos.isEmpty() ? 1 : segmentos.get(0);
+    }
+    
+    private List<Long> listarSegmentos() throws IOException {
+        return listarSegmentos(pasta);
+    }
+    
+    /**
+     * Lista os números dos segmentos existentes na pasta, em ordem
+     */
+    private static List<Long> listarSegmentos(Path pasta) throws IOException {
+        List<Long> segmentos = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta, PREFIXO + "*" + EXTENSAO)) {
+            for (Path arquivo : arquivos) {
+                String nome = arquivo.getFileName().toString();
+                try {
+                    segmentos.add(Long.parseLong(nome.substring(PREFIXO.length(), nome.length() - EXTENSAO.length())));
+                } catch (NumberFormatException e) {
+                    // Arquivo com nome parecido que não é um segmento: ignora
+                }
+            }
+        }
+        Collections.sort(segmentos);
+        return segmentos;
+    }
+    
+    private Path arquivoSegmento(long segmento) {
+        return pasta.resolve(String.format("%s%08d%s", PREFIXO, segmento, EXTENSAO));
+    }
+    
+    private FileChannel abrirSegmento(long segmento) throws IOException {
+        return FileChannel.open(arquivoSegmento(segmento), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+    
+    private static byte[] bytes(String texto) {
+        byte[] b = texto.getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xFFFF) {
+            throw new IllegalArgumentException("Texto muito longo para o diário");
+        }
+        return b;
+    }
+    
+    private static void putTexto(ByteBuffer buf, byte[] texto) {
+        buf.putShort((short) texto.length);
+        buf.put(texto);
+    }
+    
+    private static String getTexto(ByteBuffer buf) {
+        int tamanho = buf.getShort() & 0xFFFF;
+        String texto = new String(buf.array(), buf.arrayOffset() + buf.position(), tamanho, StandardCharsets.UTF_8);
+        buf.position(buf.position() + tamanho);
+        return texto;
+    }
+}
@@ -0,0 +1,218 @@
+package persistencia;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import controller.Caixa;
+import model.ItemVenda;
+import model.Venda;
+
+/**
+ * Exportação das vendas para CSV (contabilidade), uma linha por item vendido:
+ * numero,data,status,codigo,produto,quantidade,preco_unitario,subtotal
+ *
+ * As vendas são lidas do Caixa uma a uma, sem copiar a lista, e cada linha é
+ * montada direto em bytes num buffer que é descarregado no arquivo quando
+ * enche. Assim a memória usada não depende do tamanho do histórico.
+ */
+public class ExportadorVendas {
+    /**
+     * Quais vendas entram na exportação
+     */
+    public enum FiltroStatus {
+        TODAS,
+        CONCLUIDAS,
+        CANCELADAS
+    }
+    
+    private static final byte[] CABECALHO =
+            "numero,data,status,codigo,produto,quantidade,preco_unitario,subtotal\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONCLUIDA = "Concluída".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CANCELADA = "Cancelada".getBytes(StandardCharsets.UTF_8);
+    
+    // Tamanho do buffer de escrita
+    private static final int TAMANHO_BUFFER = 256 * 1024;
+    
+    // Maior linha possível sem contar os textos (números, datas e separadores)
+    private static final int FOLGA_LINHA = 128;
+    
+    private final Caixa caixa;
+    
+    public ExportadorVendas(Caixa caixa) {
+        this.caixa = caixa;
+    }
+    
+    /**
+     * Exporta as vendas para um arquivo CSV em UTF-8
+     * 
+     * @param destino Arquivo de destino (substituído se existir)
+     * @param de Data inicial (inclusive), ou null para não limitar
+     * @param ate Data final (exclusive), ou null para não limitar
+     * @param filtro Quais vendas exportar pelo status
+     * @return Quantidade de linhas de itens exportadas
+     */
+    public long exportarCsv(Path destino, LocalDateTime de, LocalDateTime ate, FiltroStatus filtro) throws IOException {
+        long linhas = 0;
+        // Vendas realizadas durante a exportação ficam para a próxima
+        int quantidade = caixa.getQuantidadeVendas();
+        
+        try (FileChannel canal = FileChannel.open(destino, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+            buf.put(CABECALHO);
+            
+            for (int i = 0; i < quantidade; i++) {
+                Venda venda = caixa.getVenda(i);
+                boolean cancelada = venda.isCancelada();
+                if ((filtro == FiltroStatus.CONCLUIDAS && cancelada)
+                        || (filtro == FiltroStatus.CANCELADAS && !cancelada)) {
+                    continue;
+                }
+                LocalDateTime data = venda.getData();
+                if ((de != null && data.isBefore(de)) || (ate != null && !data.isBefore(ate))) {
+                    continue;
+                }
+                
+                byte[] numero = venda.getNumero().getBytes(StandardCharsets.UTF_8);
+                List<ItemVenda> itens = venda.getItens();
+                for (int j = 0; j < itens.size(); j++) {
+                    ItemVenda item = itens.get(j);
+                    byte[] codigo = item.getProduto().getCodigo().getBytes(StandardCharsets.UTF_8);
+                    byte[] nome = item.getProduto().getNome().getBytes(StandardCharsets.UTF_8);
+                    
+                    // Garante espaço para a linha inteira (nome pode dobrar com aspas escapadas)
+                    int tamanhoLinha = FOLGA_LINHA + numero.length + codigo.length * 2 + nome.length * 2;
+                    if (buf.remaining() < tamanhoLinha) {
+                        descarregar(canal, buf);
+                        if (buf.remaining() < tamanhoLinha) {
+                            throw new IOException("Linha muito longa na venda " + venda.getNumero());
+                        }
+                    }
+                    
+                    buf.put(numero).put((byte) ',');
+                    putData(buf, data);
+                    buf.put((byte) ',');
+                    buf.put(cancelada ? CANCELADA : CONCLUIDA).put((byte) ',');
+                    putCampo(buf, codigo);
+                    buf.put((byte) ',');
+                    putCampo(buf, nome);
+                    buf.put((byte) ',');
+                    putInteiro(buf, item.getQuantidade());
+                    buf.put((byte) ',');
+                    putCentavos(buf, item.getPrecoUnitarioCentavos());
+                    buf.put((byte) ',');
+                    putCentavos(buf, item.getValorTotalCentavos());
+                    buf.put((byte) '\n');
+                    linhas++;
+                }
+            }
+            descarregar(canal, buf);
+            canal.force(false);
+        }
+        return linhas;
+    }
+    
+    /**
+     * Escreve o conteúdo do buffer no arquivo e o deixa vazio
+     */
+    private static void descarregar(FileChannel canal, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            canal.write(buf);
+        }
+        buf.clear();
+    }
+    
+    /**
+     * Escreve um texto como campo CSV, entre aspas se tiver vírgula, aspas ou quebra de linha
+     */
+    private static void putCampo(ByteBuffer buf, byte[] texto) {
+        boolean precisaAspas = false;
+        for (byte b : texto) {
+            if (b == ',' || b == '"' || b == '\n' || b == '\r') {
+                precisaAspas = true;
+                break;
+            }
+        }
+        if (!precisaAspas) {
+            buf.put(texto);
+            return;
+        }
+        buf.put((byte) '"');
+        for (byte b : texto) {
+            if (b == '"') {
+                buf.put((byte) '"');
+            }
+            buf.put(b);
+        }
+        buf.put((byte) '"');
+    }
+    
+    /**
+     * Escreve a data no formato yyyy-MM-dd HH:mm:ss
+     */
+    private static void putData(ByteBuffer buf, LocalDateTime data) {
+        putDigitos(buf, data.getYear(), 4);
+        buf.put((byte) '-');
+        putDigitos(buf, data.getMonthValue(), 2);
+        buf.put((byte) '-');
+        putDigitos(buf, data.getDayOfMonth(), 2);
+        buf.put((byte) ' ');
+        putDigitos(buf, data.getHour(), 2);
+        buf.put((byte) ':');
+        putDigitos(buf, data.getMinute(), 2);
+        buf.put((byte) ':');
+        putDigitos(buf, data.getSecond(), 2);
+    }
+    
+    /**
+     * Escreve um valor em centavos como reais com ponto decimal (ex: 1234.56)
+     */
+    private static void putCentavos(ByteBuffer buf, long centavos) {
+        if (centavos < 0) {
+            buf.put((byte) '-');
+            centavos = -centavos;
+        }
+        putInteiro(buf, centavos / 100);
+        buf.put((byte) '.');
+        putDigitos(buf, (int) (centavos % 100), 2);
+    }
+    
+    /**
+     * Escreve um número inteiro não negativo em decimal
+     */
+    private static void putInteiro(ByteBuffer buf, long valor) {
+        if (valor < 0) {
+            buf.put((byte) '-');
+            valor = -valor;
+        }
+        int digitos = 1;
+        for (long v = valor / 10; v > 0; v /= 10) {
+            digitos++;
+        }
+        int fim = buf.position() + digitos;
+        for (int p = fim - 1; p >= buf.position(); p--) {
+            buf.put(p, (byte) ('0' + valor % 10));
+            valor /= 10;
+        }
+        buf.position(fim);
+    }
+    
+    /**
+     * Escreve um número com a quantidade fixa de dígitos (zeros à esquerda)
+     */
+    private static void putDigitos(ByteBuffer buf, int valor, int digitos) {
+        int fim = buf.position() + digitos;
+        for (int p = fim - 1; p >= buf.position(); p--) {
+            buf.put(p, (byte) ('0' + valor % 10));
+            valor /= 10;
+        }
+        buf.position(fim);
+    }
+}
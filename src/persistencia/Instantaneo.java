@@ -0,0 +1,420 @@
+package persistencia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import controller.Caixa;
+import controller.HistoricoColunar;
+import model.ItemVenda;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Instantâneo (snapshot) binário do caixa: produtos, vendas e saldo num
+ * mesmo ponto do diário.
+ *
+ * O arquivo caixa-N.instantaneo contém tudo o que foi gravado nos segmentos
+ * do diário anteriores a N. Na inicialização basta carregar o instantâneo
+ * mais recente e reproduzir os segmentos a partir de N, em vez do histórico
+ * inteiro. Depois de gravado, os segmentos e instantâneos antigos são apagados
+ * (compactação), menos o instantâneo anterior e os segmentos desde ele: se o
+ * mais recente estiver corrompido, a carga volta para o anterior (ou para o
+ * diário inteiro, enquanto só houver um instantâneo).
+ */
+public final class Instantaneo {
+    private static final String PREFIXO = "caixa-";
+    private static final String EXTENSAO = ".instantaneo";
+    
+    // Identificação do formato no início do arquivo
+    private static final int ASSINATURA = 0x43584931;
+    private static final int VERSAO = 1;
+    
+    // Maior capacidade reservada antes da leitura (uma quantidade corrompida não aloca memória demais)
+    private static final int CAPACIDADE_INICIAL_MAXIMA = 1 << 16;
+    
+    private Instantaneo() {
+    }
+    
+    /**
+     * Grava um instantâneo do caixa e compacta o diário.
+     * O caixa fica parado só para trocar o segmento do diário e anotar o
+     * saldo, o estoque dos produtos e quantas vendas e cancelamentos havia.
+     * As vendas são lidas e escritas depois, com os terminais vendendo
+     * normalmente: o histórico e os cancelamentos só crescem, então os
+     * primeiros n continuam sendo os do momento da captura.
+     * 
+     * @param caixa Caixa com o diário ligado
+     * @param diario Diário do caixa
+     * @param pasta Pasta dos arquivos de persistência
+     * @return Número do primeiro segmento não coberto pelo instantâneo
+     */
+    public static long gravar(Caixa caixa, Diario diario, Path pasta) throws IOException {
+        return gravar(caixa, diario, pasta, null);
+    }
+    
+    /**
+     * Grava um instantâneo do caixa, compacta o diário e, se pedido, grava
+     * também o catálogo mapeado com os produtos e o estoque do instantâneo
+     * (os do catálogo atual que nunca foram buscados entram como estão).
+     * O catálogo que existia fica como anterior, para o caso de a próxima
+     * carga ter que voltar a um instantâneo mais antigo que o novo catálogo.
+     * Uma gravação espera a outra (ex: a agendada e a do encerramento).
+     * 
+     * @param caixa Caixa com o diário ligado
+     * @param diario Diário do caixa
+     * @param pasta Pasta dos arquivos de persistência
+     * @param arquivoCatalogo Catálogo a gravar, ou null para gravar só o instantâneo
+     * @return Número do primeiro segmento não coberto pelo instantâneo
+     */
+    public static synchronized long gravar(Caixa caixa, Diario diario, Path pasta, Path arquivoCatalogo)
+            throws IOException {
+        Captura captura = new Captura();
+        IOException[] erro = new IOException[1];
+        caixa.executarComEstadoConsistente(() -> {
+            try {
+                captura.segmento = diario.rotacionar();
+            } catch (IOException e) {
+                erro[0] = e;
+                return;
+            }
+            captura.produtos = caixa.getProdutos();
+            captura.estoques = new int[captura.produtos.size()];
+            // Reservas de cestas abertas não sobrevivem ao reinício: grava o estoque físico
+            for (int i = 0; i < captura.estoques.length; i++) {
+                captura.estoques[i] = captura.produtos.get(i).getEstoqueTotal();
+            }
+            captura.quantidadeVendas = caixa.getQuantidadeVendas();
+            captura.quantidadeCancelamentos = caixa.getQuantidadeCancelamentos();
+            captura.saldoCentavos = caixa.getSaldoCaixaCentavos();
+        });
+        if (erro[0] != null) {
+            throw erro[0];
+        }
+        
+        // Canceladas no momento da captura: as dos primeiros cancelamentos
+        // (um cancelamento posterior está no diário, a partir do novo segmento)
+        BitSet canceladas = new BitSet(captura.quantidadeVendas);
+        for (int i = 0; i < captura.quantidadeCancelamentos; i++) {
+            canceladas.set(caixa.getPosicaoCancelada(i));
+        }
+        
+        // Escreve num arquivo temporário e só então renomeia, para nunca
+        // existir um instantâneo pela metade com o nome definitivo
+        Path definitivo = arquivo(pasta, captura.segmento);
+        Path temporario = pasta.resolve(definitivo.getFileName() + ".tmp");
+        try (FileOutputStream arquivo = new FileOutputStream(temporario.toFile())) {
+            CheckedOutputStream verificado = new CheckedOutputStream(
+                    new BufferedOutputStream(arquivo, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(verificado);
+            escrever(out, captura, caixa, canceladas);
+            out.flush();
+            long crc = verificado.getChecksum().getValue();
+            out.writeLong(crc);
+            out.flush();
+            arquivo.getFD().sync();
+        }
+        Files.move(temporario, definitivo, StandardCopyOption.ATOMIC_MOVE);
+        // A troca de nome só é durável com a pasta sincronizada; antes disso,
+        // nada que o instantâneo anterior precisa pode ser apagado
+        sincronizarPasta(pasta);
+        
+        // O catálogo vem depois do instantâneo: se a gravação parar no meio,
+        // o catálogo anterior continua valendo para o instantâneo anterior
+        if (arquivoCatalogo != null) {
+            gravarCatalogo(arquivoCatalogo, captura, caixa.getCatalogo());
+            sincronizarPasta(arquivoCatalogo.toAbsolutePath().getParent());
+        }
+        
+        // Compactação: fica o instantâneo anterior, e os segmentos desde ele,
+        // para o caso de o novo não poder ser lido
+        long anterior = 0;
+        for (long n : listar(pasta)) {
+            if (n < captura.segmento) {
+                anterior = n;
+            }
+        }
+        for (long n : listar(pasta)) {
+            if (n < anterior) {
+                Files.deleteIfExists(arquivo(pasta, n));
+            }
+        }
+        if (anterior > 0) {
+            diario.apagarSegmentosAnteriores(anterior);
+        }
+        return captura.segmento;
+    }
+    
+    /**
+     * Carrega o instantâneo mais recente da pasta no caixa (vazio). O caixa só
+     * recebe o estado depois de o CRC do arquivo inteiro conferir; um
+     * instantâneo corrompido é ignorado e o anterior é tentado.
+     * 
+     * @param pasta Pasta dos arquivos de persistência
+     * @param caixa Caixa vazio, ainda sem diário ligado
+     * @return Primeiro segmento do diário a reproduzir, ou 0 se não houver instantâneo válido
+     */
+    public static long carregarMaisRecente(Path pasta, Caixa caixa) throws IOException {
+        if (!Files.isDirectory(pasta)) {
+            return 0;
+        }
+        List<Long> instantaneos = listar(pasta);
+        for (int i = instantaneos.size() - 1; i >= 0; i--) {
+            long segmento = instantaneos.get(i);
+            Leitura leitura;
+            List<Venda> vendas = new ArrayList<>();
+            try {
+                leitura = ler(arquivo(pasta, segmento), vendas::add);
+            } catch (IOException e) {
+                System.err.println("Instantâneo " + segmento + " ignorado: " + e.getMessage());
+                continue;
+            }
+            if (Diario.primeiroSegmento(pasta) > segmento) {
+                throw new IOException("Instantâneo " + segmento + " não tem mais os segmentos do diário seguintes a ele");
+            }
+            caixa.restaurarEstado(leitura.produtos, vendas, leitura.saldoCentavos);
+            return segmento;
+        }
+        // Nenhum instantâneo válido: só dá para reconstruir se o diário estiver inteiro
+        if (Diario.primeiroSegmento(pasta) > 1) {
+            throw new IOException("Nenhum instantâneo válido e o diário não está completo");
+        }
+        return 0;
+    }
+    
+    /**
+     * Lê as vendas de um instantâneo guardado (ex: cópia de segurança de um
+     * período anterior) para um histórico colunar, venda a venda, sem montar
+     * a lista inteira de vendas na memória. Nenhum caixa é alterado.
+     * 
+     * @param arquivo Arquivo do instantâneo
+     * @return Histórico com as vendas do instantâneo
+     */
+    public static HistoricoColunar lerHistorico(Path arquivo) throws IOException {
+        HistoricoColunar historico = new HistoricoColunar();
+        ler(arquivo, historico::adicionar);
+        return historico;
+    }
+    
+    /**
+     * Lê um instantâneo e confere o CRC, sem alterar nenhum caixa. Cada venda
+     * lida é entregue ao destino; o restante volta na Leitura.
+     */
+    private static Leitura ler(Path caminho, Consumer<Venda> destinoVendas) throws IOException {
+        try (InputStream arquivo = Files.newInputStream(caminho)) {
+            CheckedInputStream verificado = new CheckedInputStream(
+                    new BufferedInputStream(arquivo, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(verificado);
+            Leitura leitura = ler(in, destinoVendas);
+            long crcCalculado = verificado.getChecksum().getValue();
+            if (in.readLong() != crcCalculado) {
+                throw new IOException("CRC não confere (arquivo corrompido)");
+            }
+            return leitura;
+        }
+    }
+    
+    /**
+     * Grava o catálogo com os produtos capturados (estoque do instantâneo)
+     * mais os do catálogo atual que ainda não foram carregados no caixa
+     */
+    private static void gravarCatalogo(Path arquivo, Captura captura, CatalogoMapeado atual) throws IOException {
+        List<Produto> produtos = new ArrayList<>(captura.produtos.size()
+                + (atual == null ? 0 : atual.getQuantidade()));
+        HashSet<String> capturados = new HashSet<>(captura.produtos.size() * 2);
+        for (int i = 0; i < captura.produtos.size(); i++) {
+            Produto p = captura.produtos.get(i);
+            produtos.add(Produto.emCentavos(p.getCodigo(), p.getNome(), p.getPrecoCentavos(), captura.estoques[i]));
+            capturados.add(p.getCodigo());
+        }
+        if (atual != null) {
+            for (int i = 0; i < atual.getQuantidade(); i++) {
+                if (!capturados.contains(atual.codigoNaPosicao(i))) {
+                    produtos.add(atual.produtoNaPosicao(i));
+                }
+            }
+        }
+        if (Files.exists(arquivo)) {
+            Files.move(arquivo, CatalogoMapeado.anterior(arquivo), StandardCopyOption.REPLACE_EXISTING);
+        }
+        CatalogoMapeado.gravar(arquivo, produtos, captura.segmento);
+    }
+    
+    /**
+     * Sincroniza a pasta com o disco, para as trocas de nome feitas nela
+     * sobreviverem a uma queda de energia. Onde não dá para abrir uma pasta
+     * (ex: Windows), a troca de nome já é gravada pelo próprio sistema.
+     */
+    private static void sincronizarPasta(Path pasta) throws IOException {
+        FileChannel canal;
+        try {
+            canal = FileChannel.open(pasta, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (canal) {
+            canal.force(true);
+        }
+    }
+    
+    private static void escrever(DataOutputStream out, Captura captura, Caixa caixa, BitSet canceladas)
+            throws IOException {
+        out.writeInt(ASSINATURA);
+        out.writeInt(VERSAO);
+        out.writeLong(captura.segmento);
+        out.writeLong(captura.saldoCentavos);
+        
+        out.writeInt(captura.produtos.size());
+        for (int i = 0; i < captura.produtos.size(); i++) {
+            Produto p = captura.produtos.get(i);
+            out.writeUTF(p.getCodigo());
+            out.writeUTF(p.getNome());
+            out.writeLong(p.getPrecoCentavos());
+            out.writeInt(captura.estoques[i]);
+        }
+        
+        out.writeInt(captura.quantidadeVendas);
+        for (int i = 0; i < captura.quantidadeVendas; i++) {
+            Venda v = caixa.getVenda(i);
+            out.writeUTF(v.getNumero());
+            out.writeLong(v.getData().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(v.getData().getNano());
+            out.writeBoolean(canceladas.get(i));
+            List<ItemVenda> itens = v.getItens();
+            out.writeInt(itens.size());
+            for (int j = 0; j < itens.size(); j++) {
+                ItemVenda item = itens.get(j);
+                out.writeUTF(item.getProduto().getCodigo());
+                out.writeInt(item.getQuantidade());
+                out.writeLong(item.getPrecoUnitarioCentavos());
+            }
+        }
+    }
+    
+    private static Leitura ler(DataInputStream in, Consumer<Venda> destinoVendas) throws IOException {
+        if (in.readInt() != ASSINATURA || in.readInt() != VERSAO) {
+            throw new IOException("Arquivo de instantâneo inválido");
+        }
+        in.readLong(); // segmento (já está no nome do arquivo)
+        long saldoCentavos = in.readLong();
+        
+        int quantidadeProdutos = lerQuantidade(in);
+        List<Produto> produtos = new ArrayList<>(Math.min(quantidadeProdutos, CAPACIDADE_INICIAL_MAXIMA));
+        HashMap<String, Produto> porCodigo = new HashMap<>(Math.min(quantidadeProdutos, CAPACIDADE_INICIAL_MAXIMA) * 2);
+        for (int i = 0; i < quantidadeProdutos; i++) {
+            String codigo = in.readUTF();
+            String nome = in.readUTF();
+            long precoCentavos = in.readLong();
+            int estoque = in.readInt();
+            Produto p = Produto.emCentavos(codigo, nome, precoCentavos, estoque);
+            produtos.add(p);
+            porCodigo.put(codigo, p);
+        }
+        
+        int quantidadeVendas = lerQuantidade(in);
+        for (int i = 0; i < quantidadeVendas; i++) {
+            String numero = in.readUTF();
+            long segundos = in.readLong();
+            int nanos = in.readInt();
+            boolean cancelada = in.readBoolean();
+            Venda v = new Venda(numero, LocalDateTime.ofEpochSecond(segundos, nanos, ZoneOffset.UTC));
+            int quantidadeItens = lerQuantidade(in);
+            for (int j = 0; j < quantidadeItens; j++) {
+                String codigo = in.readUTF();
+                int quantidade = in.readInt();
+                long precoUnitarioCentavos = in.readLong();
+                Produto p = porCodigo.get(codigo);
+                if (p == null) {
+                    throw new IOException("Instantâneo inconsistente: produto " + codigo + " não cadastrado");
+                }
+                v.adicionarItem(p, quantidade, precoUnitarioCentavos);
+            }
+            if (cancelada) {
+                v.cancelar();
+            }
+            destinoVendas.accept(v);
+        }
+        
+        Leitura leitura = new Leitura();
+        leitura.produtos = produtos;
+        leitura.saldoCentavos = saldoCentavos;
+        return leitura;
+    }
+    
+    /**
+     * Lê uma quantidade de elementos, recusando valores negativos (arquivo corrompido)
+     */
+    private static int lerQuantidade(DataInputStream in) throws IOException {
+        int quantidade = in.readInt();
+        if (quantidade < 0) {
+            throw new IOException("Quantidade inválida: " + quantidade);
+        }
+        return quantidade;
+    }
+    
+    /**
+     * Lista os números dos instantâneos existentes na pasta, em ordem
+     */
+    private static List<Long> listar(Path pasta) throws IOException {
+        List<Long> numeros = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta, PREFIXO + "*" + EXTENSAO)) {
+            for (Path arquivo : arquivos) {
+                String nome = arquivo.getFileName().toString();
+                try {
+                    numeros.add(Long.parseLong(nome.substring(PREFIXO.length(), nome.length() - EXTENSAO.length())));
+                } catch (NumberFormatException e) {
+                    // Arquivo com nome parecido que não é um instantâneo: ignora
+                }
+            }
+        }
+        Collections.sort(numeros);
+        return numeros;
+    }
+    
+    private static Path arquivo(Path pasta, long segmento) {
+        return pasta.resolve(String.format("%s%08d%s", PREFIXO, segmento, EXTENSAO));
+    }
+    
+    /**
+     * Estado lido de um instantâneo, ainda não entregue ao caixa (as vendas vão para o destino da leitura)
+     */
+    private static class Leitura {
+        List<Produto> produtos;
+        long saldoCentavos;
+    }
+    
+    /**
+     * Estado anotado com o caixa parado, no momento do instantâneo (das
+     * vendas e cancelamentos, só quantos havia)
+     */
+    private static class Captura {
+        long segmento;
+        List<Produto> produtos;
+        int[] estoques;
+        int quantidadeVendas;
+        int quantidadeCancelamentos;
+        long saldoCentavos;
+    }
+}
@@ -0,0 +1,137 @@
+package view;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+import controller.HistoricoColunar;
+import model.Moeda;
+
+/**
+ * Consulta somente leitura das vendas de um instantâneo guardado, mantidas
+ * num histórico colunar. A tabela lê número, data, total e status direto das
+ * colunas; só o botão de detalhes monta a Venda (com os itens) da linha.
+ */
+public class ArquivoVendasView extends JFrame {
+    private HistoricoColunar historico;
+    private JTable tblVendas;
+    
+    /**
+     * Construtor que inicializa a interface
+     * 
+     * @param historico Vendas do arquivo
+     * @param nome Nome do arquivo, mostrado no título
+     */
+    public ArquivoVendasView(HistoricoColunar historico, String nome) {
+        this.historico = historico;
+        
+        // Configurações da janela
+        setTitle("Arquivo de Vendas - " + nome);
+        setSize(800, 500);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLocationRelativeTo(null);
+        
+        // Inicializar componentes
+        inicializarComponentes();
+        
+        // Mostrar janela
+        setVisible(true);
+    }
+    
+    /**
+     * Inicializa todos os componentes da interface
+     */
+    private void inicializarComponentes() {
+        JPanel painelInfo = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        painelInfo.add(new JLabel("Vendas no arquivo: " + historico.getQuantidade()));
+        
+        tblVendas = new JTable(new HistoricoTableModel(historico));
+        
+        // Vendas canceladas em vermelho, como na gestão de vendas
+        tblVendas.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value,
+                    boolean isSelected, boolean hasFocus, int row, int column) {
+                Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                c.setForeground(historico.isCancelada(row) ? Color.RED : table.getForeground());
+                return c;
+            }
+        });
+        
+        JPanel painelBotoes = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JButton btnDetalhes = new JButton("Detalhes");
+        btnDetalhes.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int linha = tblVendas.getSelectedRow();
+                if (linha == -1) {
+                    JOptionPane.showMessageDialog(ArquivoVendasView.this, "Selecione uma venda para ver detalhes!",
+                            "Erro", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                GestaoVendasView.mostrarDetalhes(ArquivoVendasView.this, historico.getVenda(linha));
+            }
+        });
+        painelBotoes.add(btnDetalhes);
+        
+        setLayout(new BorderLayout(10, 10));
+        add(painelInfo, BorderLayout.NORTH);
+        add(new JScrollPane(tblVendas), BorderLayout.CENTER);
+        add(painelBotoes, BorderLayout.SOUTH);
+    }
+    
+    /**
+     * Modelo da tabela que lê as colunas do histórico, sem montar vendas
+     */
+    private static class HistoricoTableModel extends AbstractTableModel {
+        private static final String[] COLUNAS = {"Número", "Data", "Total", "Status"};
+        
+        private final HistoricoColunar historico;
+        
+        HistoricoTableModel(HistoricoColunar historico) {
+            this.historico = historico;
+        }
+        
+        @Override
+        public int getRowCount() {
+            return historico.getQuantidade();
+        }
+        
+        @Override
+        public int getColumnCount() {
+            return COLUNAS.length;
+        }
+        
+        @Override
+        public String getColumnName(int coluna) {
+            return COLUNAS[coluna];
+        }
+        
+        @Override
+        public Object getValueAt(int linha, int coluna) {
+            switch (coluna) {
+                case 0:
+                    return historico.getNumero(linha);
+                case 1:
+                    return historico.getData(linha).format(VendasTableModel.FORMATO_DATA);
+                case 2:
+                    return Moeda.formatar(historico.getTotalCentavos(linha));
+                default:
+                    return historico.isCancelada(linha) ? "Cancelada" : "Concluída";
+            }
+        }
+    }
+}
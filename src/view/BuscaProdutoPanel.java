@@ -0,0 +1,179 @@
+package view;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import controller.Caixa;
+import model.Moeda;
+import model.Produto;
+
+/**
+ * Campo de busca de produtos enquanto se digita: a cada tecla mostra os
+ * primeiros produtos com estoque cujo nome ou código começa com o texto
+ * (sem diferenciar acentos), usando o índice de busca do Caixa.
+ * Enter ou duplo clique confirma o produto selecionado.
+ */
+public class BuscaProdutoPanel extends JPanel {
+    // Quantidade de produtos mostrados por busca
+    private static final int LIMITE_RESULTADOS = 20;
+    
+    private final Caixa caixa;
+    private final JTextField txtBusca;
+    private final DefaultListModel<Produto> resultados;
+    private final JList<Produto> lstResultados;
+    private ActionListener acaoConfirmar;
+    
+    public BuscaProdutoPanel(Caixa caixa) {
+        super(new BorderLayout(5, 5));
+        this.caixa = caixa;
+        
+        txtBusca = new JTextField(20);
+        resultados = new DefaultListModel<>();
+        lstResultados = new JList<>(resultados);
+        lstResultados.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        lstResultados.setVisibleRowCount(6);
+        
+        // Mostra "código - nome (preço) - estoque" para cada produto, e quanto
+        // do estoque está reservado em cestas abertas, se houver
+        lstResultados.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (value instanceof Produto) {
+                    Produto produto = (Produto) value;
+                    int reservado = produto.getReservado();
+                    setText(produto.getCodigo() + " - " + produto.getNome() +
+                            " (" + Moeda.formatar(produto.getPrecoCentavos()) + ") - Estoque: " + produto.getEstoque() +
+                            (reservado > 0 ? " (reservado: " + reservado + ")" : ""));
+                }
+                return this;
+            }
+        });
+        
+        // Refaz a busca a cada alteração do texto
+        txtBusca.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                atualizar();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                atualizar();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                atualizar();
+            }
+        });
+        
+        // Setas movem a seleção da lista sem sair do campo; Enter confirma
+        txtBusca.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                int selecionado = lstResultados.getSelectedIndex();
+                if (e.getKeyCode() == KeyEvent.VK_DOWN && selecionado < resultados.size() - 1) {
+                    lstResultados.setSelectedIndex(selecionado + 1);
+                    lstResultados.ensureIndexIsVisible(selecionado + 1);
+                } else if (e.getKeyCode() == KeyEvent.VK_UP && selecionado > 0) {
+                    lstResultados.setSelectedIndex(selecionado - 1);
+                    lstResultados.ensureIndexIsVisible(selecionado - 1);
+                } else if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    confirmar();
+                }
+            }
+        });
+        lstResultados.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    confirmar();
+                }
+            }
+        });
+        
+        add(txtBusca, BorderLayout.NORTH);
+        add(new JScrollPane(lstResultados), BorderLayout.CENTER);
+    }
+    
+    /**
+     * Define a ação executada quando o usuário confirma um produto
+     */
+    public void setAcaoConfirmar(ActionListener acaoConfirmar) {
+        this.acaoConfirmar = acaoConfirmar;
+    }
+    
+    /**
+     * Retorna o produto do caixa selecionado na lista, ou null se não houver.
+     * Um produto do catálogo só é carregado no caixa aqui, ao entrar na venda
+     * (a lista mostra cópias lidas do catálogo).
+     */
+    public Produto getProdutoSelecionado() {
+        Produto selecionado = lstResultados.getSelectedValue();
+        return selecionado == null ? null : caixa.buscarProduto(selecionado.getCodigo());
+    }
+    
+    /**
+     * Refaz a busca com o texto atual (ex: depois que o estoque mudou),
+     * mantendo selecionado o mesmo produto se ele continuar na lista
+     */
+    public void atualizar() {
+        Produto selecionado = lstResultados.getSelectedValue();
+        List<Produto> encontrados = caixa.buscarProdutos(txtBusca.getText(), LIMITE_RESULTADOS);
+        
+        resultados.clear();
+        resultados.addAll(encontrados);
+        // Pelo código: um produto do catálogo vem como cópia nova a cada busca
+        int posicao = -1;
+        for (int i = 0; selecionado != null && i < encontrados.size(); i++) {
+            if (encontrados.get(i).getCodigo().equals(selecionado.getCodigo())) {
+                posicao = i;
+                break;
+            }
+        }
+        if (!encontrados.isEmpty()) {
+            lstResultados.setSelectedIndex(Math.max(posicao, 0));
+        }
+    }
+    
+    /**
+     * Redesenha a lista com o estoque atual dos produtos mostrados, sem
+     * refazer a busca (ex: depois de vendas em outros terminais)
+     */
+    public void estoqueAlterado() {
+        lstResultados.repaint();
+    }
+    
+    /**
+     * Limpa o texto e os resultados e volta o foco para o campo de busca
+     */
+    public void limpar() {
+        txtBusca.setText("");
+        txtBusca.requestFocusInWindow();
+    }
+    
+    private void confirmar() {
+        if (acaoConfirmar != null && lstResultados.getSelectedValue() != null) {
+            acaoConfirmar.actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, "confirmar"));
+        }
+    }
+}
@@ -4,8 +4,12 @@ import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
 
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -13,11 +17,13 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.BorderFactory; //basicamente um padding do css
 
 import controller.Caixa;
+import controller.ImportadorCsv;
+import controller.ValidacaoProduto;
 import model.Produto;
+import model.Venda;
 
 
 public class CadastroProdutoView extends JFrame {
@@ -28,7 +34,11 @@ public class CadastroProdutoView extends JFrame {
     private JTextField txtPreco;
     private JTextField txtEstoque;
     private JTable tblProdutos;
-    private DefaultTableModel modeloTabela;
+    private ProdutosTableModel modeloTabela;
+    private JButton btnSalvar;
+    
+    // Cadastros e vendas publicados pelo caixa (null se o caixa não publica eventos)
+    private MudancasCaixa mudancas;
     
     /**
      * Construtor que inicializa a interface
@@ -47,6 +57,17 @@ public class CadastroProdutoView extends JFrame {
         // Inicializar componentes
         inicializarComponentes();
         
+        // Interrompe o carregamento e os avisos do caixa quando a janela é fechada
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                modeloTabela.cancelarCarregamento();
+                if (mudancas != null) {
+                    mudancas.encerrar();
+                }
+            }
+        });
+        
         // Mostrar janela
         setVisible(true);
     }
@@ -77,8 +98,9 @@ public class CadastroProdutoView extends JFrame {
         painelFormulario.add(txtEstoque);
         
         // Botões
-        JButton btnSalvar = new JButton("Salvar");
+        btnSalvar = new JButton("Salvar");
         JButton btnLimpar = new JButton("Limpar");
+        JButton btnImportar = new JButton("Importar CSV");
         
         // Eventos dos botões
         btnSalvar.addActionListener(new ActionListener() {
@@ -95,17 +117,24 @@ public class CadastroProdutoView extends JFrame {
             }
         });
         
+        btnImportar.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                importarCsv(btnImportar);
+            }
+        });
+        
         JPanel painelBotoes = new JPanel();
         painelBotoes.add(btnSalvar);
         painelBotoes.add(btnLimpar);
+        painelBotoes.add(btnImportar);
         
         // Adiciona no painel
         painelFormulario.add(new JLabel(""));
         painelFormulario.add(painelBotoes);
         
-        // Tabela de produtos
-        String[] colunas = {"Código", "Nome", "Preço", "Estoque"};
-        modeloTabela = new DefaultTableModel(colunas, 0);
+        // Tabela de produtos - as células leem os produtos na hora (não editáveis)
+        modeloTabela = new ProdutosTableModel(caixa);
         tblProdutos = new JTable(modeloTabela);
         JScrollPane scrollPane = new JScrollPane(tblProdutos);
         
@@ -114,77 +143,104 @@ public class CadastroProdutoView extends JFrame {
         add(painelFormulario, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
         
+        // Produtos novos entram como linhas novas e vendas atualizam só o estoque
+        // dos produtos vendidos; assina antes de carregar para não perder nenhum
+        mudancas = MudancasCaixa.assinar(caixa, "tela-cadastro", new MudancasCaixa.Receptor() {
+            @Override
+            public void aplicar(List<Produto> cadastrados, List<Venda> realizadas, List<Venda> canceladas) {
+                modeloTabela.adicionar(cadastrados);
+                modeloTabela.estoqueAlterado(realizadas);
+                modeloTabela.estoqueAlterado(canceladas);
+            }
+        });
+        
         // Carregar produtos
-        atualizarTabela();
+        modeloTabela.carregar();
     }
     
     /**
      * Salva um novo produto
      */
     private void salvarProduto() {
-        double preco;
-        int estoque;
-
-        // Validações
-        if (txtCodigo.getText().trim().isEmpty() || 
-            txtNome.getText().trim().isEmpty() || 
-            txtPreco.getText().trim().isEmpty() || 
-            txtEstoque.getText().trim().isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Todos os campos são obrigatórios!",
-                    "Erro", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
+        // Validações (as mesmas regras da importação em lote)
+        Produto novoProduto;
         try {
-            preco = Double.parseDouble(txtPreco.getText().trim());
-            if (preco <= 0) {
-                JOptionPane.showMessageDialog(this, "O preço deve ser maior que zero!", 
-                        "Erro", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-        } catch (NumberFormatException e) {
-            JOptionPane.showMessageDialog(this, "Preço inválido!", 
+            novoProduto = ValidacaoProduto.criarProduto(
+                    txtCodigo.getText(),
+                    txtNome.getText(),
+                    txtPreco.getText(),
+                    txtEstoque.getText()
+            );
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), 
                     "Erro", JOptionPane.ERROR_MESSAGE);
             return;
         }
         
-        try {
-            estoque = Integer.parseInt(txtEstoque.getText().trim());
-            if (estoque < 0) {
-                JOptionPane.showMessageDialog(this, "O estoque não pode ser negativo!", 
-                        "Erro", JOptionPane.ERROR_MESSAGE);
-                return;
+        // Salvar no controller, fora da thread da interface (grava no diário)
+        new TarefaCaixa<Boolean>(this, "Erro ao cadastrar o produto", btnSalvar) {
+            @Override
+            protected Boolean executar() {
+                return caixa.cadastrarProduto(novoProduto);
             }
-        } catch (NumberFormatException e) {
-            JOptionPane.showMessageDialog(this, "Estoque inválido!", 
-                    "Erro", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
-        // Criar o produto
-        Produto novoProduto = new Produto(
-                txtCodigo.getText().trim(),
-                txtNome.getText().trim(),
-                preco,
-                estoque
-        );
-        
-        // Salvar no controller
-        boolean cadastrado = caixa.cadastrarProduto(novoProduto);
-        if (!cadastrado) {
-            JOptionPane.showMessageDialog(this, "Já existe um produto com esse código!", 
-                    "Erro", JOptionPane.ERROR_MESSAGE);
+            
+            @Override
+            protected void concluir(Boolean cadastrado) {
+                if (!cadastrado) {
+                    JOptionPane.showMessageDialog(CadastroProdutoView.this, "Já existe um produto com esse código!", 
+                            "Erro", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                
+                // Atualizar tabela
+                atualizarTabela();
+                
+                // Limpar campos
+                limparCampos();
+                
+                JOptionPane.showMessageDialog(CadastroProdutoView.this, "Produto cadastrado com sucesso!", 
+                        "Sucesso", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }.iniciar();
+    }
+    
+    /**
+     * Importa produtos de um arquivo CSV (codigo,nome,preco,estoque).
+     * A importação roda fora da thread da interface para não travar a janela.
+     */
+    private void importarCsv(JButton btnImportar) {
+        JFileChooser seletor = new JFileChooser();
+        if (seletor.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
             return;
         }
         
-        // Atualizar tabela
-        atualizarTabela();
-        
-        // Limpar campos
-        limparCampos();
-        
-        JOptionPane.showMessageDialog(this, "Produto cadastrado com sucesso!", 
-                "Sucesso", JOptionPane.INFORMATION_MESSAGE);
+        new TarefaCaixa<ImportadorCsv.Resultado>(this, "Erro ao importar o arquivo", btnImportar) {
+            @Override
+            protected ImportadorCsv.Resultado executar() throws Exception {
+                return new ImportadorCsv(caixa).importar(seletor.getSelectedFile().toPath());
+            }
+            
+            @Override
+            protected void concluir(ImportadorCsv.Resultado resultado) {
+                atualizarTabela();
+                
+                // Resumo com as primeiras linhas recusadas
+                StringBuilder mensagem = new StringBuilder();
+                mensagem.append("Linhas lidas: ").append(resultado.getLinhasLidas())
+                        .append("\nProdutos importados: ").append(resultado.getImportados())
+                        .append("\nLinhas com erro: ").append(resultado.getTotalErros());
+                int mostrar = Math.min(10, resultado.getErros().size());
+                for (int i = 0; i < mostrar; i++) {
+                    mensagem.append("\n").append(resultado.getErros().get(i));
+                }
+                if (resultado.getTotalErros() > mostrar) {
+                    mensagem.append("\n...");
+                }
+                JOptionPane.showMessageDialog(CadastroProdutoView.this, mensagem.toString(),
+                        "Importação concluída", resultado.getTotalErros() == 0
+                                ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+            }
+        }.iniciar();
     }
     
     /**
@@ -199,21 +255,12 @@ public class CadastroProdutoView extends JFrame {
     }
     
     /**
-     * Atualiza a tabela com os produtos cadastrados
+     * Atualiza a tabela depois de um cadastro. Com os avisos do caixa, as
+     * linhas novas já chegam sozinhas; sem eles, a tabela é lida de novo.
      */
     private void atualizarTabela() {
-        // Limpar tabela
-        modeloTabela.setRowCount(0);
-        
-        // Adicionar produtos
-        for (Produto p : caixa.getProdutos()) {
-            Object[] row = {
-                p.getCodigo(),
-                p.getNome(),
-                p.getPreco(),
-                p.getEstoque()
-            };
-            modeloTabela.addRow(row);
+        if (mudancas == null) {
+            modeloTabela.carregar();
         }
     }
 } 
\ No newline at end of file
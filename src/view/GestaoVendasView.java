@@ -4,35 +4,60 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.FlowLayout;
+import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 
 import controller.Caixa;
+import controller.HistoricoColunar;
 import model.ItemVenda;
+import model.Moeda;
+import model.Produto;
 import model.Venda;
+import persistencia.ExportadorVendas;
+import persistencia.Instantaneo;
 
 /**
  * Interface gráfica para gestão de vendas.
  * Esta classe permite visualizar, filtrar e cancelar vendas realizadas.
  */
 public class GestaoVendasView extends JFrame {
+    // Formato das datas do período de exportação (estrito: 31/02 é recusado)
+    private static final DateTimeFormatter FORMATO_DIA = DateTimeFormatter.ofPattern("dd/MM/uuuu")
+            .withResolverStyle(ResolverStyle.STRICT);
+    
     private Caixa caixa;
     
     private JCheckBox chkMostrarCanceladas;
     private JTable tblVendas;
-    private DefaultTableModel modeloTabela;
+    private VendasTableModel modeloTabela;
+    private JButton btnCancelar;
+    
+    // Vendas e cancelamentos publicados pelo caixa (null se o caixa não publica eventos)
+    private MudancasCaixa mudancas;
     
     /**
      * Construtor que inicializa a interface
@@ -49,6 +74,17 @@ public class GestaoVendasView extends JFrame {
         // Inicializar componentes
         inicializarComponentes();
         
+        // Interrompe o carregamento e os avisos do caixa quando a janela é fechada
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                modeloTabela.cancelarAtualizacao();
+                if (mudancas != null) {
+                    mudancas.encerrar();
+                }
+            }
+        });
+        
         // Mostrar janela
         setVisible(true);
     }
@@ -65,19 +101,13 @@ public class GestaoVendasView extends JFrame {
         chkMostrarCanceladas.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                atualizarTabela();
+                modeloTabela.setMostrarCanceladas(chkMostrarCanceladas.isSelected());
             }
         });
         painelFiltros.add(chkMostrarCanceladas);
         
-        // Tabela de vendas - Define colunas e torna células não editáveis
-        String[] colunas = {"Número", "Data", "Total", "Status"};
-        modeloTabela = new DefaultTableModel(colunas, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        // Tabela de vendas - lê as vendas do caixa sob demanda (células não editáveis)
+        modeloTabela = new VendasTableModel(caixa);
         tblVendas = new JTable(modeloTabela);
         
         // Configuração visual - Colorir vendas canceladas em vermelho
@@ -105,7 +135,7 @@ public class GestaoVendasView extends JFrame {
         JPanel painelBotoes = new JPanel(new FlowLayout(FlowLayout.CENTER));
         
         // Botão para cancelar vendas
-        JButton btnCancelar = new JButton("Cancelar Venda");
+        btnCancelar = new JButton("Cancelar Venda");
         btnCancelar.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -122,9 +152,29 @@ public class GestaoVendasView extends JFrame {
             }
         });
         
+        // Botão para exportar as vendas para a contabilidade
+        JButton btnExportar = new JButton("Exportar CSV");
+        btnExportar.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                exportarCsv(btnExportar);
+            }
+        });
+        
         // Adiciona botões ao painel
         painelBotoes.add(btnCancelar);
         painelBotoes.add(btnDetalhes);
+        painelBotoes.add(btnExportar);
+        
+        // Botão para consultar as vendas de um instantâneo guardado (ex: cópia de um período anterior)
+        JButton btnArquivo = new JButton("Abrir Arquivo");
+        btnArquivo.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                abrirArquivo(btnArquivo);
+            }
+        });
+        painelBotoes.add(btnArquivo);
         
         // Organiza os componentes na janela
         setLayout(new BorderLayout(10, 10));
@@ -132,38 +182,30 @@ public class GestaoVendasView extends JFrame {
         add(scrollPane, BorderLayout.CENTER);
         add(painelBotoes, BorderLayout.SOUTH);
         
+        // Vendas novas entram como linhas novas e cancelamentos mexem só na
+        // linha da venda; assina antes de carregar para não perder nenhuma
+        mudancas = MudancasCaixa.assinar(caixa, "tela-gestao-vendas", new MudancasCaixa.Receptor() {
+            @Override
+            public void aplicar(List<Produto> cadastrados, List<Venda> realizadas, List<Venda> canceladas) {
+                if (!realizadas.isEmpty()) {
+                    modeloTabela.lerNovas();
+                }
+                if (!canceladas.isEmpty()) {
+                    modeloTabela.vendasCanceladas(canceladas);
+                }
+            }
+        });
+        
         // Carrega vendas iniciais
         atualizarTabela();
     }
     
     /**
-     * Atualiza a tabela de vendas com base nos filtros
+     * Atualiza a tabela com as vendas novas e canceladas desde a última vez.
+     * A leitura do caixa roda em segundo plano e as linhas aparecem em lotes.
      */
     private void atualizarTabela() {
-        // Limpar tabela
-        modeloTabela.setRowCount(0);
-        
-        // Formatador para exibir a data
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-        
-        // Adicionar vendas que atendem ao filtro
-        for (Venda venda : caixa.getVendas()) {
-            // Filtrar vendas canceladas, se não estiver marcado
-            if (venda.isCancelada() && !chkMostrarCanceladas.isSelected()) {
-                continue;
-            }
-            
-            String status = venda.isCancelada() ? "Cancelada" : "Concluída";
-            
-            // Adiciona a venda como uma nova linha na tabela
-            Object[] row = {
-                venda.getNumero(),
-                venda.getData().format(formatter),
-                String.format("R$ %.2f", venda.calcularTotal()),
-                status
-            };
-            modeloTabela.addRow(row);
-        }
+        modeloTabela.atualizar();
     }
     
     /**
@@ -179,15 +221,15 @@ public class GestaoVendasView extends JFrame {
         }
         
         // Verifica se a venda já está cancelada
-        String status = (String) tblVendas.getValueAt(linhaSelecionada, 3);
-        if ("Cancelada".equals(status)) {
+        Venda venda = modeloTabela.getVenda(linhaSelecionada);
+        if (venda.isCancelada()) {
             JOptionPane.showMessageDialog(this, "Esta venda já está cancelada!", 
                     "Erro", JOptionPane.ERROR_MESSAGE);
             return;
         }
         
         // Obtém o número da venda selecionada
-        String numeroVenda = (String) tblVendas.getValueAt(linhaSelecionada, 0);
+        String numeroVenda = venda.getNumero();
         
         // Confirmação de cancelamento
         int confirmacao = JOptionPane.showConfirmDialog(this, 
@@ -195,11 +237,28 @@ public class GestaoVendasView extends JFrame {
                 "Confirmação", JOptionPane.YES_NO_OPTION);
         
         if (confirmacao == JOptionPane.YES_OPTION) {
-            // Executa o cancelamento
-            caixa.cancelarVenda(numeroVenda);
-            atualizarTabela();
-            JOptionPane.showMessageDialog(this, "Venda cancelada com sucesso!", 
-                    "Sucesso", JOptionPane.INFORMATION_MESSAGE);
+            // Executa o cancelamento fora da thread da interface (grava no diário)
+            new TarefaCaixa<Boolean>(this, "Erro ao cancelar a venda", btnCancelar) {
+                @Override
+                protected Boolean executar() {
+                    return caixa.cancelarVenda(numeroVenda);
+                }
+                
+                @Override
+                protected void concluir(Boolean cancelada) {
+                    // Com os avisos do caixa, a linha já é atualizada sozinha
+                    if (mudancas == null) {
+                        atualizarTabela();
+                    }
+                    if (!cancelada) {
+                        JOptionPane.showMessageDialog(GestaoVendasView.this, "Venda não encontrada ou já cancelada!", 
+                                "Erro", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    JOptionPane.showMessageDialog(GestaoVendasView.this, "Venda cancelada com sucesso!", 
+                            "Sucesso", JOptionPane.INFORMATION_MESSAGE);
+                }
+            }.iniciar();
         }
     }
     
@@ -215,28 +274,21 @@ public class GestaoVendasView extends JFrame {
             return;
         }
         
-        // Obtém o número da venda selecionada
-        String numeroVenda = (String) tblVendas.getValueAt(linhaSelecionada, 0);
-        
-        // Buscar venda pelo número
-        Venda vendaSelecionada = null;
-        for (Venda v : caixa.getVendas()) {
-            if (v.getNumero().equals(numeroVenda)) {
-                vendaSelecionada = v;
-                break;
-            }
-        }
-        
-        if (vendaSelecionada == null) {
-            JOptionPane.showMessageDialog(this, "Venda não encontrada!", 
-                    "Erro", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
+        // Obtém a venda da linha selecionada
+        mostrarDetalhes(this, modeloTabela.getVenda(linhaSelecionada));
+    }
+    
+    /**
+     * Abre uma janela com os itens e os dados gerais da venda
+     * (usada também pela consulta de vendas arquivadas)
+     */
+    static void mostrarDetalhes(Component dono, Venda vendaSelecionada) {
+        String numeroVenda = vendaSelecionada.getNumero();
         
         // Cria uma nova janela para mostrar os detalhes
         JFrame janelaDetalhes = new JFrame("Detalhes da Venda " + numeroVenda);
         janelaDetalhes.setSize(600, 400);
-        janelaDetalhes.setLocationRelativeTo(this);
+        janelaDetalhes.setLocationRelativeTo(dono);
         janelaDetalhes.setLayout(new BorderLayout(10, 10));
         
         // Tabela de itens da venda
@@ -248,9 +300,9 @@ public class GestaoVendasView extends JFrame {
         for (ItemVenda item : vendaSelecionada.getItens()) {
             Object[] row = {
                 item.getProduto().getNome(),
-                String.format("R$ %.2f", item.getProduto().getPreco()),
+                Moeda.formatar(item.getPrecoUnitarioCentavos()),
                 item.getQuantidade(),
-                String.format("R$ %.2f", item.getValorTotal())
+                Moeda.formatar(item.getValorTotalCentavos())
             };
             modeloDetalhes.addRow(row);
         }
@@ -259,12 +311,10 @@ public class GestaoVendasView extends JFrame {
         
         // Painel com informações gerais da venda
         JPanel painelInfo = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-        
         painelInfo.add(new JLabel("Número: " + vendaSelecionada.getNumero()));
-        painelInfo.add(new JLabel(" | Data: " + vendaSelecionada.getData().format(formatter)));
+        painelInfo.add(new JLabel(" | Data: " + vendaSelecionada.getData().format(VendasTableModel.FORMATO_DATA)));
         painelInfo.add(new JLabel(" | Status: " + (vendaSelecionada.isCancelada() ? "Cancelada" : "Concluída")));
-        painelInfo.add(new JLabel(" | Total: R$ " + String.format("%.2f", vendaSelecionada.calcularTotal())));
+        painelInfo.add(new JLabel(" | Total: " + Moeda.formatar(vendaSelecionada.calcularTotalCentavos())));
         
         // Adiciona os componentes à janela
         janelaDetalhes.add(painelInfo, BorderLayout.NORTH);
@@ -273,4 +323,102 @@ public class GestaoVendasView extends JFrame {
         // Exibe a janela
         janelaDetalhes.setVisible(true);
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Lê as vendas de um instantâneo escolhido pelo usuário para um histórico
+     * colunar (em segundo plano) e abre a consulta
+     */
+    private void abrirArquivo(JButton btnArquivo) {
+        JFileChooser seletor = new JFileChooser("dados");
+        seletor.setFileFilter(new FileNameExtensionFilter("Instantâneos do caixa", "instantaneo"));
+        if (seletor.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path arquivo = seletor.getSelectedFile().toPath();
+        
+        new TarefaCaixa<HistoricoColunar>(this, "Erro ao abrir o arquivo", btnArquivo) {
+            @Override
+            protected HistoricoColunar executar() throws Exception {
+                return Instantaneo.lerHistorico(arquivo);
+            }
+            
+            @Override
+            protected void concluir(HistoricoColunar historico) {
+                new ArquivoVendasView(historico, arquivo.getFileName().toString());
+            }
+        }.iniciar();
+    }
+    
+    /**
+     * Exporta as vendas (respeitando o filtro de canceladas e o período
+     * informado ao escolher o arquivo) para um arquivo CSV, em segundo plano
+     * para não travar a tela
+     */
+    private void exportarCsv(JButton btnExportar) {
+        JFileChooser seletor = new JFileChooser();
+        // Período opcional ao lado da escolha do arquivo (em branco = sem limite)
+        JTextField txtDe = new JTextField(10);
+        JTextField txtAte = new JTextField(10);
+        JPanel painelPeriodo = new JPanel(new GridLayout(4, 1));
+        painelPeriodo.add(new JLabel("De (dd/mm/aaaa):"));
+        painelPeriodo.add(txtDe);
+        painelPeriodo.add(new JLabel("Até (dd/mm/aaaa):"));
+        painelPeriodo.add(txtAte);
+        JPanel acessorio = new JPanel(new BorderLayout());
+        acessorio.add(painelPeriodo, BorderLayout.NORTH);
+        seletor.setAccessory(acessorio);
+        if (seletor.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        
+        LocalDateTime de;
+        LocalDateTime ate;
+        try {
+            de = lerDia(txtDe.getText());
+            // O dia final entra inteiro: o limite é o início do dia seguinte
+            LocalDateTime ultimoDia = lerDia(txtAte.getText());
+            ate = ultimoDia == null ? null : ultimoDia.plusDays(1);
+        } catch (DateTimeParseException ex) {
+            JOptionPane.showMessageDialog(this,
+                    "Data inválida: " + ex.getParsedString() + " (use dd/mm/aaaa)",
+                    "Erro", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (de != null && ate != null && !de.isBefore(ate)) {
+            JOptionPane.showMessageDialog(this,
+                    "A data inicial deve ser anterior ou igual à final",
+                    "Erro", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        ExportadorVendas.FiltroStatus filtro = chkMostrarCanceladas.isSelected()
+                ? ExportadorVendas.FiltroStatus.TODAS : ExportadorVendas.FiltroStatus.CONCLUIDAS;
+        
+        new TarefaCaixa<Long>(this, "Erro ao exportar as vendas", btnExportar) {
+            @Override
+            protected Long executar() throws Exception {
+                return new ExportadorVendas(caixa).exportarCsv(
+                        seletor.getSelectedFile().toPath(), de, ate, filtro);
+            }
+            
+            @Override
+            protected void concluir(Long itens) {
+                JOptionPane.showMessageDialog(GestaoVendasView.this,
+                        "Itens exportados: " + itens,
+                        "Exportação concluída", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }.iniciar();
+    }
+    
+    /**
+     * Lê um dia no formato dd/MM/aaaa
+     * 
+     * @return Início do dia, ou null se o texto estiver em branco
+     */
+    private static LocalDateTime lerDia(String texto) {
+        if (texto.trim().isEmpty()) {
+            return null;
+        }
+        return LocalDate.parse(texto.trim(), FORMATO_DIA).atStartOfDay();
+    }
+}
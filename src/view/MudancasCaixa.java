@@ -0,0 +1,112 @@
+package view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.Timer;
+
+import controller.AssinanteEventos;
+import controller.BarramentoEventos;
+import controller.Caixa;
+import controller.EventoCaixa;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Junta os eventos do Caixa para uma janela e os entrega na thread da
+ * interface no máximo uma vez por quadro (16 ms): uma rajada de vendas vira
+ * uma única atualização das tabelas, com só as linhas afetadas.
+ */
+class MudancasCaixa implements AssinanteEventos {
+    // Intervalo mínimo entre entregas (um quadro a 60 Hz)
+    private static final int INTERVALO_QUADRO = 16;
+    
+    /**
+     * Quem aplica as mudanças na tela (chamado na thread da interface)
+     */
+    interface Receptor {
+        void aplicar(List<Produto> cadastrados, List<Venda> realizadas, List<Venda> canceladas);
+    }
+    
+    private final Receptor receptor;
+    private final Timer temporizador;
+    private BarramentoEventos.Assinatura assinatura;
+    
+    // Mudanças ainda não entregues (protegidas por this)
+    private List<Produto> cadastrados = new ArrayList<>();
+    private List<Venda> realizadas = new ArrayList<>();
+    private List<Venda> canceladas = new ArrayList<>();
+    private boolean agendado;
+    
+    private MudancasCaixa(Receptor receptor) {
+        this.receptor = receptor;
+        this.temporizador = new Timer(INTERVALO_QUADRO, e -> entregar());
+        this.temporizador.setRepeats(false);
+        // Sem juntar disparos: um disparo durante uma entrega demorada não pode se perder
+        this.temporizador.setCoalesce(false);
+    }
+    
+    /**
+     * Assina os eventos do caixa para a janela
+     * 
+     * @return Assinatura, ou null se o caixa não tem barramento de eventos
+     */
+    static MudancasCaixa assinar(Caixa caixa, String nome, Receptor receptor) {
+        BarramentoEventos eventos = caixa.getEventos();
+        if (eventos == null) {
+            return null;
+        }
+        MudancasCaixa mudancas = new MudancasCaixa(receptor);
+        mudancas.assinatura = eventos.assinar(nome, mudancas);
+        return mudancas;
+    }
+    
+    /**
+     * Para de receber eventos (ao fechar a janela)
+     */
+    void encerrar() {
+        assinatura.close();
+        temporizador.stop();
+    }
+    
+    @Override
+    public void aoReceber(EventoCaixa evento, boolean fimDoLote) {
+        synchronized (this) {
+            switch (evento.getTipo()) {
+                case PRODUTO_CADASTRADO:
+                    cadastrados.add(evento.getProduto());
+                    break;
+                case VENDA_REALIZADA:
+                    realizadas.add(evento.getVenda());
+                    break;
+                default:
+                    canceladas.add(evento.getVenda());
+                    break;
+            }
+            if (!fimDoLote || agendado) {
+                return;
+            }
+            agendado = true;
+        }
+        temporizador.start();
+    }
+    
+    /**
+     * Entrega tudo o que chegou desde a última vez (na thread da interface)
+     */
+    private void entregar() {
+        List<Produto> c;
+        List<Venda> r;
+        List<Venda> x;
+        synchronized (this) {
+            c = cadastrados;
+            r = realizadas;
+            x = canceladas;
+            cadastrados = new ArrayList<>();
+            realizadas = new ArrayList<>();
+            canceladas = new ArrayList<>();
+            agendado = false;
+        }
+        receptor.aplicar(c, r, x);
+    }
+}
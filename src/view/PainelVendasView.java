@@ -0,0 +1,215 @@
+package view;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.DefaultTableModel;
+
+import controller.AnaliseVendas;
+import controller.Caixa;
+import model.Moeda;
+import model.Produto;
+
+/**
+ * Painel com os números de vendas do dia, atualizado sozinho a cada poucos
+ * segundos: total de hoje, vendas hora a hora nas últimas 24 horas e os
+ * produtos de maior faturamento. Os números vêm dos acumulados da
+ * AnaliseVendas, sem percorrer o histórico de vendas.
+ */
+public class PainelVendasView extends JFrame {
+    // Intervalo entre atualizações, em milissegundos
+    private static final int INTERVALO_ATUALIZACAO = 2000;
+    
+    // Quantidade de produtos no ranking
+    private static final int QUANTIDADE_RANKING = 10;
+    
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("dd/MM HH:00");
+    
+    private Caixa caixa;
+    private AnaliseVendas analise;
+    
+    private JLabel lblHoje;
+    private JLabel lblSaldo;
+    private JLabel lblAviso;
+    private DefaultTableModel modeloHoras;
+    private DefaultTableModel modeloProdutos;
+    private Timer temporizador;
+    
+    // Atualização em andamento (a próxima só começa quando esta termina)
+    private TarefaCaixa<Resumo> atualizacao;
+    
+    /**
+     * Construtor que inicializa a interface
+     */
+    public PainelVendasView(Caixa caixa, AnaliseVendas analise) {
+        this.caixa = caixa;
+        this.analise = analise;
+        
+        // Configurações da janela
+        setTitle("Painel de Vendas");
+        setSize(700, 500);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLocationRelativeTo(null);
+        
+        // Inicializar componentes
+        inicializarComponentes();
+        
+        // Atualiza agora e depois periodicamente, até a janela ser fechada
+        temporizador = new Timer(INTERVALO_ATUALIZACAO, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                atualizar();
+            }
+        });
+        temporizador.start();
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                temporizador.stop();
+            }
+        });
+        atualizar();
+        
+        // Mostrar janela
+        setVisible(true);
+    }
+    
+    /**
+     * Inicializa todos os componentes da interface
+     */
+    private void inicializarComponentes() {
+        // Totais do dia
+        JPanel painelTotais = new JPanel(new FlowLayout(FlowLayout.LEFT, 20, 5));
+        lblHoje = new JLabel("Hoje: -");
+        lblSaldo = new JLabel("Saldo do caixa: -");
+        lblAviso = new JLabel();
+        lblAviso.setForeground(Color.RED);
+        painelTotais.add(lblHoje);
+        painelTotais.add(lblSaldo);
+        painelTotais.add(lblAviso);
+        
+        // Vendas hora a hora
+        modeloHoras = new DefaultTableModel(new String[] {"Hora", "Vendas", "Unidades", "Total"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JScrollPane scrollHoras = new JScrollPane(new JTable(modeloHoras));
+        scrollHoras.setBorder(BorderFactory.createTitledBorder("Últimas 24 horas"));
+        
+        // Produtos de maior faturamento
+        modeloProdutos = new DefaultTableModel(new String[] {"Código", "Produto", "Unidades", "Total"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JScrollPane scrollProdutos = new JScrollPane(new JTable(modeloProdutos));
+        scrollProdutos.setBorder(BorderFactory.createTitledBorder("Mais vendidos"));
+        
+        JPanel painelTabelas = new JPanel(new GridLayout(1, 2, 10, 10));
+        painelTabelas.add(scrollHoras);
+        painelTabelas.add(scrollProdutos);
+        
+        // Layout principal
+        setLayout(new BorderLayout(10, 10));
+        add(painelTotais, BorderLayout.NORTH);
+        add(painelTabelas, BorderLayout.CENTER);
+    }
+    
+    /**
+     * Consulta os acumulados fora da thread da interface e mostra o resultado
+     */
+    private void atualizar() {
+        if (atualizacao != null && !atualizacao.isDone()) {
+            return;
+        }
+        atualizacao = new TarefaCaixa<Resumo>(this, "Erro ao atualizar o painel") {
+            @Override
+            protected Resumo executar() {
+                return consultar();
+            }
+            
+            @Override
+            protected void concluir(Resumo resumo) {
+                mostrar(resumo);
+            }
+        };
+        atualizacao.iniciar();
+    }
+    
+    /**
+     * Lê os acumulados (fora da thread da interface)
+     */
+    private Resumo consultar() {
+        Resumo resumo = new Resumo();
+        LocalDateTime agora = LocalDateTime.now();
+        resumo.agora = agora;
+        resumo.hoje = analise.getDia(LocalDate.now());
+        resumo.horas = analise.getHoras(agora.minusHours(23), agora);
+        resumo.codigos = analise.getMaisVendidos(QUANTIDADE_RANKING);
+        resumo.saldoCentavos = caixa.getSaldoCaixaCentavos();
+        resumo.desatualizado = analise.isDesatualizada();
+        return resumo;
+    }
+    
+    /**
+     * Mostra o resumo nas tabelas (na thread da interface)
+     */
+    private void mostrar(Resumo resumo) {
+        lblHoje.setText("Hoje: " + resumo.hoje.getVendas() + " vendas, " + resumo.hoje.getUnidades()
+                + " unidades, " + Moeda.formatar(resumo.hoje.getCentavos()));
+        lblSaldo.setText("Saldo do caixa: " + Moeda.formatar(resumo.saldoCentavos));
+        lblAviso.setText(resumo.desatualizado ? "Recalculando os números..." : "");
+        
+        // Poucas linhas: recriar as tabelas é barato
+        modeloHoras.setRowCount(0);
+        LocalDateTime hora = resumo.agora.minusHours(23).truncatedTo(ChronoUnit.HOURS);
+        for (AnaliseVendas.Acumulado a : resumo.horas) {
+            modeloHoras.addRow(new Object[] {
+                hora.format(FORMATO_HORA), a.getVendas(), a.getUnidades(), Moeda.formatar(a.getCentavos())
+            });
+            hora = hora.plusHours(1);
+        }
+        
+        modeloProdutos.setRowCount(0);
+        for (String codigo : resumo.codigos) {
+            Produto produto = caixa.buscarProduto(codigo);
+            AnaliseVendas.Acumulado a = analise.getProduto(codigo);
+            modeloProdutos.addRow(new Object[] {
+                codigo, produto == null ? "" : produto.getNome(), a.getUnidades(), Moeda.formatar(a.getCentavos())
+            });
+        }
+    }
+    
+    /**
+     * Números lidos numa atualização
+     */
+    private static class Resumo {
+        LocalDateTime agora;
+        AnaliseVendas.Acumulado hoje;
+        List<AnaliseVendas.Acumulado> horas;
+        List<String> codigos;
+        long saldoCentavos;
+        boolean desatualizado;
+    }
+}
@@ -1,15 +1,16 @@
 package view;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.FlowLayout;
-import java.awt.GridLayout;
+import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
 
-import javax.swing.DefaultComboBoxModel;
 import javax.swing.JButton;
-import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -17,11 +18,15 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSpinner;
 import javax.swing.JTable;
+import javax.swing.JTextField;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.table.DefaultTableModel;
 
 import controller.Caixa;
+import controller.GerenciadorReservas;
+import controller.Reserva;
 import model.ItemVenda;
+import model.Moeda;
 import model.Produto;
 import model.Venda;
 
@@ -32,11 +37,22 @@ public class PontoVendaView extends JFrame {
     private Caixa caixa;
     private Venda vendaAtual;
     
-    private JComboBox<Produto> cbProdutos;
+    // Reserva de estoque da venda atual (null sem itens ou sem gerenciador de reservas)
+    private Reserva reserva;
+    
+    private JTextField txtLeitura;
+    private JLabel lblLeitura;
+    private BuscaProdutoPanel buscaProdutos;
     private JSpinner spQuantidade;
     private JTable tblItens;
     private DefaultTableModel modeloTabela;
     private JLabel lblTotal;
+    private JButton btnAdicionar;
+    private JButton btnFinalizar;
+    private JButton btnCancelar;
+    
+    // Vendas de todos os terminais publicadas pelo caixa (null se o caixa não publica eventos)
+    private MudancasCaixa mudancas;
     
     /**
      * Construtor que inicializa a interface
@@ -54,6 +70,27 @@ public class PontoVendaView extends JFrame {
         // Inicializar componentes
         inicializarComponentes();
         
+        // Mantém o estoque da lista de busca em dia com as vendas dos outros terminais
+        mudancas = MudancasCaixa.assinar(caixa, "tela-ponto-venda", new MudancasCaixa.Receptor() {
+            @Override
+            public void aplicar(List<Produto> cadastrados, List<Venda> realizadas, List<Venda> canceladas) {
+                if (!realizadas.isEmpty() || !canceladas.isEmpty()) {
+                    buscaProdutos.estoqueAlterado();
+                }
+            }
+        });
+        
+        // Devolve ao estoque o que a cesta reservou se a janela for fechada com ela aberta
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                liberarReserva();
+                if (mudancas != null) {
+                    mudancas.encerrar();
+                }
+            }
+        });
+        
         // Mostrar janela
         setVisible(true);
     }
@@ -62,22 +99,43 @@ public class PontoVendaView extends JFrame {
      * Inicializa todos os componentes da interface
      */
     private void inicializarComponentes() {
+        // Leitura de código de barras: o leitor "digita" o código e Enter
+        JPanel painelLeitura = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        painelLeitura.add(new JLabel("Código de barras:"));
+        txtLeitura = new JTextField(15);
+        txtLeitura.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                registrarLeitura();
+            }
+        });
+        painelLeitura.add(txtLeitura);
+        lblLeitura = new JLabel(" ");
+        painelLeitura.add(lblLeitura);
+        
         // Painel superior para seleção de produtos
-        JPanel painelSuperior = new JPanel(new GridLayout(2, 2, 10, 10));
+        JPanel painelSuperior = new JPanel(new BorderLayout(10, 10));
         
-        // ComboBox para produtos
-        painelSuperior.add(new JLabel("Produto:"));
-        cbProdutos = new JComboBox<>();
-        atualizarComboBoxProdutos();
-        painelSuperior.add(cbProdutos);
+        // Busca de produtos por nome ou código (Enter ou duplo clique adiciona)
+        painelSuperior.add(new JLabel("Produto:"), BorderLayout.WEST);
+        buscaProdutos = new BuscaProdutoPanel(caixa);
+        buscaProdutos.setAcaoConfirmar(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                adicionarItem();
+            }
+        });
+        painelSuperior.add(buscaProdutos, BorderLayout.CENTER);
         
         // Spinner para quantidade
-        painelSuperior.add(new JLabel("Quantidade:"));
+        JPanel painelQuantidade = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        painelQuantidade.add(new JLabel("Quantidade:"));
         spQuantidade = new JSpinner(new SpinnerNumberModel(1, 1, 100, 1));
-        painelSuperior.add(spQuantidade);
+        painelQuantidade.add(spQuantidade);
+        painelSuperior.add(painelQuantidade, BorderLayout.SOUTH);
         
         // Botão para adicionar item
-        JButton btnAdicionar = new JButton("Adicionar Item");
+        btnAdicionar = new JButton("Adicionar Item");
         btnAdicionar.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -100,7 +158,7 @@ public class PontoVendaView extends JFrame {
         
         JPanel painelBotoes = new JPanel(new FlowLayout(FlowLayout.CENTER));
         
-        JButton btnFinalizar = new JButton("Finalizar Venda");
+        btnFinalizar = new JButton("Finalizar Venda");
         btnFinalizar.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -108,7 +166,7 @@ public class PontoVendaView extends JFrame {
             }
         });
         
-        JButton btnCancelar = new JButton("Cancelar Venda");
+        btnCancelar = new JButton("Cancelar Venda");
         btnCancelar.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -125,6 +183,7 @@ public class PontoVendaView extends JFrame {
         // Layout principal
         setLayout(new BorderLayout(10, 10));
         JPanel painelAdicionarItem = new JPanel(new BorderLayout());
+        painelAdicionarItem.add(painelLeitura, BorderLayout.NORTH);
         painelAdicionarItem.add(painelSuperior, BorderLayout.CENTER);
         painelAdicionarItem.add(btnAdicionar, BorderLayout.EAST);
         
@@ -133,56 +192,16 @@ public class PontoVendaView extends JFrame {
         add(painelInferior, BorderLayout.SOUTH);
     }
     
-    /**
-     * Atualiza o ComboBox com a lista de produtos
-     * 
-     */
-    private void atualizarComboBoxProdutos() {
-        DefaultComboBoxModel<Produto> model = new DefaultComboBoxModel<>();
-        
-        // Adicionar apenas produtos com estoque
-        for (Produto p : caixa.getProdutos()) {
-            if (p.getEstoque() > 0) {
-                model.addElement(p);
-            }
-        }
-        
-     // Define o modelo do combo box com a lista de produtos
-        cbProdutos.setModel(model);
-
-        // Personaliza a forma como cada item do combo será exibido na tela
-        cbProdutos.setRenderer(new javax.swing.DefaultListCellRenderer() {
-            
-            // Sobrescreve o método responsável por montar visualmente cada item da lista
-            @Override
-            public java.awt.Component getListCellRendererComponent(
-                    javax.swing.JList<?> list, Object value, int index, 
-                    boolean isSelected, boolean cellHasFocus) {
-                
-                // Mantém o comportamento visual padrão (como cor de seleção, etc.)
-                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-                
-                // Verifica se o item atual é um objeto da classe Produto
-                if (value instanceof Produto) {
-                    Produto produto = (Produto) value;  // Faz o cast para Produto
-                    
-                    // Define o texto exibido no item do combo: "código - nome (preço) - estoque"
-                    setText(produto.getCodigo() + " - " + produto.getNome() + 
-                            " (R$ " + produto.getPreco() + ") - Estoque: " + produto.getEstoque());
-                }
-                
-                // Retorna o componente visual do item renderizado (neste caso, o próprio JLabel)
-                return this;
-            }
-        });
-
-    }
-    
     /**
      * Adiciona um item à venda
      */
     private void adicionarItem() {
-        Produto produtoSelecionado = (Produto) cbProdutos.getSelectedItem();
+        // A venda está sendo registrada no caixa (botões bloqueados): não pode mudar agora
+        if (!btnFinalizar.isEnabled()) {
+            return;
+        }
+        
+        Produto produtoSelecionado = buscaProdutos.getProdutoSelecionado();
         if (produtoSelecionado == null) {
             JOptionPane.showMessageDialog(this, "Selecione um produto!", 
                     "Erro", JOptionPane.ERROR_MESSAGE);
@@ -191,51 +210,158 @@ public class PontoVendaView extends JFrame {
         
         int quantidade = (int) spQuantidade.getValue();
         
-        if (quantidade > produtoSelecionado.getEstoque()) {
+        // Reserva a quantidade para a venda (outros terminais deixam de vê-la disponível)
+        if (!reservarItem(produtoSelecionado, quantidade)) {
             JOptionPane.showMessageDialog(this, 
                     "Quantidade selecionada maior que o estoque disponível!", 
                     "Erro", JOptionPane.ERROR_MESSAGE);
             return;
         }
         
-        // Adicionar à venda
-        vendaAtual.adicionarItem(produtoSelecionado, quantidade);
+        // Adicionar à venda (soma na linha do produto, se já estiver nela)
+        int linha = vendaAtual.somarItem(produtoSelecionado, quantidade);
         
-        // Atualizar tabela
-        atualizarTabelaItens();
+        // Atualizar só a linha afetada da tabela
+        mostrarLinha(linha);
         
         // Atualizar total
         atualizarTotal();
         
-        // Atualizar combo box (pois estoque pode ter mudado)
-        atualizarComboBoxProdutos();
+        // Voltar ao campo de busca para o próximo produto
+        buscaProdutos.limpar();
     }
     
     /**
-     * Atualiza a tabela de itens
+     * Registra a leitura de um código de barras. Aceita também
+     * "quantidade*código" (ex: 3*7891000100103). Não abre diálogos, para não
+     * atrapalhar as leituras seguintes: os erros aparecem ao lado do campo.
+     * Leituras repetidas do mesmo produto somam na mesma linha, e só essa
+     * linha da tabela é atualizada.
      */
-    private void atualizarTabelaItens() {
-        // Limpar tabela
-        modeloTabela.setRowCount(0);
+    private void registrarLeitura() {
+        String texto = txtLeitura.getText().trim();
+        txtLeitura.setText("");
+        if (texto.isEmpty()) {
+            return;
+        }
+        
+        int quantidade = 1;
+        int asterisco = texto.indexOf('*');
+        if (asterisco > 0) {
+            try {
+                quantidade = Integer.parseInt(texto.substring(0, asterisco).trim());
+            } catch (NumberFormatException e) {
+                quantidade = 0;
+            }
+            texto = texto.substring(asterisco + 1).trim();
+        }
+        if (quantidade <= 0) {
+            avisarLeitura("Quantidade inválida!");
+            return;
+        }
+        
+        // Busca direta no índice por código
+        Produto produto = caixa.buscarProduto(texto);
+        if (produto == null) {
+            avisarLeitura("Produto não encontrado: " + texto);
+            return;
+        }
+        
+        if (!reservarItem(produto, quantidade)) {
+            avisarLeitura("Estoque insuficiente: " + produto.getNome());
+            return;
+        }
+        
+        int linha = vendaAtual.somarItem(produto, quantidade);
+        mostrarLinha(linha);
+        atualizarTotal();
         
-        // Adicionar itens
-        for (ItemVenda item : vendaAtual.getItens()) {
-            Object[] row = {
-                item.getProduto().getNome(),
-                item.getProduto().getPreco(),
-                item.getQuantidade(),
-                item.getValorTotal()
-            };
-            modeloTabela.addRow(row);
+        ItemVenda item = vendaAtual.getItens().get(linha);
+        lblLeitura.setForeground(Color.BLACK);
+        lblLeitura.setText(item.getQuantidade() + " x " + produto.getNome());
+    }
+    
+    /**
+     * Reserva a quantidade do produto para a venda atual. Sem gerenciador de
+     * reservas, só confere o estoque contra tudo o que já está na venda.
+     * 
+     * @return true se o item pode entrar na venda
+     */
+    private boolean reservarItem(Produto produto, int quantidade) {
+        GerenciadorReservas reservas = caixa.getReservas();
+        if (reservas == null) {
+            return vendaAtual.getQuantidade(produto.getCodigo()) + quantidade <= produto.getEstoque();
+        }
+        if (reserva == null || !reserva.isAtiva()) {
+            // Primeiro item, ou a reserva expirou com a cesta parada: reserva de novo
+            // o que já está na venda (o que não couber é conferido ao finalizar)
+            reserva = reservas.abrir();
+            for (ItemVenda item : vendaAtual.getItens()) {
+                reservas.reservar(reserva, item.getProduto(), item.getQuantidade());
+            }
         }
+        return reservas.reservar(reserva, produto, quantidade);
+    }
+    
+    /**
+     * Devolve ao estoque o que a venda atual reservou
+     */
+    private void liberarReserva() {
+        GerenciadorReservas reservas = caixa.getReservas();
+        if (reservas != null && reserva != null) {
+            reservas.liberar(reserva);
+        }
+        reserva = null;
+    }
+    
+    /**
+     * Mostra um erro de leitura ao lado do campo, com um bipe
+     */
+    private void avisarLeitura(String mensagem) {
+        Toolkit.getDefaultToolkit().beep();
+        lblLeitura.setForeground(Color.RED);
+        lblLeitura.setText(mensagem);
+    }
+    
+    /**
+     * Mostra na tabela a linha da venda informada: acrescenta se for nova ou
+     * atualiza quantidade e subtotal se já existir, e a deixa selecionada
+     */
+    private void mostrarLinha(int linha) {
+        ItemVenda item = vendaAtual.getItens().get(linha);
+        if (linha == modeloTabela.getRowCount()) {
+            modeloTabela.addRow(linhaDaTabela(item));
+        } else {
+            modeloTabela.setValueAt(item.getQuantidade(), linha, 2);
+            modeloTabela.setValueAt(item.getValorTotal(), linha, 3);
+        }
+        tblItens.changeSelection(linha, 0, false, false);
+    }
+    
+    /**
+     * Monta os valores da linha da tabela de um item
+     */
+    private Object[] linhaDaTabela(ItemVenda item) {
+        return new Object[] {
+            item.getProduto().getNome(),
+            item.getPrecoUnitarioCentavos() / 100.0,
+            item.getQuantidade(),
+            item.getValorTotal()
+        };
+    }
+    
+    /**
+     * Esvazia a tabela de itens para uma venda nova (os itens entram um a um por mostrarLinha)
+     */
+    private void limparItens() {
+        modeloTabela.setRowCount(0);
     }
     
     /**
      * Atualiza o valor total da venda
      */
     private void atualizarTotal() {
-        double total = vendaAtual.calcularTotal();
-        lblTotal.setText(String.format("Total: R$ %.2f", total));
+        lblTotal.setText("Total: " + Moeda.formatar(vendaAtual.calcularTotalCentavos()));
     }
     
     /**
@@ -248,34 +374,52 @@ public class PontoVendaView extends JFrame {
             return;
         }
         
-        // Registrar a venda no caixa
-        boolean realizada = caixa.realizarVenda(vendaAtual);
-        if (!realizada) {
-            JOptionPane.showMessageDialog(this, "Estoque insuficiente para um ou mais produtos!", 
-                    "Erro", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
-        JOptionPane.showMessageDialog(this, 
-                "Venda finalizada com sucesso!\nNúmero: " + vendaAtual.getNumero(), 
-                "Sucesso", JOptionPane.INFORMATION_MESSAGE);
-        
-        // Iniciar nova venda
-        vendaAtual = new Venda();
-        atualizarTabelaItens();
-        atualizarTotal();
-        atualizarComboBoxProdutos();
+        // Registrar a venda no caixa, fora da thread da interface (grava no diário).
+        // Os botões ficam bloqueados para a venda não mudar enquanto é registrada.
+        GerenciadorReservas reservas = caixa.getReservas();
+        Reserva reservaVenda = reserva;
+        new TarefaCaixa<Boolean>(this, "Erro ao registrar a venda",
+                btnAdicionar, btnFinalizar, btnCancelar, txtLeitura) {
+            @Override
+            protected Boolean executar() {
+                if (reservas != null && reservaVenda != null) {
+                    return reservas.confirmar(reservaVenda, vendaAtual);
+                }
+                return caixa.realizarVenda(vendaAtual);
+            }
+            
+            @Override
+            protected void concluir(Boolean realizada) {
+                if (!realizada) {
+                    JOptionPane.showMessageDialog(PontoVendaView.this, "Estoque insuficiente para um ou mais produtos!", 
+                            "Erro", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                
+                JOptionPane.showMessageDialog(PontoVendaView.this, 
+                        "Venda finalizada com sucesso!\nNúmero: " + vendaAtual.getNumero(), 
+                        "Sucesso", JOptionPane.INFORMATION_MESSAGE);
+                
+                // Iniciar nova venda (a reserva foi encerrada com a venda)
+                reserva = null;
+                vendaAtual = new Venda();
+                limparItens();
+                atualizarTotal();
+                buscaProdutos.atualizar();
+            }
+        }.iniciar();
     }
     
     /**
      * Cancela a venda atual
      */
     private void cancelarVenda() {
-        // Reiniciar venda
+        // Reiniciar venda, devolvendo o estoque reservado
+        liberarReserva();
         vendaAtual = new Venda();
-        atualizarTabelaItens();
+        limparItens();
         atualizarTotal();
-        atualizarComboBoxProdutos();
+        buscaProdutos.atualizar();
         
         JOptionPane.showMessageDialog(this, "Venda cancelada!", 
                 "Aviso", JOptionPane.INFORMATION_MESSAGE);
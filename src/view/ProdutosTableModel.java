@@ -0,0 +1,165 @@
+package view;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+import controller.Caixa;
+import model.ItemVenda;
+import model.Produto;
+import model.Venda;
+
+/**
+ * Modelo da tabela de produtos do cadastro. As células leem o produto na
+ * hora (o estoque mostrado é sempre o atual), e cada mudança avisa a
+ * tabela só das linhas afetadas: produto novo é uma linha inserida e venda
+ * ou cancelamento é uma linha atualizada por produto da venda.
+ */
+public class ProdutosTableModel extends AbstractTableModel {
+    private static final String[] COLUNAS = {"Código", "Nome", "Preço", "Estoque"};
+    
+    private final Caixa caixa;
+    
+    // Produtos na ordem das linhas e a linha de cada um
+    private ArrayList<Produto> produtos = new ArrayList<>();
+    private HashMap<Produto, Integer> linhas = new HashMap<>();
+    
+    // Carregamento inicial em andamento; as mudanças que chegam antes do fim ficam guardadas
+    private SwingWorker<?, ?> carregamento;
+    private final List<Produto> pendentes = new ArrayList<>();
+    
+    public ProdutosTableModel(Caixa caixa) {
+        this.caixa = caixa;
+    }
+    
+    /**
+     * Lê os produtos do caixa em segundo plano e os mostra de uma vez ao final
+     * 
+     * @return Carregamento já iniciado, que pode ser cancelado (ex: ao fechar a janela)
+     */
+    public SwingWorker<?, ?> carregar() {
+        cancelarCarregamento();
+        carregamento = new SwingWorker<Void, Void>() {
+            private ArrayList<Produto> lidos;
+            private HashMap<Produto, Integer> indice;
+            
+            @Override
+            protected Void doInBackground() {
+                lidos = caixa.getProdutos();
+                indice = new HashMap<>(lidos.size() * 2);
+                for (int i = 0; i < lidos.size(); i++) {
+                    indice.put(lidos.get(i), i);
+                }
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                if (isCancelled() || carregamento != this) {
+                    return;
+                }
+                carregamento = null;
+                produtos = lidos;
+                linhas = indice;
+                fireTableDataChanged();
+                // Cadastros publicados enquanto a lista era lida (os já lidos são ignorados)
+                adicionar(pendentes);
+                pendentes.clear();
+            }
+        };
+        carregamento.execute();
+        return carregamento;
+    }
+    
+    /**
+     * Interrompe o carregamento em andamento, se houver
+     */
+    public void cancelarCarregamento() {
+        if (carregamento != null) {
+            carregamento.cancel(true);
+            carregamento = null;
+        }
+    }
+    
+    /**
+     * Acrescenta os produtos cadastrados que ainda não estão na tabela
+     */
+    public void adicionar(List<Produto> cadastrados) {
+        if (carregamento != null) {
+            pendentes.addAll(cadastrados);
+            return;
+        }
+        int inicio = produtos.size();
+        for (Produto p : cadastrados) {
+            if (!linhas.containsKey(p)) {
+                linhas.put(p, produtos.size());
+                produtos.add(p);
+            }
+        }
+        if (produtos.size() > inicio) {
+            fireTableRowsInserted(inicio, produtos.size() - 1);
+        }
+    }
+    
+    /**
+     * Avisa a tabela das linhas cujo estoque mudou com as vendas
+     */
+    public void estoqueAlterado(List<Venda> vendas) {
+        // Um aviso por produto, mesmo que ele apareça em várias vendas
+        Set<Produto> alterados = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Venda venda : vendas) {
+            for (ItemVenda item : venda.getItens()) {
+                Produto p = item.getProduto();
+                if (alterados.add(p)) {
+                    Integer linha = linhas.get(p);
+                    if (linha != null) {
+                        fireTableCellUpdated(linha, 3);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Retorna o produto exibido na linha informada
+     */
+    public Produto getProduto(int linha) {
+        return produtos.get(linha);
+    }
+    
+    @Override
+    public int getRowCount() {
+        return produtos.size();
+    }
+    
+    @Override
+    public int getColumnCount() {
+        return COLUNAS.length;
+    }
+    
+    @Override
+    public String getColumnName(int coluna) {
+        return COLUNAS[coluna];
+    }
+    
+    @Override
+    public Object getValueAt(int linha, int coluna) {
+        Produto p = produtos.get(linha);
+        switch (coluna) {
+            case 0:
+                return p.getCodigo();
+            case 1:
+                return p.getNome();
+            case 2:
+                return p.getPreco();
+            default:
+                return p.getEstoque();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package view;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.table.DefaultTableModel;
+
+import controller.Reposicao;
+import model.Produto;
+
+/**
+ * Tela de reposição: os produtos mais perto de acabar (pela cobertura
+ * estoque / limite), com a velocidade de venda e a previsão de quando o
+ * estoque acaba. Atualizada sozinha a cada poucos segundos; permite mudar o
+ * limite de reposição do produto selecionado.
+ */
+public class ReposicaoView extends JFrame {
+    // Intervalo entre atualizações, em milissegundos (também o do botão de reposição no menu)
+    public static final int INTERVALO_ATUALIZACAO = 2000;
+    
+    // Quantidade de produtos mostrados
+    private static final int QUANTIDADE_PRODUTOS = 50;
+    
+    private Reposicao reposicao;
+    
+    private JLabel lblAbaixo;
+    private JLabel lblAviso;
+    private DefaultTableModel modeloProdutos;
+    private JTable tabelaProdutos;
+    private JTextField txtLimite;
+    private Timer temporizador;
+    
+    // Produtos na ordem das linhas da tabela
+    private List<Produto> produtos = new ArrayList<>();
+    
+    // Atualização em andamento (a próxima só começa quando esta termina)
+    private TarefaCaixa<Resumo> atualizacao;
+    
+    /**
+     * Construtor que inicializa a interface
+     */
+    public ReposicaoView(Reposicao reposicao) {
+        this.reposicao = reposicao;
+        
+        // Configurações da janela
+        setTitle("Reposição de Estoque");
+        setSize(750, 450);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLocationRelativeTo(null);
+        
+        // Inicializar componentes
+        inicializarComponentes();
+        
+        // Atualiza agora e depois periodicamente, até a janela ser fechada
+        temporizador = new Timer(INTERVALO_ATUALIZACAO, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                atualizar();
+            }
+        });
+        temporizador.start();
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                temporizador.stop();
+            }
+        });
+        atualizar();
+        
+        // Mostrar janela
+        setVisible(true);
+    }
+    
+    /**
+     * Inicializa todos os componentes da interface
+     */
+    private void inicializarComponentes() {
+        lblAbaixo = new JLabel("Produtos a repor: -");
+        lblAviso = new JLabel();
+        lblAviso.setForeground(Color.RED);
+        JPanel painelTopo = new JPanel(new FlowLayout(FlowLayout.LEFT, 20, 5));
+        painelTopo.add(lblAbaixo);
+        painelTopo.add(lblAviso);
+        
+        modeloProdutos = new DefaultTableModel(
+                new String[] {"Código", "Produto", "Estoque", "Limite", "Vendas/dia", "Acaba em", "Situação"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        tabelaProdutos = new JTable(modeloProdutos);
+        tabelaProdutos.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        
+        // Limite do produto selecionado
+        JPanel painelLimite = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        txtLimite = new JTextField(6);
+        JButton btnLimite = new JButton("Definir Limite");
+        btnLimite.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                definirLimite();
+            }
+        });
+        painelLimite.add(new JLabel("Limite de reposição:"));
+        painelLimite.add(txtLimite);
+        painelLimite.add(btnLimite);
+        
+        // Layout principal
+        setLayout(new BorderLayout(10, 10));
+        add(painelTopo, BorderLayout.NORTH);
+        add(new JScrollPane(tabelaProdutos), BorderLayout.CENTER);
+        add(painelLimite, BorderLayout.SOUTH);
+    }
+    
+    /**
+     * Define o limite de reposição do produto selecionado
+     */
+    private void definirLimite() {
+        int linha = tabelaProdutos.getSelectedRow();
+        if (linha < 0) {
+            JOptionPane.showMessageDialog(this, "Selecione um produto!", "Erro", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        int limite;
+        try {
+            limite = Integer.parseInt(txtLimite.getText().trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Limite inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (limite < 0) {
+            JOptionPane.showMessageDialog(this, "O limite não pode ser negativo!", "Erro", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        reposicao.setLimite(produtos.get(linha), limite);
+        txtLimite.setText("");
+        atualizar();
+    }
+    
+    /**
+     * Consulta a reposição fora da thread da interface e mostra o resultado
+     */
+    private void atualizar() {
+        if (atualizacao != null && !atualizacao.isDone()) {
+            return;
+        }
+        atualizacao = new TarefaCaixa<Resumo>(this, "Erro ao atualizar a reposição") {
+            @Override
+            protected Resumo executar() {
+                return consultar();
+            }
+            
+            @Override
+            protected void concluir(Resumo resumo) {
+                mostrar(resumo);
+            }
+        };
+        atualizacao.iniciar();
+    }
+    
+    /**
+     * Lê os produtos mais perto de acabar e monta as linhas (fora da thread da interface)
+     */
+    private Resumo consultar() {
+        Resumo resumo = new Resumo();
+        resumo.desatualizado = reposicao.isDesatualizada();
+        resumo.abaixo = reposicao.getAbaixoDoLimite().size();
+        resumo.produtos = reposicao.getMaisProximos(QUANTIDADE_PRODUTOS);
+        resumo.linhas = new ArrayList<>(resumo.produtos.size());
+        for (Produto p : resumo.produtos) {
+            int estoque = p.getEstoqueTotal();
+            int limite = reposicao.getLimite(p);
+            resumo.linhas.add(new Object[] {
+                p.getCodigo(), p.getNome(), estoque, limite,
+                String.format("%.1f", reposicao.getVelocidadePorDia(p)),
+                formatar(reposicao.getPrevisaoEsgotar(p)),
+                estoque == 0 ? "Esgotado" : (limite > 0 && estoque <= limite ? "Repor" : "")
+            });
+        }
+        return resumo;
+    }
+    
+    /**
+     * Mostra o resumo na tabela (na thread da interface), mantendo a seleção
+     */
+    private void mostrar(Resumo resumo) {
+        int linha = tabelaProdutos.getSelectedRow();
+        Produto selecionado = linha < 0 ? null : produtos.get(linha);
+        
+        lblAbaixo.setText("Produtos a repor: " + resumo.abaixo);
+        lblAviso.setText(resumo.desatualizado ? "Recalculando a reposição..." : "");
+        produtos = resumo.produtos;
+        modeloProdutos.setRowCount(0);
+        for (Object[] dados : resumo.linhas) {
+            modeloProdutos.addRow(dados);
+        }
+        
+        int nova = selecionado == null ? -1 : produtos.indexOf(selecionado);
+        if (nova >= 0) {
+            tabelaProdutos.setRowSelectionInterval(nova, nova);
+        }
+    }
+    
+    /**
+     * Formata a previsão como dias e horas (ou horas e minutos, se for menos de um dia)
+     */
+    private static String formatar(Duration previsao) {
+        if (previsao == null) {
+            return "-";
+        }
+        if (previsao.toDays() > 0) {
+            return previsao.toDays() + " d " + previsao.toHoursPart() + " h";
+        }
+        return previsao.toHours() + " h " + previsao.toMinutesPart() + " min";
+    }
+    
+    /**
+     * Dados lidos numa atualização
+     */
+    private static class Resumo {
+        int abaixo;
+        List<Produto> produtos;
+        List<Object[]> linhas;
+        boolean desatualizado;
+    }
+}
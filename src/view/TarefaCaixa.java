@@ -0,0 +1,77 @@
+package view;
+
+import java.awt.Component;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JComponent;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+
+/**
+ * Operação do Caixa executada fora da thread da interface (EDT), para a
+ * janela não travar enquanto o diário grava no disco ou o Caixa aguarda
+ * outros terminais. Os componentes informados ficam desabilitados até o fim.
+ * 
+ * @param <T> Tipo do resultado da operação
+ */
+abstract class TarefaCaixa<T> extends SwingWorker<T, Void> {
+    private final Component janela;
+    private final String mensagemErro;
+    private final JComponent[] bloqueados;
+    
+    /**
+     * @param janela Janela dona dos diálogos de erro
+     * @param mensagemErro Início da mensagem mostrada se a operação falhar
+     * @param bloqueados Componentes desabilitados enquanto a operação roda
+     */
+    TarefaCaixa(Component janela, String mensagemErro, JComponent... bloqueados) {
+        this.janela = janela;
+        this.mensagemErro = mensagemErro;
+        this.bloqueados = bloqueados;
+    }
+    
+    /**
+     * Desabilita os componentes e inicia a operação (chamar na thread da interface)
+     */
+    void iniciar() {
+        for (JComponent componente : bloqueados) {
+            componente.setEnabled(false);
+        }
+        execute();
+    }
+    
+    /**
+     * Executa a operação (fora da thread da interface)
+     */
+    protected abstract T executar() throws Exception;
+    
+    /**
+     * Trata o resultado (na thread da interface)
+     */
+    protected abstract void concluir(T resultado);
+    
+    @Override
+    protected final T doInBackground() throws Exception {
+        return executar();
+    }
+    
+    @Override
+    protected final void done() {
+        for (JComponent componente : bloqueados) {
+            componente.setEnabled(true);
+        }
+        if (isCancelled()) {
+            return;
+        }
+        T resultado;
+        try {
+            resultado = get();
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable causa = e.getCause() != null ? e.getCause() : e;
+            JOptionPane.showMessageDialog(janela, mensagemErro + ": " + causa.getMessage(),
+                    "Erro", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        concluir(resultado);
+    }
+}
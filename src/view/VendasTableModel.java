@@ -0,0 +1,303 @@
+package view;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+import controller.Caixa;
+import model.Moeda;
+import model.Venda;
+
+/**
+ * Modelo da tabela de vendas que lê direto do Caixa, sem copiar as vendas.
+ * Cada célula é formatada só quando a JTable pede, ou seja, só para as
+ * linhas visíveis na tela.
+ *
+ * Para o filtro de canceladas há duas visões: todas as vendas (a linha é a
+ * própria posição no Caixa) e um índice com as posições das vendas não
+ * canceladas. Trocar o filtro só troca a visão, sem reconstruir nada.
+ *
+ * Depois da carga inicial, os avisos do caixa mantêm o modelo em dia sem
+ * reler o histórico: venda nova é linha inserida, e venda cancelada é linha
+ * atualizada (todas as vendas) ou removida (só as não canceladas).
+ */
+public class VendasTableModel extends AbstractTableModel {
+    // Formatador para exibir a data (criado uma vez só)
+    static final DateTimeFormatter FORMATO_DATA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    
+    private static final String[] COLUNAS = {"Número", "Data", "Total", "Status"};
+    
+    private final Caixa caixa;
+    
+    // Quantidade de vendas do Caixa já conhecidas pelo modelo
+    private int quantidade;
+    
+    // Posições das vendas não canceladas, em ordem
+    private int[] ativas = new int[1024];
+    private int quantidadeAtivas;
+    
+    private boolean mostrarCanceladas;
+    
+    // Carregamento em andamento (só um por vez)
+    private Carregamento carregamento;
+    
+    // Avisos que chegaram durante o carregamento, aplicados quando ele termina
+    private boolean novasPendentes;
+    private final List<Venda> canceladasPendentes = new ArrayList<>();
+    
+    public VendasTableModel(Caixa caixa) {
+        this.caixa = caixa;
+    }
+    
+    /**
+     * Incorpora as vendas novas e tira do índice as que foram canceladas,
+     * lendo o Caixa fora da thread da interface. As linhas novas aparecem na
+     * tabela em lotes, conforme vão sendo lidas. Nenhuma célula é formatada aqui.
+     * 
+     * @return Carregamento já iniciado, que pode ser cancelado (ex: ao fechar a janela)
+     */
+    public SwingWorker<?, ?> atualizar() {
+        cancelarAtualizacao();
+        carregamento = new Carregamento(Arrays.copyOf(ativas, quantidadeAtivas), quantidade);
+        carregamento.execute();
+        return carregamento;
+    }
+    
+    /**
+     * Interrompe o carregamento em andamento, se houver
+     */
+    public void cancelarAtualizacao() {
+        if (carregamento != null) {
+            carregamento.cancel(true);
+            carregamento = null;
+        }
+    }
+    
+    /**
+     * Aplica um lote lido pelo carregamento (na thread da interface)
+     */
+    private void aplicar(Lote lote) {
+        if (lote.substituir) {
+            // Índice compactado, sem as vendas canceladas desde a última vez
+            ativas = lote.posicoes;
+            quantidadeAtivas = lote.quantidade;
+            fireTableDataChanged();
+            return;
+        }
+        
+        int linhasAntes = getRowCount();
+        if (quantidadeAtivas + lote.quantidade > ativas.length) {
+            ativas = Arrays.copyOf(ativas, Math.max(ativas.length * 2, quantidadeAtivas + lote.quantidade));
+        }
+        System.arraycopy(lote.posicoes, 0, ativas, quantidadeAtivas, lote.quantidade);
+        quantidadeAtivas += lote.quantidade;
+        quantidade = lote.ate;
+        if (getRowCount() > linhasAntes) {
+            fireTableRowsInserted(linhasAntes, getRowCount() - 1);
+        }
+    }
+    
+    /**
+     * Acrescenta as vendas realizadas desde a última leitura, lendo do caixa
+     * só as novas. Durante um carregamento, fica para o fim dele.
+     */
+    public void lerNovas() {
+        if (carregamento != null) {
+            novasPendentes = true;
+            return;
+        }
+        int total = caixa.getQuantidadeVendas();
+        if (total > quantidade) {
+            int[] posicoes = new int[total - quantidade];
+            int n = 0;
+            for (int posicao = quantidade; posicao < total; posicao++) {
+                if (!caixa.getVenda(posicao).isCancelada()) {
+                    posicoes[n++] = posicao;
+                }
+            }
+            aplicar(new Lote(posicoes, n, total, false));
+        }
+    }
+    
+    /**
+     * Atualiza as linhas das vendas canceladas: na visão com todas, a linha
+     * muda de status; na visão só com as não canceladas, a linha sai.
+     * Cada venda sabe sua posição no histórico, então só a linha dela é
+     * tocada, por mais antiga que seja a venda.
+     */
+    public void vendasCanceladas(List<Venda> canceladas) {
+        if (carregamento != null) {
+            canceladasPendentes.addAll(canceladas);
+            return;
+        }
+        for (Venda venda : canceladas) {
+            int posicao = venda.getPosicao();
+            // Venda ainda não lida pelo modelo: quando for lida, já entra como cancelada
+            if (posicao < 0 || posicao >= quantidade) {
+                continue;
+            }
+            if (mostrarCanceladas) {
+                fireTableRowsUpdated(posicao, posicao);
+            }
+            // O índice está em ordem de posição: busca binária
+            int linha = Arrays.binarySearch(ativas, 0, quantidadeAtivas, posicao);
+            if (linha >= 0) {
+                System.arraycopy(ativas, linha + 1, ativas, linha, quantidadeAtivas - linha - 1);
+                quantidadeAtivas--;
+                if (!mostrarCanceladas) {
+                    fireTableRowsDeleted(linha, linha);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Aplica os avisos guardados durante o carregamento que terminou
+     */
+    private void aplicarPendentes() {
+        if (novasPendentes) {
+            novasPendentes = false;
+            lerNovas();
+        }
+        if (!canceladasPendentes.isEmpty()) {
+            List<Venda> canceladas = new ArrayList<>(canceladasPendentes);
+            canceladasPendentes.clear();
+            vendasCanceladas(canceladas);
+        }
+    }
+    
+    /**
+     * Troca entre a visão com todas as vendas e a visão só com as não canceladas
+     */
+    public void setMostrarCanceladas(boolean mostrarCanceladas) {
+        if (this.mostrarCanceladas != mostrarCanceladas) {
+            this.mostrarCanceladas = mostrarCanceladas;
+            fireTableDataChanged();
+        }
+    }
+    
+    /**
+     * Retorna a venda exibida na linha informada
+     */
+    public Venda getVenda(int linha) {
+        return caixa.getVenda(mostrarCanceladas ? linha : ativas[linha]);
+    }
+    
+    @Override
+    public int getRowCount() {
+        return mostrarCanceladas ? quantidade : quantidadeAtivas;
+    }
+    
+    @Override
+    public int getColumnCount() {
+        return COLUNAS.length;
+    }
+    
+    @Override
+    public String getColumnName(int coluna) {
+        return COLUNAS[coluna];
+    }
+    
+    @Override
+    public Object getValueAt(int linha, int coluna) {
+        Venda venda = getVenda(linha);
+        switch (coluna) {
+            case 0:
+                return venda.getNumero();
+            case 1:
+                return venda.getData().format(FORMATO_DATA);
+            case 2:
+                return Moeda.formatar(venda.calcularTotalCentavos());
+            default:
+                return venda.isCancelada() ? "Cancelada" : "Concluída";
+        }
+    }
+    
+    /**
+     * Trecho do índice lido em segundo plano
+     */
+    static class Lote {
+        final int[] posicoes;
+        final int quantidade;
+        // Posição no Caixa até onde as vendas já foram lidas
+        final int ate;
+        // Indica que o lote substitui o índice inteiro (compactação)
+        final boolean substituir;
+        
+        Lote(int[] posicoes, int quantidade, int ate, boolean substituir) {
+            this.posicoes = posicoes;
+            this.quantidade = quantidade;
+            this.ate = ate;
+            this.substituir = substituir;
+        }
+    }
+    
+    /**
+     * Lê o Caixa em segundo plano e publica o índice em lotes
+     */
+    private class Carregamento extends SwingWorker<Void, Lote> {
+        // Vendas lidas por lote
+        private static final int TAMANHO_LOTE = 50_000;
+        
+        private final int[] indiceAtual;
+        private final int desde;
+        
+        Carregamento(int[] indiceAtual, int desde) {
+            this.indiceAtual = indiceAtual;
+            this.desde = desde;
+        }
+        
+        @Override
+        protected Void doInBackground() {
+            // Compacta o índice atual, se alguma venda foi cancelada
+            int mantidas = 0;
+            for (int i = 0; i < indiceAtual.length && !isCancelled(); i++) {
+                if (!caixa.getVenda(indiceAtual[i]).isCancelada()) {
+                    indiceAtual[mantidas++] = indiceAtual[i];
+                }
+            }
+            if (mantidas < indiceAtual.length) {
+                publish(new Lote(indiceAtual, mantidas, desde, true));
+            }
+            
+            // Lê as vendas novas em lotes
+            int total = caixa.getQuantidadeVendas();
+            for (int inicio = desde; inicio < total && !isCancelled(); inicio += TAMANHO_LOTE) {
+                int fim = Math.min(total, inicio + TAMANHO_LOTE);
+                int[] posicoes = new int[fim - inicio];
+                int n = 0;
+                for (int posicao = inicio; posicao < fim; posicao++) {
+                    if (!caixa.getVenda(posicao).isCancelada()) {
+                        posicoes[n++] = posicao;
+                    }
+                }
+                publish(new Lote(posicoes, n, fim, false));
+            }
+            return null;
+        }
+        
+        @Override
+        protected void process(List<Lote> lotes) {
+            // Lotes de um carregamento cancelado são descartados; o próximo relê a partir do que foi aplicado
+            if (isCancelled()) {
+                return;
+            }
+            for (Lote lote : lotes) {
+                aplicar(lote);
+            }
+        }
+        
+        @Override
+        protected void done() {
+            if (isCancelled() || carregamento != this) {
+                return;
+            }
+            carregamento = null;
+            aplicarPendentes();
+        }
+    }
+}